@@ -0,0 +1,161 @@
+package cafe.bench;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The database the benchmarks run against. Without -Dcafe.bench.port an
+ * embedded Postgres is started for the run; otherwise the local server on
+ * that port is used (-Dcafe.bench.db and -Dcafe.bench.user, defaults
+ * postgres). Either way the schema is recreated from project/sql/src, the
+ * seed data in project/data is loaded with BulkLoader and a batch of orders
+ * is placed so the order paths have rows to work on.
+ */
+public final class BenchDatabase implements AutoCloseable {
+
+   /** Customers the generated orders belong to. */
+   public static final List<String> CUSTOMERS = new ArrayList<>();
+   /** Items the generated orders are made of. */
+   public static final List<String> ITEMS = Arrays.asList("Coffee", "Pepsi", "7up");
+
+   private final EmbeddedPostgres embedded;
+   private final CafeHandle cafe;
+   private final int firstOrder;
+   private final int lastOrder;
+
+   private BenchDatabase(EmbeddedPostgres embedded, CafeHandle cafe, int firstOrder, int lastOrder) {
+      this.embedded = embedded;
+      this.cafe = cafe;
+      this.firstOrder = firstOrder;
+      this.lastOrder = lastOrder;
+   }
+
+   /**
+    * Starts (or connects to) the database, builds the schema and seeds it.
+    */
+   public static BenchDatabase start() throws Throwable {
+      File root = projectRoot();
+      EmbeddedPostgres embedded = null;
+      int port = Integer.getInteger("cafe.bench.port", 0);
+      String db = System.getProperty("cafe.bench.db", "postgres");
+      String user = System.getProperty("cafe.bench.user", "postgres");
+      if (port == 0) {
+         embedded = EmbeddedPostgres.builder().start();
+         port = embedded.getPort();
+      }
+
+      String url = "jdbc:postgresql://localhost:" + port + "/" + db;
+      try (Connection c = DriverManager.getConnection(url, user, "")) {
+         runScript(c, new File(root, "sql/src/create_tables.sql"));
+         runScript(c, new File(root, "sql/src/create_indexes.sql"));
+         runScript(c, new File(root, "sql/src/create_triggers.sql"));
+      }
+
+      CafeHandle cafe = CafeHandle.connect(db, port, user);
+      Class<?> loader = Class.forName("BulkLoader");
+      Object bulk = loader.getConstructor(Class.forName("Cafe"), int.class)
+                          .newInstance(cafe.cafe(), Runtime.getRuntime().availableProcessors());
+      loader.getMethod("loadAll", File.class).invoke(bulk, new File(root, "data"));
+
+      for (List<String> row : cafe.executeQueryAndReturnResult(
+              "SELECT login FROM Users WHERE type = 'Customer' ORDER BY login LIMIT 200")) {
+         CUSTOMERS.add(row.get(0).trim());
+      }
+      Random random = new Random(42);
+      int first = -1;
+      int last = -1;
+      for (int i = 0; i < Integer.getInteger("cafe.bench.orders", 2000); ++i) {
+         last = cafe.placeOrder(CUSTOMERS.get(random.nextInt(CUSTOMERS.size())),
+                                ITEMS.subList(0, 1 + random.nextInt(ITEMS.size())), 0f);
+         if (first < 0) {
+            first = last;
+         }
+      }
+      return new BenchDatabase(embedded, cafe, first, last);
+   }
+
+   public CafeHandle cafe() { return cafe; }
+
+   /** @return a random id among the seeded orders */
+   public int randomOrder(Random random) {
+      return firstOrder + random.nextInt(lastOrder - firstOrder + 1);
+   }
+
+   @Override
+   public void close() throws Exception {
+      try {
+         cafe.cleanup();
+      } catch (Throwable t) {
+         // ignored.
+      }
+      if (embedded != null) {
+         embedded.close();
+      }
+   }
+
+   // the project directory holding sql/ and data/, from -Dcafe.bench.root or the working directory.
+   private static File projectRoot() {
+      String configured = System.getProperty("cafe.bench.root");
+      if (configured != null) {
+         return new File(configured);
+      }
+      for (File dir = new File("").getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+         if (new File(dir, "sql/src/create_tables.sql").isFile()) {
+            return dir;
+         }
+         if (new File(dir, "project/sql/src/create_tables.sql").isFile()) {
+            return new File(dir, "project");
+         }
+      }
+      throw new IllegalStateException("Cannot find project/sql/src, set -Dcafe.bench.root");
+   }
+
+   // runs a ';' separated script, the DROPs of a fresh database are allowed to fail.
+   // A ';' inside a $$ quoted function body does not end the statement.
+   private static void runScript(Connection c, File script) throws Exception {
+      String text = new String(Files.readAllBytes(script.toPath()), StandardCharsets.UTF_8)
+         .replaceAll("(?s)/\\*.*?\\*/", "").replaceAll("--[^\n]*", "");
+      try (Statement stmt = c.createStatement()) {
+         for (String sql : statements(text)) {
+            if (sql.trim().isEmpty()) {
+               continue;
+            }
+            try {
+               stmt.execute(sql);
+            } catch (SQLException e) {
+               if (!sql.trim().toUpperCase().startsWith("DROP")) {
+                  throw e;
+               }
+            }
+         }
+      }
+   }
+
+   private static List<String> statements(String text) {
+      List<String> statements = new ArrayList<>();
+      boolean quoted = false;
+      int start = 0;
+      for (int i = 0; i < text.length(); ++i) {
+         if (text.startsWith("$$", i)) {
+            quoted = !quoted;
+            ++i;
+         } else if (text.charAt(i) == ';' && !quoted) {
+            statements.add(text.substring(start, i));
+            start = i + 1;
+         }
+      }
+      statements.add(text.substring(start));
+      return statements;
+   }
+}
@@ -0,0 +1,171 @@
+package cafe.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the Cafe data-access paths behind the user menu actions.
+ *
+ * Run with: mvn -B package &amp;&amp; java -jar target/benchmarks.jar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CafeBenchmark {
+
+   @State(Scope.Benchmark)
+   public static class Db {
+      BenchDatabase db;
+      PrintStream console;
+
+      @Setup(Level.Trial)
+      public void start() throws Throwable {
+         db = BenchDatabase.start();
+         // the print paths write to System.out, keep it out of the results.
+         console = System.out;
+         System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) { }
+
+            @Override
+            public void write(byte[] b, int off, int len) { }
+         }));
+      }
+
+      // queued status updates are written before the next iteration starts.
+      @TearDown(Level.Iteration)
+      public void flush() throws Throwable {
+         db.cafe().flushStatus();
+      }
+
+      @TearDown(Level.Trial)
+      public void stop() throws Exception {
+         System.setOut(console);
+         db.close();
+      }
+   }
+
+   @State(Scope.Thread)
+   public static class Caller {
+      final Random random = new Random();
+
+      String customer() {
+         return BenchDatabase.CUSTOMERS.get(random.nextInt(BenchDatabase.CUSTOMERS.size()));
+      }
+
+      List<String> basket() {
+         return BenchDatabase.ITEMS.subList(0, 1 + random.nextInt(BenchDatabase.ITEMS.size()));
+      }
+   }
+
+   @Benchmark
+   public Object login(Db db) throws Throwable {
+      return db.db.cafe().logIn("Admin", "admin");
+   }
+
+   @Benchmark
+   public Object menuListingCached(Db db) throws Throwable {
+      return db.db.cafe().menuItems();
+   }
+
+   @Benchmark
+   public Object menuListingQuery(Db db) throws Throwable {
+      return db.db.cafe().executeQueryAndReturnResult("SELECT * FROM Menu");
+   }
+
+   @Benchmark
+   public int menuListingPrint(Db db) throws Throwable {
+      return db.db.cafe().executeQueryAndPrintResult("SELECT * FROM Menu");
+   }
+
+   @Benchmark
+   public Object searchByName(Db db) throws Throwable {
+      return db.db.cafe().menuItem("Coffee");
+   }
+
+   @Benchmark
+   public Object searchByType(Db db) throws Throwable {
+      return db.db.cafe().menuItemsByType("Drinks");
+   }
+
+   @Benchmark
+   public Object searchFuzzy(Db db) throws Throwable {
+      return db.db.cafe().menuSearch("nodle soup", 10);
+   }
+
+   @Benchmark
+   public Object searchPrefix(Db db) throws Throwable {
+      return db.db.cafe().menuSearch("cof", 10);
+   }
+
+   @Benchmark
+   public int searchByNameQuery(Db db) throws Throwable {
+      return db.db.cafe().executeQuery("SELECT M.itemName, M.price FROM MENU M WHERE M.itemName = ?", "Coffee");
+   }
+
+   @Benchmark
+   public boolean roleCheck(Db db, Caller caller) throws Throwable {
+      return db.db.cafe().exists("SELECT * FROM Users WHERE login = ? AND type = 'Customer'", caller.customer());
+   }
+
+   @Benchmark
+   public int placeOrder(Db db, Caller caller) throws Throwable {
+      return db.db.cafe().placeOrder(caller.customer(), caller.basket(), 0f);
+   }
+
+   @Benchmark
+   public int reorderFavorites(Db db, Caller caller) throws Throwable {
+      return db.db.cafe().reorderFavorites(caller.customer());
+   }
+
+   // the same order built on the client: read the favorites, then place them.
+   @Benchmark
+   public int reorderFavoritesClientSide(Db db, Caller caller) throws Throwable {
+      String login = caller.customer();
+      List<String> items = new ArrayList<>();
+      for (List<String> row : db.db.cafe().executeQueryAndReturnResult(
+              "SELECT itemName FROM UserFavorites WHERE login = ? ORDER BY itemName", login)) {
+         items.add(row.get(0));
+      }
+      return items.isEmpty() ? -1 : db.db.cafe().placeOrder(login, items, 0f);
+   }
+
+   @Benchmark
+   public int markOrderPaid(Db db, Caller caller) throws Throwable {
+      return db.db.cafe().executeUpdate("UPDATE Orders SET paid = ? WHERE orderid = ?",
+                                        true, db.db.randomOrder(caller.random));
+   }
+
+   @Benchmark
+   public int updateItemStatus(Db db, Caller caller) throws Throwable {
+      return db.db.cafe().executeUpdate(
+         "UPDATE ItemStatus SET status = ?, lastUpdated = ? WHERE orderid = ? AND itemName = ?",
+         "Started", new Timestamp(System.currentTimeMillis()), db.db.randomOrder(caller.random), "Coffee");
+   }
+
+   @Benchmark
+   public Object updateItemStatusQueued(Db db, Caller caller) throws Throwable {
+      // once the queue is full the caller waits for the writer, so this is the sustained rate.
+      return db.db.cafe().updateItemStatus(db.db.randomOrder(caller.random), "Coffee", "Started");
+   }
+}
@@ -0,0 +1,156 @@
+package cafe.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Typed access to a Cafe instance. The application lives in the default
+ * package, which Java code in a named package (and JMH) cannot import, so
+ * its public methods are bound once through method handles.
+ */
+public final class CafeHandle {
+
+   private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+   private final Object cafe;
+   private final Object menu;
+   private final MethodHandle executeUpdate;
+   private final MethodHandle executeQuery;
+   private final MethodHandle executeQueryAndReturnResult;
+   private final MethodHandle executeQueryAndPrintResult;
+   private final MethodHandle exists;
+   private final MethodHandle placeOrder;
+   private final MethodHandle reorderFavorites;
+   private final MethodHandle updateItemStatus;
+   private final MethodHandle flushStatus;
+   private final MethodHandle logIn;
+   private final MethodHandle getItems;
+   private final MethodHandle getItem;
+   private final MethodHandle getItemsByType;
+   private final MethodHandle search;
+   private final MethodHandle cleanup;
+
+   private CafeHandle(Object cafe) throws Throwable {
+      Class<?> type = cafe.getClass();
+      this.cafe = cafe;
+      this.executeUpdate = virtual(type, "executeUpdate", int.class, String.class, Object[].class);
+      this.executeQuery = virtual(type, "executeQuery", int.class, String.class, Object[].class);
+      this.executeQueryAndReturnResult = virtual(type, "executeQueryAndReturnResult", List.class, String.class, Object[].class);
+      this.executeQueryAndPrintResult = virtual(type, "executeQueryAndPrintResult", int.class, String.class, Object[].class);
+      this.exists = virtual(type, "exists", boolean.class, String.class, Object[].class);
+      // placeOrder returns an Order, the benchmarks only need its id.
+      Class<?> order = Class.forName("Order");
+      this.placeOrder = MethodHandles.filterReturnValue(
+         virtual(type, "placeOrder", order, String.class, List.class, float.class),
+         LOOKUP.findVirtual(order, "getOrderid", MethodType.methodType(int.class)));
+      this.reorderFavorites = virtual(type, "reorderFavorites", int.class, String.class);
+      this.updateItemStatus = virtual(type, "updateItemStatus", Future.class, int.class, String.class, String.class);
+      this.cleanup = virtual(type, "cleanup", void.class);
+
+      Object writer = virtual(type, "getStatusWriter", Class.forName("StatusWriter")).invoke();
+      this.flushStatus = LOOKUP.findVirtual(writer.getClass(), "flush", MethodType.methodType(void.class)).bindTo(writer);
+
+      Class<?> session = Class.forName("Session");
+      this.logIn = LOOKUP.findStatic(session, "logIn", MethodType.methodType(session, type, String.class, String.class))
+                         .bindTo(cafe);
+
+      this.menu = virtual(type, "getMenu", Class.forName("MenuCache")).invoke();
+      Class<?> menuType = menu.getClass();
+      this.getItems = LOOKUP.findVirtual(menuType, "getItems", MethodType.methodType(List.class)).bindTo(menu);
+      this.getItem = LOOKUP.findVirtual(menuType, "getItem", MethodType.methodType(Class.forName("MenuItem"), String.class))
+                           .bindTo(menu);
+      this.getItemsByType = LOOKUP.findVirtual(menuType, "getItemsByType", MethodType.methodType(List.class, String.class))
+                                  .bindTo(menu);
+      this.search = LOOKUP.findVirtual(menuType, "search", MethodType.methodType(List.class, String.class, int.class))
+                          .bindTo(menu);
+   }
+
+   /**
+    * Connects a new Cafe instance to the given database.
+    */
+   public static CafeHandle connect(String dbname, int port, String user) throws Throwable {
+      Class.forName("org.postgresql.Driver");
+      Object cafe = Class.forName("Cafe").getConstructor(String.class, String.class, String.class, String.class)
+                         .newInstance(dbname, String.valueOf(port), user, "");
+      return new CafeHandle(cafe);
+   }
+
+   /**
+    * @return the underlying Cafe, for callers that drive other tools with it
+    */
+   public Object cafe() { return cafe; }
+
+   public int executeUpdate(String sql, Object... params) throws Throwable {
+      return (int) executeUpdate.invoke(sql, params);
+   }
+
+   public int executeQuery(String sql, Object... params) throws Throwable {
+      return (int) executeQuery.invoke(sql, params);
+   }
+
+   @SuppressWarnings("unchecked")
+   public List<List<String>> executeQueryAndReturnResult(String sql, Object... params) throws Throwable {
+      return (List<List<String>>) executeQueryAndReturnResult.invoke(sql, params);
+   }
+
+   public int executeQueryAndPrintResult(String sql, Object... params) throws Throwable {
+      return (int) executeQueryAndPrintResult.invoke(sql, params);
+   }
+
+   public boolean exists(String sql, Object... params) throws Throwable {
+      return (boolean) exists.invoke(sql, params);
+   }
+
+   public int placeOrder(String login, List<String> items, float tip) throws Throwable {
+      return (int) placeOrder.invoke(login, items, tip);
+   }
+
+   public int reorderFavorites(String login) throws Throwable {
+      return (int) reorderFavorites.invoke(login);
+   }
+
+   @SuppressWarnings("unchecked")
+   public Future<Boolean> updateItemStatus(int orderid, String itemName, String status) throws Throwable {
+      return (Future<Boolean>) updateItemStatus.invoke(orderid, itemName, status);
+   }
+
+   /** Waits until every queued status update is written. */
+   public void flushStatus() throws Throwable {
+      flushStatus.invoke();
+   }
+
+   /**
+    * @return the Session, or null when the credentials are wrong
+    */
+   public Object logIn(String login, String password) throws Throwable {
+      return logIn.invoke(login, password);
+   }
+
+   public List<?> menuItems() throws Throwable {
+      return (List<?>) getItems.invoke();
+   }
+
+   public Object menuItem(String itemName) throws Throwable {
+      return getItem.invoke(itemName);
+   }
+
+   public List<?> menuItemsByType(String type) throws Throwable {
+      return (List<?>) getItemsByType.invoke(type);
+   }
+
+   public List<?> menuSearch(String query, int limit) throws Throwable {
+      return (List<?>) search.invoke(query, limit);
+   }
+
+   public void cleanup() throws Throwable {
+      cleanup.invoke();
+   }
+
+   private MethodHandle virtual(Class<?> type, String name, Class<?> returns, Class<?>... params) throws Exception {
+      return LOOKUP.findVirtual(type, name, MethodType.methodType(returns, params)).bindTo(cafe)
+                   .asFixedArity();
+   }
+}
@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# build the JMH harness, it compiles ../src together with the benchmarks
+(cd $DIR/../bench && mvn -B -q package) || exit 1
+
+#run the benchmarks, extra arguments go to JMH (e.g. a benchmark name or -f 1 -i 3)
+#an embedded postgres is started unless -Dcafe.bench.port=<port> points at a running server
+java $BENCH_OPTS -jar $DIR/../bench/target/benchmarks.jar "$@"
@@ -0,0 +1,14 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#export the orders and item status of a date range to CSV files, e.g. nightly: ./export.sh 2026-10-16 2026-10-17 /backup/cafe
+#pg73jdbc3 reads every slice whole, lower cafe.export.sliceHours if memory runs short;
+#put a newer postgresql driver jar first on the classpath to export with COPY
+#e.g. EXPORT_OPTS="-Dcafe.export.gzip=true -Dcafe.export.threads=8 -Dcafe.export.sliceHours=6"
+java $EXPORT_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar OrderExporter $USER"_DB" $PGPORT $USER "$1" "$2" "$3"
@@ -0,0 +1,31 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+BUILD=$DIR/../classes
+
+#sharing the application's classes in an archive needs JDK 13 or newer,
+#e.g. FAST_JAVA_HOME=/usr/lib/jvm/java-17; an older JDK starts without the archive
+export JAVA_HOME=${FAST_JAVA_HOME:-/usr/csshare/pkgs/jdk1.7.0_17}
+export PATH=$JAVA_HOME/bin:$PATH
+
+# compile the java program into a jar when a source changed, the archive only takes classes from jars
+if [ ! -f $BUILD/cafe.jar ] || [ -n "$(find $DIR/../src -name '*.java' -newer $BUILD/cafe.jar)" ]; then
+   javac -d $BUILD $DIR/../src/*.java || exit 1
+   (cd $BUILD && jar cf cafe.jar *.class) || exit 1
+   rm -f $BUILD/cafe.jsa
+fi
+CP=$BUILD/cafe.jar:$DIR/../lib/pg73jdbc3.jar
+
+# archive the classes a start loads, with one start that logs in (and fails) and exits
+CDS=""
+if java -XX:+PrintFlagsFinal -version 2>/dev/null | grep -q ArchiveClassesAtExit; then
+   if [ ! -f $BUILD/cafe.jsa ]; then
+      printf '2\n\n\n9\n9\n' | java -XX:ArchiveClassesAtExit=$BUILD/cafe.jsa -Dcafe.fastStart=true \
+         -cp $CP Cafe $USER"_DB" $PGPORT $USER > /dev/null 2>&1
+   fi
+   CDS="-XX:SharedArchiveFile=$BUILD/cafe.jsa"
+fi
+
+#run the java program, showing the menu while it connects (cafe.fastStart)
+#C1 only (TieredStopAtLevel=1): the terminal is interactive, C2 would compile too late to pay off
+#e.g. FAST_OPTS="-Dcafe.pool.max=2"
+java $CDS -XX:TieredStopAtLevel=1 -Dcafe.fastStart=true $FAST_OPTS -cp $CP Cafe $USER"_DB" $PGPORT $USER
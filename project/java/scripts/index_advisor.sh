@@ -0,0 +1,12 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#record a workload first by running Cafe with -Dcafe.workload.log=$DIR/../workload.txt
+#then write the tuned index script next to create_indexes.sql
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar IndexAdvisor $USER"_DB" $PGPORT $USER $DIR/../workload.txt $DIR/../../sql/src/tuned_indexes.sql
@@ -0,0 +1,12 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#run simulated customers and employees against the database, it places real orders
+#e.g. LOAD_OPTS="-Dcafe.load.customers=32 -Dcafe.load.seconds=60 -Dcafe.load.customerMix=menu=50,order=50"
+java $LOAD_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar LoadGenerator $USER"_DB" $PGPORT $USER
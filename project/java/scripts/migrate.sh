@@ -0,0 +1,12 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#apply the schema migrations the database has not seen yet, it reports sizes and query timings before and after
+#e.g. MIGRATE_OPTS="-Dcafe.migrate.lockTimeout=5000 -Dcafe.migrate.runs=200"
+java $MIGRATE_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar SchemaMigrator $USER"_DB" $PGPORT $USER $DIR/../../sql/src/migrations
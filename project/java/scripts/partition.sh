@@ -0,0 +1,12 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#create the coming months' partitions of Orders and ItemStatus and archive the old ones, run it daily (e.g. from cron)
+#e.g. PARTITION_OPTS="-Dcafe.partition.retention=6 -Dcafe.partition.archive=drop"
+java $PARTITION_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar PartitionManager $USER"_DB" $PGPORT $USER
@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#add the totals the triggers queued to the sales report tables, the reports also do so first: ./reports.sh
+#or rebuild them from the orders, refused once months were archived: ./reports.sh backfill
+#e.g. REPORTS_OPTS="-Dcafe.pool.max=1"
+java $REPORTS_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar SalesReports $USER"_DB" $PGPORT $USER $1
@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
+export PATH=$JAVA_HOME/bin:$PATH
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#serve the user interface to every register from one process, the registers connect with e.g. "nc localhost 7166"
+#sessions run on virtual threads when started with Java 21 or later
+#e.g. SERVER_OPTS="-Dcafe.server.maxSessions=50 -Dcafe.pool.max=8" CAFE_PORT=7166
+java $SERVER_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar CafeServer $USER"_DB" $PGPORT $USER ${CAFE_PORT:-7166}
@@ -0,0 +1,20 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+BUILD=$DIR/../classes
+
+# builds the jar and the class archive of fast_start.sh, without starting it
+echo 9 | $DIR/fast_start.sh > /dev/null 2>&1
+export JAVA_HOME=${FAST_JAVA_HOME:-/usr/csshare/pkgs/jdk1.7.0_17}
+export PATH=$JAVA_HOME/bin:$PATH
+CP=$BUILD/cafe.jar:$DIR/../lib/pg73jdbc3.jar
+
+#time to first prompt and to first query of a plain start, of cafe.fastStart and, when built, with the class archive
+#give a login that exists: ./startup_bench.sh <login> <password>
+#e.g. STARTUP_OPTS="-Dcafe.startup.runs=10 -Dcafe.startup.thinkMillis=1500"
+java $STARTUP_OPTS -cp $CP StartupBenchmark $USER"_DB" $PGPORT $USER "$1" "$2"
+java $STARTUP_OPTS "-Dcafe.startup.jvmOpts=-XX:TieredStopAtLevel=1 -Dcafe.fastStart=true" \
+   -cp $CP StartupBenchmark $USER"_DB" $PGPORT $USER "$1" "$2"
+if [ -f $BUILD/cafe.jsa ]; then
+   java $STARTUP_OPTS "-Dcafe.startup.jvmOpts=-XX:SharedArchiveFile=$BUILD/cafe.jsa -XX:TieredStopAtLevel=1 -Dcafe.fastStart=true" \
+      -cp $CP StartupBenchmark $USER"_DB" $PGPORT $USER "$1" "$2"
+fi
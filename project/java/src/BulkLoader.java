@@ -0,0 +1,547 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the ';' delimited data files into an empty schema from the client
+ * side, replacing the server-side COPY ... FROM '/absolute/path' of
+ * load_data.sql. Lines are read in chunks, parsed and validated on a
+ * thread pool, and the valid rows are streamed to the server in file
+ * order through COPY FROM STDIN. When the JDBC driver has no COPY API
+ * (e.g. pg73jdbc3) the rows are sent as INSERTs of BATCH_SIZE rows each,
+ * one statement and one round trip per batch.
+ * ItemStatus rows also need their order's timeStampRecieved, the key of
+ * its partitions, so they go through a temporary table joined to Orders;
+ * rows whose order is not there are counted as rejected. The users' comma separated favorite items are split into
+ * UserFavorites rows the same way. Rows loaded into the default
+ * partitions are then split into monthly partitions.
+ *
+ * Usage: java BulkLoader &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;data directory&gt;
+ *
+ */
+public class BulkLoader {
+
+   // lines handed to a parser thread at a time.
+   private static final int CHUNK_LINES = Integer.getInteger("cafe.load.chunk", 5000);
+   // rows sent per INSERT statement when falling back to INSERTs.
+   private static final int BATCH_SIZE = 1000;
+
+   /**
+    * The files loaded, in foreign key order.
+    */
+   static final Table[] TABLES = {
+      new Table("Menu", "menu.csv",
+                new String[]{"itemName", "type", "price", "description", "imageURL"},
+                new String[]{"text", "text", "numeric", "text", "text"},
+                new boolean[]{true, true, true, false, false}),
+      new Table("Users", "users.csv",
+                new String[]{"login", "phoneNum", "password", "favItems", "type"},
+                new String[]{"text", "text", "text", "text", "text"},
+                new boolean[]{true, false, true, false, true},
+                "INSERT INTO Users (login, phoneNum, password, type) SELECT login, phoneNum, password, type FROM Users_load",
+                "INSERT INTO UserFavorites (login, itemName) SELECT DISTINCT u.login, m.itemName "
+                + "FROM Users_load u CROSS JOIN unnest(string_to_array(u.favItems, ',')) f(name) "
+                + "JOIN Menu m ON lower(m.itemName) = lower(trim(f.name))"),
+      new Table("Orders", "orders.csv",
+                new String[]{"orderid", "login", "paid", "timeStampRecieved", "total"},
+                new String[]{"integer", "text", "boolean", "timestamp", "numeric"},
+                new boolean[]{true, false, false, true, true}),
+      new Table("ItemStatus", "itemStatus.csv",
+                new String[]{"orderid", "itemName", "lastUpdated", "status", "comments"},
+                new String[]{"integer", "text", "timestamp", "text", "text"},
+                new boolean[]{false, false, true, false, false},
+                "INSERT INTO ItemStatus (orderid, itemName, timeStampRecieved, lastUpdated, status, comments) "
+                + "SELECT s.orderid, s.itemName, o.timeStampRecieved, s.lastUpdated, s.status, s.comments "
+                + "FROM ItemStatus_load s JOIN Orders o ON o.orderid = s.orderid"),
+   };
+
+   private final Cafe _esql;
+   private final int _threads;
+
+   public BulkLoader(Cafe esql, int threads){
+      this._esql = esql;
+      this._threads = threads;
+   }//end BulkLoader
+
+   /**
+    * Loads every data file found in dir, then moves the order id sequences
+    * past the highest loaded id and the loaded orders out of the default
+    * partitions.
+    *
+    * @param dir the directory holding the .csv files
+    * @throws java.lang.Exception when a file cannot be read or the load fails
+    */
+   public void loadAll(File dir) throws Exception {
+      ExecutorService parsers = Executors.newFixedThreadPool(_threads);
+      try{
+         for (Table table : TABLES){
+            File file = new File(dir, table.fileName);
+            if (!file.isFile()){
+               System.out.println(table.name + ": " + file + " not found, skipped");
+               continue;
+            }//end if
+            load(table, file, parsers);
+         }//end for
+      }finally{
+         parsers.shutdownNow();
+      }//end try
+      resyncSequences();
+      List<String> moved = new PartitionManager(_esql).splitDefault();
+      if (!moved.isEmpty())
+         System.out.println("Partitions created for " + moved);
+   }//end loadAll
+
+   /**
+    * Loads one file into its table and prints rows/sec.
+    *
+    * @return the number of rows loaded
+    */
+   public long load(Table table, File file, ExecutorService parsers) throws Exception {
+      long start = System.nanoTime();
+      ChunkReader chunks = new ChunkReader(file, table, parsers, _threads * 2);
+      Thread reader = new Thread(chunks, "load-" + table.name);
+      reader.setDaemon(true);
+      reader.start();
+
+      long rows;
+      // rows the first staged statement's join found nothing for.
+      long dropped = 0;
+      ConnectionPool.PooledConnection conn = _esql.getPool().borrow();
+      try{
+         Connection c = conn.connection();
+         c.setAutoCommit(false);
+         Statement stmt = c.createStatement();
+         try{
+            if (table.staged.length > 0)
+               stmt.executeUpdate("CREATE TEMP TABLE " + table.target() + " (" + join(table.columns, table.types)
+                                  + ") ON COMMIT DROP");
+            Object copyApi = copyApi(c);
+            if (copyApi != null)
+               rows = copyIn(copyApi, table, chunks);
+            else
+               rows = insertRows(c, table, chunks);
+            for (int i = 0; i < table.staged.length; ++i){
+               int moved = stmt.executeUpdate(table.staged[i]);
+               if (i == 0){
+                  dropped = rows - moved;
+                  rows = moved;
+               }//end if
+            }//end for
+         }finally{
+            stmt.close();
+         }//end try
+         c.commit();
+      }finally{
+         // rolls back a partial load.
+         _esql.getPool().release(conn);
+      }//end try
+
+      double secs = (System.nanoTime() - start) / 1e9;
+      if (dropped > 0)
+         System.err.println(table.name + ": " + dropped + " rows rejected, they refer to rows not loaded");
+      System.out.println(String.format("%s: %d rows loaded, %d rejected in %.2f s (%.0f rows/sec)",
+                                       table.name, rows, chunks.rejected() + dropped, secs,
+                                       rows / Math.max(secs, 1e-9)));
+      return rows;
+   }//end load
+
+   /**
+    * Moves the order id sequence past the largest loaded order id, as
+    * load_data.sql does with ALTER SEQUENCE ... RESTART. Run it before
+    * any Cafe has reserved a block of order ids.
+    */
+   public void resyncSequences() throws SQLException {
+      List<List<String>> result = _esql.executeQueryAndReturnResult(
+         "SELECT setval(CAST(? AS regclass), (SELECT COALESCE(MAX(orderid), 0) + 1 FROM Orders), false)",
+         "orders_orderid_seq");
+      System.out.println("orders_orderid_seq restarts at " + result.get(0).get(0).trim());
+   }//end resyncSequences
+
+   // returns the driver's CopyManager, or null when the driver predates it.
+   static Object copyApi(Connection c){
+      try{
+         Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+         if (!pgConnection.isInstance(c))
+            return null;
+         return pgConnection.getMethod("getCopyAPI").invoke(c);
+      }catch (Exception e){
+         return null;
+      }//end try
+   }//end copyApi
+
+   private static long copyIn(Object copyApi, Table table, ChunkReader chunks) throws Exception {
+      Method copyIn = copyApi.getClass().getMethod("copyIn", String.class, Reader.class);
+      String sql = "COPY " + table.target() + " (" + join(table.columns) + ") FROM STDIN WITH DELIMITER ';'";
+      try{
+         copyIn.invoke(copyApi, sql, chunks);
+      }catch (InvocationTargetException e){
+         if (e.getCause() instanceof Exception)
+            throw (Exception) e.getCause();
+         throw e;
+      }//end try
+      chunks.rethrow();
+      return chunks.loaded();
+   }//end copyIn
+
+   private static long insertRows(Connection c, Table table, ChunkReader chunks) throws Exception {
+      PreparedStatement full = c.prepareStatement(insertSql(table, BATCH_SIZE));
+      try{
+         List<String[]> pending = new ArrayList<String[]>(BATCH_SIZE);
+         Chunk chunk;
+         while ((chunk = chunks.nextChunk()) != null){
+            for (String[] row : chunk.rows){
+               pending.add(row);
+               if (pending.size() == BATCH_SIZE){
+                  insert(full, pending);
+                  pending.clear();
+               }//end if
+            }//end for
+         }//end while
+         if (!pending.isEmpty()){
+            PreparedStatement rest = c.prepareStatement(insertSql(table, pending.size()));
+            try{
+               insert(rest, pending);
+            }finally{
+               rest.close();
+            }//end try
+         }//end if
+      }finally{
+         full.close();
+      }//end try
+      chunks.rethrow();
+      return chunks.loaded();
+   }//end insertRows
+
+   // INSERT INTO target (...) VALUES (...), (...) with placeholders for rows rows.
+   private static String insertSql(Table table, int rows){
+      StringBuilder values = new StringBuilder("(");
+      for (int i = 0; i < table.types.length; ++i)
+         values.append(i > 0 ? ", " : "").append("CAST(? AS ").append(table.types[i]).append(')');
+      values.append(')');
+      StringBuilder sql = new StringBuilder("INSERT INTO ").append(table.target())
+         .append(" (").append(join(table.columns)).append(") VALUES ");
+      for (int i = 0; i < rows; ++i)
+         sql.append(i > 0 ? ", " : "").append(values);
+      return sql.toString();
+   }//end insertSql
+
+   private static void insert(PreparedStatement stmt, List<String[]> rows) throws SQLException {
+      int param = 0;
+      for (String[] row : rows)
+         for (String value : row)
+            stmt.setString(++param, value);
+      stmt.executeUpdate();
+   }//end insert
+
+   private static String join(String[] values){
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < values.length; ++i)
+         sb.append(i > 0 ? ", " : "").append(values[i]);
+      return sb.toString();
+   }//end join
+
+   private static String join(String[] columns, String[] types){
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < columns.length; ++i)
+         sb.append(i > 0 ? ", " : "").append(columns[i]).append(' ').append(types[i]);
+      return sb.toString();
+   }//end join
+
+   /**
+    * A target table and the layout of its data file.
+    */
+   static final class Table {
+      final String name;
+      final String fileName;
+      final String[] columns;
+      final String[] types;
+      final boolean[] notNull;
+      // move the rows from the temporary table into name and others, none to load name directly.
+      final String[] staged;
+
+      Table(String name, String fileName, String[] columns, String[] types, boolean[] notNull, String... staged){
+         this.name = name;
+         this.fileName = fileName;
+         this.columns = columns;
+         this.types = types;
+         this.notNull = notNull;
+         this.staged = staged;
+      }
+
+      /**
+       * @return the table the file is copied into
+       */
+      String target(){
+         return staged.length == 0 ? name : name + "_load";
+      }
+
+      /**
+       * Splits a COPY text format line into fields and checks it.
+       *
+       * @return the field values, null standing for \N
+       * @throws java.lang.IllegalArgumentException when the line is invalid
+       */
+      String[] parse(String line){
+         String[] fields = new String[columns.length];
+         int field = 0;
+         StringBuilder value = new StringBuilder();
+         for (int i = 0; i <= line.length(); ++i){
+            char ch = i < line.length() ? line.charAt(i) : ';';
+            if (ch == '\\' && i + 1 < line.length()){
+               value.append(ch).append(line.charAt(++i));
+               continue;
+            }//end if
+            if (ch != ';'){
+               value.append(ch);
+               continue;
+            }//end if
+            if (field == columns.length)
+               throw new IllegalArgumentException("more than " + columns.length + " fields");
+            String text = value.toString();
+            fields[field++] = "\\N".equals(text) ? null : unescape(text);
+            value.setLength(0);
+         }//end for
+         if (field != columns.length)
+            throw new IllegalArgumentException("expected " + columns.length + " fields, found " + field);
+         for (int i = 0; i < fields.length; ++i)
+            check(i, fields[i]);
+         return fields;
+      }//end parse
+
+      private void check(int i, String value){
+         if (value == null || value.trim().isEmpty()){
+            if (notNull[i])
+               throw new IllegalArgumentException(columns[i] + " must not be empty");
+            return;
+         }//end if
+         try{
+            if ("integer".equals(types[i]))
+               Integer.parseInt(value.trim());
+            else if ("numeric".equals(types[i]))
+               new BigDecimal(value.trim());
+            else if ("boolean".equals(types[i]) && !value.trim().matches("(?i)t|f|true|false|y|n|yes|no|on|off|1|0"))
+               throw new IllegalArgumentException(columns[i] + " is not a boolean: " + value);
+         }catch (NumberFormatException e){
+            throw new IllegalArgumentException(columns[i] + " is not a number: " + value);
+         }//end try
+      }//end check
+
+      private static String unescape(String text){
+         if (text.indexOf('\\') < 0)
+            return text;
+         StringBuilder sb = new StringBuilder(text.length());
+         for (int i = 0; i < text.length(); ++i){
+            char ch = text.charAt(i);
+            if (ch == '\\' && i + 1 < text.length()){
+               char next = text.charAt(++i);
+               sb.append(next == 'n' ? '\n' : next == 't' ? '\t' : next == 'r' ? '\r' : next);
+            }else{
+               sb.append(ch);
+            }//end if
+         }//end for
+         return sb.toString();
+      }//end unescape
+   }//end Table
+
+   /**
+    * The checked rows of one block of lines.
+    */
+   static final class Chunk {
+      final StringBuilder text = new StringBuilder();
+      final List<String[]> rows = new ArrayList<String[]>();
+      final List<String> errors = new ArrayList<String>();
+   }//end Chunk
+
+   /**
+    * Reads the file on its own thread, parses chunks on the parser pool and
+    * hands the results back in file order, either as COPY text through the
+    * Reader interface or chunk by chunk through nextChunk(). The bounded
+    * queue keeps the reader from running ahead of the server.
+    */
+   static final class ChunkReader extends Reader implements Runnable {
+      private static final Future<Chunk> END = new java.util.concurrent.FutureTask<Chunk>(new Callable<Chunk>(){
+         public Chunk call(){ return null; }
+      });
+
+      private final File _file;
+      private final Table _table;
+      private final ExecutorService _parsers;
+      private final BlockingQueue<Future<Chunk>> _queue;
+      private volatile Exception _failure = null;
+      private String _current = "";
+      private int _pos = 0;
+      private boolean _done = false;
+      private long _loaded = 0;
+      private long _rejected = 0;
+
+      ChunkReader(File file, Table table, ExecutorService parsers, int depth){
+         this._file = file;
+         this._table = table;
+         this._parsers = parsers;
+         this._queue = new ArrayBlockingQueue<Future<Chunk>>(depth);
+      }
+
+      public void run(){
+         BufferedReader lines = null;
+         try{
+            lines = new BufferedReader(new InputStreamReader(new FileInputStream(_file), "UTF-8"), 1 << 16);
+            long lineNo = 0;
+            while (true){
+               final List<String> block = new ArrayList<String>(CHUNK_LINES);
+               final long firstLine = lineNo + 1;
+               String line;
+               while (block.size() < CHUNK_LINES && (line = lines.readLine()) != null)
+                  block.add(line);
+               if (block.isEmpty())
+                  break;
+               lineNo += block.size();
+               _queue.put(_parsers.submit(new Callable<Chunk>(){
+                  public Chunk call(){
+                     return parse(block, firstLine);
+                  }
+               }));
+            }//end while
+         }catch (Exception e){
+            _failure = e;
+         }finally{
+            try{
+               if (lines != null) lines.close();
+            }catch (IOException e){
+               // ignored.
+            }//end try
+            try{
+               _queue.put(END);
+            }catch (InterruptedException e){
+               Thread.currentThread().interrupt();
+            }//end try
+         }//end try
+      }//end run
+
+      private Chunk parse(List<String> block, long firstLine){
+         Chunk chunk = new Chunk();
+         for (int i = 0; i < block.size(); ++i){
+            String line = block.get(i);
+            if (line.isEmpty())
+               continue;
+            try{
+               chunk.rows.add(_table.parse(line));
+               chunk.text.append(line).append('\n');
+            }catch (IllegalArgumentException e){
+               chunk.errors.add(_file.getName() + ":" + (firstLine + i) + ": " + e.getMessage());
+            }//end try
+         }//end for
+         return chunk;
+      }//end parse
+
+      /**
+       * @return the next parsed chunk in file order, or null at the end
+       */
+      Chunk nextChunk() throws IOException {
+         if (_done)
+            return null;
+         try{
+            Future<Chunk> next = _queue.take();
+            if (next == END){
+               _done = true;
+               return null;
+            }//end if
+            Chunk chunk = next.get();
+            _loaded += chunk.rows.size();
+            _rejected += chunk.errors.size();
+            for (String error : chunk.errors)
+               System.err.println("rejected " + error);
+            return chunk;
+         }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + _file);
+         }catch (ExecutionException e){
+            throw new IOException("Unable to parse " + _file + ": " + e.getCause());
+         }//end try
+      }//end nextChunk
+
+      public int read(char[] buf, int off, int len) throws IOException {
+         while (_pos == _current.length()){
+            Chunk chunk = nextChunk();
+            if (chunk == null)
+               return -1;
+            _current = chunk.text.toString();
+            _pos = 0;
+         }//end while
+         int n = Math.min(len, _current.length() - _pos);
+         _current.getChars(_pos, _pos + n, buf, off);
+         _pos += n;
+         return n;
+      }//end read
+
+      public void close(){
+      }
+
+      void rethrow() throws Exception {
+         if (_failure != null)
+            throw _failure;
+      }
+
+      long loaded(){ return _loaded; }
+      long rejected(){ return _rejected; }
+   }//end ChunkReader
+
+   /**
+    * The bulk-load entry point
+    *
+    * @param args the command line arguments &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;data directory&gt;
+    */
+   public static void main(String[] args){
+      if (args.length != 4){
+         System.err.println("Usage: java [-classpath <classpath>] " + BulkLoader.class.getName()
+                            + " <dbname> <port> <user> <data directory>");
+         return;
+      }//end if
+      Cafe esql = null;
+      try{
+         Class.forName("org.postgresql.Driver");
+         esql = new Cafe(args[0], args[1], args[2], "");
+         int threads = Integer.getInteger("cafe.load.threads", Runtime.getRuntime().availableProcessors());
+         long start = System.nanoTime();
+         new BulkLoader(esql, Math.max(1, threads)).loadAll(new File(args[3]));
+         System.out.println(String.format("Done in %.2f s", (System.nanoTime() - start) / 1e9));
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+}//end BulkLoader
@@ -13,17 +13,30 @@
 
 import java.sql.DriverManager;
 import java.sql.Connection;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.sql.Types;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.PrintWriter;
+import java.io.IOException;
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.sql.Timestamp;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
@@ -32,16 +45,66 @@ import java.sql.Timestamp;
  */
 public class Cafe {
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // pool of physical database connections shared by all sessions.
+   private ConnectionPool _pool = null;
+   // the pool is opened by connect() rather than the constructor, see main.
+   private boolean _connectLater = false;
 
-   // handling the keyboard inputs through a BufferedReader
-   // This variable can be global for convenience.
-   static BufferedReader in = new BufferedReader(
-                                new InputStreamReader(System.in));
+   private static final String INSERT_ORDER =
+      "INSERT INTO Orders (orderid, login, paid, timeStampRecieved, total) VALUES (?, ?, ?, ?, ?)";
+   private static final String INSERT_ITEM_STATUS =
+      "INSERT INTO ItemStatus (orderid, itemName, timeStampRecieved, lastUpdated, status, comments, quantity) "
+      + "VALUES (?, ?, ?, ?, 'Hasn''t started', '', ?)";
+   // the order and its items in one statement, the foreign keys are checked at its end.
+   private static final String REORDER_FAVORITES =
+      "WITH fav AS (SELECT m.itemName, m.price FROM UserFavorites f JOIN Menu m ON m.itemName = f.itemName "
+      + "WHERE f.login = ?), "
+      + "o AS (INSERT INTO Orders (orderid, login, paid, timeStampRecieved, total) "
+      + "SELECT ?, ?, false, ?, sum(price) FROM fav HAVING count(*) > 0 RETURNING total), "
+      + "s AS (INSERT INTO ItemStatus (orderid, itemName, timeStampRecieved, lastUpdated, status, comments) "
+      + "SELECT ?, itemName, ?, ?, 'Hasn''t started', '' FROM fav RETURNING itemName) "
+      + "SELECT s.itemName, o.total FROM s, o";
+
+   // counts, latencies and the slow query log per SQL template, see StatementStats.
+   private StatementStats _stats = null;
+
+   // in-process copy of the Menu table, see MenuCache.
+   private final MenuCache _menu = new MenuCache(this, Long.getLong("cafe.menu.refresh", 0L));
+
+   // rolling totals of the last 24 hours, see OrderDashboard.
+   private final OrderDashboard _dashboard = new OrderDashboard(this);
+
+   // order ids reserved in blocks from the Orders serial, see IdAllocator.
+   private final IdAllocator _orderIds = new IdAllocator(this, "orders_orderid_seq");
+
+   // batched, coalescing writer of ItemStatus updates, see StatusWriter.
+   private final StatusWriter _statusWriter = new StatusWriter(this,
+      Long.getLong("cafe.status.flushMillis", 5L),
+      Integer.getInteger("cafe.status.batch", 500),
+      Integer.getInteger("cafe.status.maxPending", 10000));
+
+   // rows fetched per round-trip when streaming a result.
+   private final int _fetchSize = Integer.getInteger("cafe.fetchSize", 100);
+   // false once the driver has refused setFetchSize (pg73jdbc3 does),
+   // after which streamRows reads results whole like forEachRow.
+   private volatile boolean _cursors = true;
+
+   // orders shown per page by BrowseOrders.
+   static final int PAGE_SIZE = Integer.getInteger("cafe.pageSize", 20);
+   // a customer's own orders shown before "load more".
+   static final int HISTORY_SIZE = Integer.getInteger("cafe.historySize", 5);
+   // closest matches listed by a menu search.
+   static final int SEARCH_SIZE = Integer.getInteger("cafe.searchSize", 10);
+
+   // handling the keyboard inputs through a BufferedReader, the console's
+   // or a CafeServer connection's (see Terminal).
+   static BufferedReader in(){ return Terminal.current().in(); }
+   static PrintStream out(){ return Terminal.current().out(); }
+   static PrintStream err(){ return Terminal.current().err(); }
 
    /**
-    * Creates a new instance of Cafe
+    * Creates a new instance of Cafe. The connection pool is sized from the
+    * cafe.pool.min, cafe.pool.max and cafe.pool.timeout (ms) system properties.
     *
     * @param hostname the MySQL or PostgreSQL server hostname
     * @param database the name of the database
@@ -50,6 +113,41 @@ public class Cafe {
     * @throws java.sql.SQLException when failed to make a connection.
     */
    public Cafe(String dbname, String dbport, String user, String passwd) throws SQLException {
+      this(dbname, dbport, user, passwd,
+           Integer.getInteger("cafe.pool.min", 1),
+           Integer.getInteger("cafe.pool.max", 8),
+           Long.getLong("cafe.pool.timeout", 5000L));
+   }//end Cafe
+
+   /**
+    * Creates a new instance of Cafe that connects once connect() is
+    * called, see main. Statements run before then wait for the connection.
+    *
+    * @param connectLater true to leave connecting to connect()
+    */
+   public Cafe(String dbname, String dbport, String user, String passwd, boolean connectLater) throws SQLException {
+      this(dbname, dbport, user, passwd,
+           Integer.getInteger("cafe.pool.min", 1),
+           Integer.getInteger("cafe.pool.max", 8),
+           Long.getLong("cafe.pool.timeout", 5000L),
+           connectLater);
+   }//end Cafe
+
+   /**
+    * Creates a new instance of Cafe backed by a bounded connection pool
+    *
+    * @param minPool number of connections kept open while idle
+    * @param maxPool maximum number of concurrent connections
+    * @param borrowTimeout how long (ms) a caller waits for a free connection
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public Cafe(String dbname, String dbport, String user, String passwd,
+               int minPool, int maxPool, long borrowTimeout) throws SQLException {
+      this(dbname, dbport, user, passwd, minPool, maxPool, borrowTimeout, false);
+   }//end Cafe
+
+   private Cafe(String dbname, String dbport, String user, String passwd,
+                int minPool, int maxPool, long borrowTimeout, boolean connectLater) throws SQLException {
 
       System.out.print("Connecting to database...");
       try{
@@ -57,9 +155,21 @@ public class Cafe {
          String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
          System.out.println ("Connection URL: " + url + "\n");
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
+         // open the pool of physical connections
+         this._pool = new ConnectionPool(url, user, passwd, minPool, maxPool, borrowTimeout,
+                                         Long.getLong("cafe.pool.validateAfter", 30000L),
+                                         Long.getLong("cafe.pool.idleTimeout", 300000L),
+                                         Integer.getInteger("cafe.pool.statementCache", 64),
+                                         connectLater);
+         String slowLog = System.getProperty("cafe.slowQuery.log");
+         this._stats = new StatementStats(Long.getLong("cafe.slowQuery.millis", 250L),
+                                          slowLog == null ? null : new File(slowLog));
+         this._connectLater = connectLater;
+         if (connectLater)
+            return;
+         this._stats.register();
          System.out.println("Done");
+         ensurePartitions();
       }catch (Exception e){
          System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
          System.out.println("Make sure you started postgres on this machine");
@@ -67,22 +177,130 @@ public class Cafe {
       }//end catch
    }//end Cafe
 
+   /**
+    * Opens the connection left to it by connectLater, then registers the
+    * statistics with JMX and creates the partitions ahead, which the
+    * constructor does otherwise. Does nothing for other instances.
+    *
+    * @throws java.sql.SQLException when failed to make a connection
+    */
+   public void connect() throws SQLException {
+      if (!_connectLater)
+         return;
+      this._pool.openDeferred();
+      this._stats.register();
+      ensurePartitions();
+   }//end connect
+
+   /**
+    * Runs a query once with values that match nothing, without recording
+    * it, so its statement is cached on the pooled connection and the
+    * server has read the tables' catalog before a user runs it for real.
+    *
+    * @param query the input query string, with ? placeholders for params
+    * @param params the values bound to the placeholders, in order
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public void prewarm(String query, Object... params) throws SQLException {
+      ConnectionPool.PooledConnection conn = this._pool.borrow();
+      try{
+         PreparedStatement stmt = prepare(conn, query, params);
+         try{
+            stmt.executeQuery().close();
+         }catch (SQLException e){
+            conn.statements().evict(query);
+            throw e;
+         }finally{
+            conn.statements().release(query, stmt);
+         }
+      }finally{
+         this._pool.release(conn);
+      }
+   }//end prewarm
+
+   /**
+    * @return the connection pool backing this instance, e.g. for its metrics
+    */
+   public ConnectionPool getPool(){
+      return this._pool;
+   }
+
+   /**
+    * Creates the Orders and ItemStatus partitions of the coming months
+    * (cafe.partition.ahead, 2) so no order lands in a default partition.
+    * Failures are reported, orders still go to the default partitions.
+    */
+   private void ensurePartitions(){
+      int months = Integer.getInteger("cafe.partition.ahead", 2);
+      if (months < 0)
+         return;
+      try{
+         new PartitionManager(this).ensureAhead(months);
+      }catch (Exception e){
+         System.err.println("Unable to create the partitions ahead: " + e.getMessage());
+      }//end try
+   }//end ensurePartitions
+
+   /**
+    * @return the in-process copy of the Menu table
+    */
+   public MenuCache getMenu(){
+      return this._menu;
+   }
+
+   /**
+    * @return the execution statistics of every SQL template
+    */
+   public StatementStats getStatementStats(){
+      return this._stats;
+   }
+
+   /**
+    * @return the writer behind updateItemStatus
+    */
+   public StatusWriter getStatusWriter(){
+      return this._statusWriter;
+   }
+
+   /**
+    * @return the rolling totals of the orders of the last 24 hours
+    */
+   public OrderDashboard getDashboard(){
+      return this._dashboard;
+   }
+
    /**
     * Method to execute an update SQL statement.  Update SQL instructions
     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
     *
-    * @param sql the input SQL string
+    * @param sql the input SQL string, with ? placeholders for params
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows affected
     * @throws java.sql.SQLException when update failed
     */
-   public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the update instruction
-      stmt.executeUpdate (sql);
-
-      // close the instruction
-      stmt.close ();
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      long start = System.nanoTime();
+      ConnectionPool.PooledConnection conn = borrow(sql, start);
+      long acquired = System.nanoTime();
+      int rowCount = -1;
+      SQLException failure = null;
+      try{
+         // fetches the cached statement object
+         PreparedStatement stmt = prepare(conn, sql, params);
+         try{
+            // issues the update instruction
+            rowCount = stmt.executeUpdate ();
+            return rowCount;
+         }finally{
+            conn.statements().release(sql, stmt);
+         }
+      }catch (SQLException e){
+         failure = e;
+         throw e;
+      }finally{
+         this._pool.release(conn);
+         _stats.record(sql, System.nanoTime() - start, acquired - start, rowCount, failure);
+      }
    }//end executeUpdate
 
    /**
@@ -90,78 +308,44 @@ public class Cafe {
     * method issues the query to the DBMS and outputs the results to
     * standard out.
     *
-    * @param query the input query string
+    * @param query the input query string, with ? placeholders for params
+    * @param params the values bound to the placeholders, in order
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = true;
-      while (rs.next()){
-		 if(outputHeader){
-			for(int i = 1; i <= numCol; i++){
-			System.out.print(rsmd.getColumnName(i) + "\t");
-			}
-			System.out.println();
-			outputHeader = false;
-		 }
-         for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         System.out.println ();
-         ++rowCount;
-      }//end while
-      stmt.close ();
-      return rowCount;
-   }//end executeQuery
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      ResultPrinter printer = ResultPrinter.to(out());
+      try{
+         forEachRow(query, printer, params);
+      }finally{
+         printer.flush();
+      }
+      return printer.getRowCount();
+   }//end executeQueryAndPrintResult
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and returns the results as
-    * a list of records. Each record in turn is a list of attribute values
+    * a list of records. Each record in turn is a list of attribute values.
+    * Prefer forEachRow or exists when the rows need not all be kept.
     *
-    * @param query the input query string
+    * @param query the input query string, with ? placeholders for params
+    * @param params the values bound to the placeholders, in order
     * @return the query result as a list of records
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and saves the data returned by the query.
-      boolean outputHeader = false;
-      List<List<String>> result  = new ArrayList<List<String>>();
-      while (rs.next()){
-        List<String> record = new ArrayList<String>();
-		for (int i=1; i<=numCol; ++i)
-			record.add(rs.getString (i));
-        result.add(record);
-      }//end while
-      stmt.close ();
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      final List<List<String>> result  = new ArrayList<List<String>>();
+      forEachRow(query, new RowHandler(){
+         public boolean handle(ResultSet rs) throws SQLException {
+            int numCol = rs.getMetaData ().getColumnCount ();
+            List<String> record = new ArrayList<String>(numCol);
+            for (int i=1; i<=numCol; ++i)
+               record.add(rs.getString (i));
+            result.add(record);
+            return true;
+         }
+      }, params);
       return result;
    }//end executeQueryAndReturnResult
 
@@ -169,56 +353,396 @@ public class Cafe {
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and returns the number of results
     *
-    * @param query the input query string
+    * @param query the input query string, with ? placeholders for params
+    * @param params the values bound to the placeholders, in order
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
+   public int executeQuery (String query, Object... params) throws SQLException {
+      return forEachRow(query, new RowHandler(){
+         public boolean handle(ResultSet rs){
+            return true;
+         }
+      }, params);
+   }
+
+   /**
+    * Method to check whether a query returns at least one row.  The query
+    * is wrapped in EXISTS so the server stops at the first match and no
+    * rows are shipped to the client.
+    *
+    * @param query the input query string, with ? placeholders for params
+    * @param params the values bound to the placeholders, in order
+    * @return true when the query has a result
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public boolean exists (String query, Object... params) throws SQLException {
+      return forEachRow("SELECT 1 WHERE EXISTS (" + query + ")", new RowHandler(){
+         public boolean handle(ResultSet rs){
+            return false;
+         }
+      }, params) > 0;
+   }//end exists
 
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
+   /**
+    * Method to hand the rows of a query to a callback.  The whole result
+    * is read at once, in autocommit, which suits the point lookups and
+    * short lists most queries return; see streamRows for large results.
+    *
+    * @param query the input query string, with ? placeholders for params
+    * @param handler called once per row, returns false to stop early
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows handed to the handler
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int forEachRow (String query, RowHandler handler, Object... params) throws SQLException {
+      return forEachRow(query, false, handler, params);
+   }//end forEachRow
 
-       int rowCount = 0;
+   /**
+    * Method to stream the rows of a query to a callback.  Rows are pulled
+    * from a server-side cursor fetchSize rows at a time (the cafe.fetchSize
+    * property, 100 by default), so memory stays flat however large the
+    * result is. The cursor needs a transaction, which costs a COMMIT, so
+    * this is for results that can be large. A driver without fetch size
+    * support (the bundled pg73jdbc3) gets a plain read instead, the same
+    * as forEachRow.
+    *
+    * @param query the input query string, with ? placeholders for params
+    * @param handler called once per row, returns false to stop early
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows handed to the handler
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int streamRows (String query, RowHandler handler, Object... params) throws SQLException {
+      return forEachRow(query, true, handler, params);
+   }//end streamRows
 
-       // iterates through the result set and count nuber of results.
-       while (rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
-   }
+   private int forEachRow (String query, boolean stream, RowHandler handler, Object... params) throws SQLException {
+      long start = System.nanoTime();
+      ConnectionPool.PooledConnection conn = borrow(query, start);
+      long acquired = System.nanoTime();
+      int rowCount = -1;
+      SQLException failure = null;
+      try{
+         Connection c = conn.connection();
+         // fetches the cached statement object
+         PreparedStatement stmt = prepare(conn, query, params);
+         boolean cursor = stream && _cursors && fetchSize(stmt, _fetchSize);
+         try{
+            // the driver only uses a cursor inside a transaction.
+            if (cursor)
+               c.setAutoCommit(false);
+            // issues the query instruction
+            ResultSet rs = stmt.executeQuery ();
+            rowCount = 0;
+            try{
+               while (rs.next()){
+                  ++rowCount;
+                  if (!handler.handle(rs))
+                     break;
+               }//end while
+            }finally{
+               rs.close ();
+            }
+            if (cursor)
+               c.commit();
+            return rowCount;
+         }finally{
+            if (cursor)
+               fetchSize(stmt, 0);
+            conn.statements().release(query, stmt);
+         }
+      }catch (SQLException e){
+         failure = e;
+         throw e;
+      }finally{
+         // rolls back anything left open and restores autocommit.
+         this._pool.release(conn);
+         _stats.record(query, System.nanoTime() - start, acquired - start, rowCount, failure);
+      }
+   }//end forEachRow
+
+   /**
+    * Sets the fetch size of a statement without throwing, so resetting it
+    * cannot hide the error of the query.  The first refusal turns the
+    * cursors off for good: pg73jdbc3 answers "not implemented".
+    *
+    * @return false when the driver did not take it
+    */
+   private boolean fetchSize (PreparedStatement stmt, int rows){
+      try{
+         stmt.setFetchSize(rows);
+         return true;
+      }catch (SQLException e){
+         if (rows > 0)
+            _cursors = false;
+         return false;
+      }
+   }//end fetchSize
+
+   /**
+    * Method to place an order for a basket of menu items in a single
+    * transaction.  The total is the sum of the menu prices plus the tip.
+    * The order id is taken from a block reserved by the IdAllocator, so
+    * it is known before the insert and needs no query of its own, and the
+    * ItemStatus rows go to the server as one batch.
+    * An item ordered more than once gets a single ItemStatus row with its
+    * quantity.
+    *
+    * @param login the customer placing the order
+    * @param itemNames the names of the ordered items, repeats allowed
+    * @param tip added to the total
+    * @return the new order, with the total as stored
+    * @throws java.sql.SQLException when an item is not on the menu or the insert failed
+    */
+   public Order placeOrder (String login, List<String> itemNames, float tip) throws SQLException {
+      Map<String, Integer> quantities = new LinkedHashMap<String, Integer>();
+      BigDecimal total = new BigDecimal(Float.toString(tip));
+      for (String name : itemNames){
+         MenuItem item = _menu.getItem(name);
+         if (item == null)
+            throw new SQLException("There is no item called " + name + " on the menu");
+         total = total.add(item.getPrice());
+         Integer count = quantities.get(item.getItemName());
+         quantities.put(item.getItemName(), count == null ? 1 : count + 1);
+      }//end for
+      // Orders.total is numeric(10,2), the dashboard counts what is stored.
+      total = total.setScale(2, RoundingMode.HALF_UP);
+      int orderid = _orderIds.nextId();
+      Timestamp now = new Timestamp(System.currentTimeMillis());
+
+      long start = System.nanoTime();
+      ConnectionPool.PooledConnection conn = borrow(INSERT_ORDER, start);
+      long acquired = System.nanoTime();
+      // the statement running, charged with a failure.
+      String current = INSERT_ORDER;
+      try{
+         Connection c = conn.connection();
+         c.setAutoCommit(false);
+         PreparedStatement stmt = prepare(conn, INSERT_ORDER, new Object[]{orderid, login, false, now, total});
+         try{
+            stmt.executeUpdate ();
+         }finally{
+            conn.statements().release(INSERT_ORDER, stmt);
+         }
+         long inserted = System.nanoTime();
+         _stats.record(INSERT_ORDER, inserted - start, acquired - start, 1, null);
+         current = INSERT_ITEM_STATUS;
+         start = inserted;
+         acquired = inserted;
+         stmt = conn.statements().prepare(INSERT_ITEM_STATUS);
+         try{
+            for (Map.Entry<String, Integer> entry : quantities.entrySet()){
+               stmt.setInt(1, orderid);
+               stmt.setString(2, entry.getKey());
+               stmt.setTimestamp(3, now);
+               stmt.setTimestamp(4, now);
+               stmt.setInt(5, entry.getValue());
+               stmt.addBatch();
+            }//end for
+            stmt.executeBatch();
+         }finally{
+            stmt.clearBatch();
+            conn.statements().release(INSERT_ITEM_STATUS, stmt);
+         }
+         c.commit();
+         _stats.record(INSERT_ITEM_STATUS, System.nanoTime() - start, 0, quantities.size(), null);
+      }catch (SQLException e){
+         _stats.record(current, System.nanoTime() - start, acquired - start, -1, e);
+         throw e;
+      }finally{
+         // rolls back unless committed above and restores autocommit.
+         this._pool.release(conn);
+      }
+      _dashboard.orderPlaced(orderid, now, total, quantities);
+      return new Order(orderid, login, false, now, total);
+   }//end placeOrder
+
+   /**
+    * Method to order every favorite item of a user once.  The order and
+    * its ItemStatus rows are built from UserFavorites and Menu by the
+    * server in a single INSERT ... SELECT statement, one round trip
+    * whatever the number of favorites.
+    *
+    * @param login the customer placing the order
+    * @return the id of the new order, or -1 when the user has no favorites
+    * @throws java.sql.SQLException when the insert failed
+    */
+   public int reorderFavorites (String login) throws SQLException {
+      final int orderid = _orderIds.nextId();
+      final Timestamp now = new Timestamp(System.currentTimeMillis());
+      final Map<String, Integer> quantities = new LinkedHashMap<String, Integer>();
+      final BigDecimal[] total = {null};
+      forEachRow(REORDER_FAVORITES, new RowHandler(){
+         public boolean handle(ResultSet rs) throws SQLException {
+            quantities.put(rs.getString(1), 1);
+            total[0] = rs.getBigDecimal(2);
+            return true;
+         }
+      }, login, orderid, login, now, orderid, now, now);
+      if (total[0] == null)
+         return -1;
+      _dashboard.orderPlaced(orderid, now, total[0], quantities);
+      return orderid;
+   }//end reorderFavorites
+
+   /**
+    * Method to change the status of an ordered item. The update is queued
+    * and written with others in one batch a few milliseconds later; a
+    * newer status for the same item replaces a queued one.
+    *
+    * @param orderid the order
+    * @param itemName the ordered item
+    * @param status the new status
+    * @return completes with false when the order has no such item
+    * @throws java.lang.InterruptedException when interrupted while too many updates are queued
+    */
+   public Future<Boolean> updateItemStatus (int orderid, String itemName, String status) throws InterruptedException {
+      return _statusWriter.submit(orderid, itemName, status);
+   }//end updateItemStatus
 
    /**
     * Method to fetch the last value from sequence. This
     * method issues the query to the DBMS and returns the current
-    * value of sequence used for autogenerated keys
+    * value of sequence used for autogenerated keys. currval is tracked per
+    * database session; the pool hands a single caller back the connection it
+    * used last, so this sees the nextval of that caller's previous insert.
+    * Order ids do not need it, placeOrder returns the id it inserted.
     *
     * @param sequence name of the DB sequence
     * @return current value of a sequence
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int getCurrSeqVal(String sequence) throws SQLException {
-	Statement stmt = this._connection.createStatement ();
-
-	ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-	if (rs.next())
-		return rs.getInt(1);
-	return -1;
+      List<List<String>> result = executeQueryAndReturnResult("SELECT currval(CAST(? AS regclass))", sequence);
+      if (result.isEmpty())
+         return -1;
+      return Integer.parseInt(result.get(0).get(0).trim());
    }
 
    /**
-    * Method to close the physical connection if it is open.
+    * Callback receiving the rows of a query, see forEachRow and streamRows.
     */
-   public void cleanup(){
+   public interface RowHandler {
+      /**
+       * @param rs the result set positioned on the current row
+       * @return true to continue with the next row, false to stop
+       */
+      boolean handle(ResultSet rs) throws SQLException;
+   }//end RowHandler
+
+   /**
+    * Fetches the statement for sql from the connection's cache and binds
+    * params to it. A statement that fails to bind is evicted so a broken
+    * handle is never reused.
+    */
+   private PreparedStatement prepare(ConnectionPool.PooledConnection conn,
+                                     String sql, Object[] params) throws SQLException {
+      PreparedStatement stmt = conn.statements().prepare(sql);
       try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
+         for (int i = 0; i < params.length; ++i){
+            Object value = params[i];
+            if (value == null)
+               stmt.setNull(i + 1, Types.VARCHAR);
+            else if (value instanceof String)
+               stmt.setString(i + 1, (String) value);
+            else if (value instanceof Integer)
+               stmt.setInt(i + 1, ((Integer) value).intValue());
+            else if (value instanceof Long)
+               stmt.setLong(i + 1, ((Long) value).longValue());
+            else if (value instanceof Float)
+               stmt.setFloat(i + 1, ((Float) value).floatValue());
+            else if (value instanceof Double)
+               stmt.setDouble(i + 1, ((Double) value).doubleValue());
+            else if (value instanceof BigDecimal)
+               stmt.setBigDecimal(i + 1, (BigDecimal) value);
+            else if (value instanceof Boolean)
+               stmt.setBoolean(i + 1, ((Boolean) value).booleanValue());
+            else if (value instanceof Timestamp)
+               stmt.setTimestamp(i + 1, (Timestamp) value);
+            else if (value instanceof int[])
+               // an array literal, the statement casts it: CAST(? AS int[])
+               stmt.setString(i + 1, arrayLiteral((int[]) value));
+            else
+               stmt.setObject(i + 1, value);
+         }//end for
+      }catch (SQLException e){
+         conn.statements().evict(sql);
+         throw e;
+      }//end try
+      return stmt;
+   }//end prepare
+
+   // {1,2,3}; the driver predates JDBC 4 Connection.createArrayOf.
+   private static String arrayLiteral(int[] values){
+      StringBuilder literal = new StringBuilder(values.length * 8 + 2).append('{');
+      for (int i = 0; i < values.length; ++i){
+         if (i > 0)
+            literal.append(',');
+         literal.append(values[i]);
+      }//end for
+      return literal.append('}').toString();
+   }//end arrayLiteral
+
+   /**
+    * @return how often each SQL template was executed by this instance
+    */
+   public Map<String, Long> getStatementCounts(){
+      return _stats.getCounts();
+   }//end getStatementCounts
+
+   /**
+    * Appends the statement counts to a workload file, one "count TAB sql"
+    * line per template, for the IndexAdvisor to read.
+    *
+    * @param file the workload file
+    * @throws java.io.IOException when the file cannot be written
+    */
+   public void writeWorkload(File file) throws IOException {
+      PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
+      try{
+         for (Map.Entry<String, Long> entry : getStatementCounts().entrySet())
+            out.println(entry.getValue() + "\t" + entry.getKey().replace('\n', ' '));
+      }finally{
+         out.close();
+      }//end try
+   }//end writeWorkload
+
+   // borrows a connection, recording a timeout against the statement that waited.
+   private ConnectionPool.PooledConnection borrow(String sql, long start) throws SQLException {
+      try{
+         return this._pool.borrow();
       }catch (SQLException e){
-         // ignored.
+         _stats.record(sql, System.nanoTime() - start, System.nanoTime() - start, -1, e);
+         throw e;
       }//end try
+   }//end borrow
+
+   /**
+    * Method to close the pooled physical connections.
+    */
+   public void cleanup(){
+      try{
+         // queued status updates go out before the pool closes.
+         _statusWriter.close();
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }//end try
+      String workloadLog = System.getProperty("cafe.workload.log");
+      if (workloadLog != null){
+         try{
+            writeWorkload(new File(workloadLog));
+         }catch (IOException e){
+            System.err.println("Unable to write " + workloadLog + ": " + e.getMessage());
+         }//end try
+      }//end if
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
+      if (this._stats != null){
+         this._stats.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -238,58 +762,35 @@ public class Cafe {
 
       Greeting();
       Cafe esql = null;
+      Thread starter = null;
       try{
-         // use postgres JDBC driver.
-         Class.forName ("org.postgresql.Driver").newInstance ();
-         // instantiate the Cafe object and creates a physical
-         // connection.
          String dbname = args[0];
          String dbport = args[1];
          String user = args[2];
-         esql = new Cafe (dbname, dbport, user, "");
-
-         boolean keepon = true;
-         while(keepon) {
-            // These are sample SQL statements
-            System.out.println("MAIN MENU");
-            System.out.println("---------");
-            System.out.println("1. Create user");
-            System.out.println("2. Log in");
-            System.out.println("9. < EXIT");
-            String authorisedUser = null;
-            switch (readChoice()){
-               case 1: CreateUser(esql); break;
-               case 2: authorisedUser = LogIn(esql); break;
-               case 9: keepon = false; break;
-               default : System.out.println("Unrecognized choice!"); break;
-            }//end switch
-            if (authorisedUser != null) {
-              boolean usermenu = true;
-              while(usermenu) {
-                System.out.println("MAIN MENU");
-                System.out.println("---------");
-                System.out.println("1. Goto Menu");
-                System.out.println("2. Update Profile");
-                System.out.println("3. Place a Order");
-                System.out.println("4. Update a Order");
-                System.out.println(".........................");
-                System.out.println("9. Log out");
-                switch (readChoice()){
-                   case 1: Menu(esql, authorisedUser); break;
-                   case 2: UpdateProfile(esql, authorisedUser); break;
-                   case 3: PlaceOrder(esql, authorisedUser); break;
-                   case 4: UpdateOrder(esql, authorisedUser); break;
-                   case 9: usermenu = false; break;
-                   default : System.out.println("Unrecognized choice!"); break;
-                }
-              }
-            }
-         }//end while
+         CafeService service;
+         if (Boolean.getBoolean("cafe.fastStart")){
+            // the menu shows at once, the driver loads and connects meanwhile.
+            esql = new Cafe (dbname, dbport, user, "", true);
+            service = new CafeService(esql);
+            starter = startInBackground(esql, service);
+         }else{
+            // use postgres JDBC driver.
+            Class.forName ("org.postgresql.Driver");
+            // instantiate the Cafe object and creates a physical
+            // connection.
+            esql = new Cafe (dbname, dbport, user, "");
+            service = new CafeService(esql);
+         }//end if
+         MainMenu(service);
       }catch(Exception e) {
          System.err.println (e.getMessage ());
       }finally{
          // make sure to cleanup the created table and close the connection.
          try{
+            // a user leaving at once waits for the start, it does not fail on a closed pool.
+            if(starter != null) {
+               starter.join();
+            }//end if
             if(esql != null) {
                System.out.print("Disconnecting from database...");
                esql.cleanup ();
@@ -301,76 +802,228 @@ public class Cafe {
       }//end try
    }//end main
 
+   /*
+    * Loads the driver, connects and prewarms on a daemon thread, for the
+    * cafe.fastStart mode of main. A statement run by the user meanwhile
+    * waits for the connection, see ConnectionPool.openDeferred
+    **/
+   private static Thread startInBackground(final Cafe esql, final CafeService service){
+      Thread starter = new Thread("cafe-start"){
+         public void run(){
+            try{
+               Class.forName ("org.postgresql.Driver");
+            }catch (ClassNotFoundException e){
+               System.err.println("Error - Unable to Connect to Database: no driver " + e.getMessage());
+            }//end try
+            try{
+               esql.connect();
+            }catch (SQLException e){
+               System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
+               System.err.println("Make sure you started postgres on this machine");
+               return;
+            }//end try
+            try{
+               service.prewarm();
+            }catch (Exception e){
+               System.err.println("Unable to prewarm the statements: " + e.getMessage());
+            }//end try
+         }
+      };
+      starter.setDaemon(true);
+      starter.start();
+      return starter;
+   }//end startInBackground
+
+   /*
+    * The menus of one session, until the user exits or the input ends
+    **/
+   public static void MainMenu(CafeService service) throws Exception {
+      boolean keepon = true;
+      while(keepon) {
+         // These are sample SQL statements
+         out().println("MAIN MENU");
+         out().println("---------");
+         out().println("1. Create user");
+         out().println("2. Log in");
+         out().println("9. < EXIT");
+         Session authorisedUser = null;
+         switch (readChoice()){
+            case 1: CreateUser(service); break;
+            case 2: authorisedUser = LogIn(service); break;
+            case 9: keepon = false; break;
+            default : out().println("Unrecognized choice!"); break;
+         }//end switch
+         if (authorisedUser != null) {
+           boolean usermenu = true;
+           while(usermenu) {
+             out().println("MAIN MENU");
+             out().println("---------");
+             out().println("1. Goto Menu");
+             out().println("2. Update Profile");
+             out().println("3. Place a Order");
+             out().println("4. Update a Order");
+             out().println("5. Order Dashboard");
+             out().println("6. Diagnostics");
+             out().println("7. Reports");
+             out().println(".........................");
+             out().println("9. Log out");
+             switch (readChoice()){
+                case 1: Menu(service, authorisedUser); break;
+                case 2: UpdateProfile(service, authorisedUser); break;
+                case 3: PlaceOrder(service, authorisedUser); break;
+                case 4: UpdateOrder(service, authorisedUser); break;
+                case 5: Dashboard(service, authorisedUser); break;
+                case 6: Diagnostics(service, authorisedUser); break;
+                case 7: Reports(service, authorisedUser); break;
+                case 9: service.logOut(authorisedUser); usermenu = false; break;
+                default : out().println("Unrecognized choice!"); break;
+             }
+           }
+         }
+      }//end while
+   }//end MainMenu
+
    public static void Greeting(){
-      System.out.println(
+      out().println(
          "\n\n*******************************************************\n" +
          "              User Interface      	               \n" +
          "*******************************************************\n");
    }//end Greeting
 
    /*
-    * Reads the users choice given from the keyboard
+    * Reads the users choice given from the keyboard, 9 (go back) once the
+    * input has ended
     * @int
     **/
    public static int readChoice() {
       int input;
       // returns only if a correct value is given.
       do {
-         System.out.print("Please make your choice: ");
+         out().print("Please make your choice: ");
          try { // read the integer, parse it and break.
-            input = Integer.parseInt(in.readLine());
+            String line = in().readLine();
+            if (line == null)
+               return 9;
+            input = Integer.parseInt(line);
             break;
          }catch (Exception e) {
-            System.out.println("Your input is invalid!");
+            out().println("Your input is invalid!");
             continue;
          }//end try
       }while (true);
       return input;
    }//end readChoice
 
+   /*
+    * Shows orders one page at a time, newest first, letting the user move to
+    * the next (older) or previous page. Pages are fetched by keyset, so
+    * every page costs the same however far back the user goes
+    **/
+   public static void BrowseOrders(CafeService service, Session authorisedUser, boolean recent, int pageSize) throws Exception {
+      // the "after" order of every page before the current one.
+      List<Order> previous = new ArrayList<Order>();
+      Order after = null;
+      while(true){
+         Order.Page page = recent ? service.getRecentOrders(authorisedUser, pageSize, after)
+                                  : service.getOrderHistory(authorisedUser, pageSize, after);
+         PrintOrders(page.getOrders());
+         if(!page.hasMore() && previous.isEmpty()){
+            return;
+         }
+         out().print("Page " + (previous.size() + 1) + (page.hasMore() ? " - [N]ext" : "")
+                          + (previous.isEmpty() ? "" : " [P]revious") + " [Q]uit: ");
+         String nav = in().readLine();
+         if(nav == null || "Q".equalsIgnoreCase(nav.trim()) || nav.trim().isEmpty()){
+            return;
+         }
+         else if("N".equalsIgnoreCase(nav.trim()) && page.hasMore()){
+            previous.add(after);
+            after = page.last();
+         }
+         else if("P".equalsIgnoreCase(nav.trim()) && !previous.isEmpty()){
+            after = previous.remove(previous.size() - 1);
+         }
+      }
+   }//end BrowseOrders
+
+   /*
+    * Prints orders as a table
+    **/
+   public static void PrintOrders(List<Order> orders){
+      if(orders.isEmpty()){
+         out().println("(no orders)");
+         return;
+      }
+      ResultPrinter printer = ResultPrinter.to(out());
+      printer.printHeader(new String[]{"orderid", "login", "paid", "timestamprecieved", "total"},
+                          new int[]{7, 20, 5, 23, 8});
+      for(Order order : orders){
+         printer.printValues(String.valueOf(order.getOrderid()), order.getLogin(), String.valueOf(order.isPaid()),
+                             String.valueOf(order.getTimeStampRecieved()), String.format("%.2f", order.getTotal()));
+      }
+      printer.flush();
+   }//end PrintOrders
+
+   /*
+    * Prints menu items as a table, with or without their description and image
+    **/
+   public static void PrintMenuItems(List<MenuItem> items, boolean details){
+      if(items.isEmpty()){
+         out().println("(no items)");
+         return;
+      }
+      ResultPrinter printer = ResultPrinter.to(out());
+      if(details){
+         printer.printHeader(new String[]{"itemname", "type", "price", "description", "imageurl"},
+                             new int[]{20, 10, 6, 30, 30});
+         for(MenuItem item : items){
+            printer.printValues(item.getItemName(), item.getType(), String.valueOf(item.getPrice()),
+                                item.getDescription(), item.getImageURL());
+         }
+      }
+      else{
+         printer.printHeader(new String[]{"itemname", "price"}, new int[]{20, 6});
+         for(MenuItem item : items){
+            printer.printValues(item.getItemName(), String.valueOf(item.getPrice()));
+         }
+      }
+      printer.flush();
+   }//end PrintMenuItems
+
    /*
     * Creates a new user with privided login, passowrd and phoneNum
     **/
-   public static void CreateUser(Cafe esql){
+   public static void CreateUser(CafeService service){
       try{
-         System.out.print("\tEnter user login: ");
-         String login = in.readLine();
-         System.out.print("\tEnter user password: ");
-         String password = in.readLine();
-         System.out.print("\tEnter user phone: ");
-         String phone = in.readLine();
-         
-	    String type="Customer";
-	    String favItems="";
-
-				 String query = String.format("INSERT INTO USERS (phoneNum, login, password, favItems, type) VALUES ('%s','%s','%s','%s','%s')", phone, login, password, favItems, type);
-
-         esql.executeUpdate(query);
-         System.out.println ("User successfully created!");
+         out().print("\tEnter user login: ");
+         String login = in().readLine();
+         out().print("\tEnter user password: ");
+         String password = in().readLine();
+         out().print("\tEnter user phone: ");
+         String phone = in().readLine();
+
+         service.createUser(login, password, phone);
+         out().println ("User successfully created!");
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
    }//end CreateUser
 
 
    /*
     * Check log in credentials for an existing user
-    * @return User login or null is the user does not exist
+    * @return the user's session or null is the user does not exist
     **/
-   public static String LogIn(Cafe esql){
+   public static Session LogIn(CafeService service){
       try{
-         System.out.print("\tEnter user login: ");
-         String login = in.readLine();
-         System.out.print("\tEnter user password: ");
-         String password = in.readLine();
-
-         String query = String.format("SELECT * FROM USERS WHERE login = '%s' AND password = '%s'", login, password);
-         int userNum = esql.executeQuery(query);
-	 if (userNum > 0)
-		return login;
-         return null;
+         out().print("\tEnter user login: ");
+         String login = in().readLine();
+         out().print("\tEnter user password: ");
+         String password = in().readLine();
+
+         return service.logIn(login, password);
       }catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
          return null;
       }
    }//end
@@ -378,425 +1031,716 @@ public class Cafe {
  // Rest of the functions definition go in here
 
  /*I am not to sure is I need to put "sting authorisedUser" in the void function too  */
-  public static void Menu(Cafe esql, String authorisedUser){
+  public static void Menu(CafeService service, Session authorisedUser){
       try{
          /*Trying to display all item names and prices from menu */
          // we can ask the user if he wants to see the menu?
-         System.out.println("===========================================================");
+         out().println("===========================================================");
          boolean makeSure = true;
          while(makeSure == true){
-            System.out.println("Do you want to see our Cafe Menu? Yes or No");
-            String seeMenu = in.readLine();
+            out().println("Do you want to see our Cafe Menu? Yes or No");
+            String seeMenu = in().readLine();
             if("Yes".equalsIgnoreCase(seeMenu)){
-               String query = String.format("SELECT * FROM MENU"); 
-               esql.executeQueryAndPrintResult(query);
+               PrintMenuItems(service.getMenuItems(), true);
             }
-            else if("No".equalsIgnoreCase(seeMenu)){
+            else if(seeMenu == null || "No".equalsIgnoreCase(seeMenu)){  // null once the input has ended
                makeSure = false;
             }
             else{
-               System.out.println("Sorry Invalid input. Try again");
+               out().println("Sorry Invalid input. Try again");
             }
          }
-         System.out.println("====================================");
-         System.out.println("1. Search For Item");
-         System.out.println("2. Edit Menu");
-         System.out.println("====================================");
-         System.out.println("9. Go Back");
+         out().println("====================================");
+         out().println("1. Search For Item");
+         out().println("2. Edit Menu");
+         out().println("3. Who Favorites an Item");
+         out().println("====================================");
+         out().println("9. Go Back");
          boolean menuYes = true;
          while(menuYes){
             switch(readChoice()){
-               case 1: SearchItem(esql);break;  
-               case 2: UpdateMenu(esql, authorisedUser);break;
+               case 1: SearchItem(service);break;  
+               case 2: UpdateMenu(service, authorisedUser);break;
+               case 3: FavoritedBy(service, authorisedUser);break;
                case 9: menuYes = false; break; 
-               default : System.out.println("Unrecognized Choice!");break;
+               default : out().println("Unrecognized Choice!");break;
             }
          }
       }
       catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }     
    }
       
   /*Made a list of commands for the user to update his/her profile */    
-  public static void UpdateProfile(Cafe esql, String authorisedUser){
+  public static void UpdateProfile(CafeService service, Session authorisedUser){
       try{
          boolean ProfileInfo = true;
          while(ProfileInfo == true){
-            System.out.println("Do you want to see your Profile Information? 'Yes' or 'No'");
-            String seeProfile = in.readLine();
+            out().println("Do you want to see your Profile Information? 'Yes' or 'No'");
+            String seeProfile = in().readLine();
             if("Yes".equalsIgnoreCase(seeProfile)){
-               String displayProfile=String.format("SELECT * FROM Users WHERE login='%s'",authorisedUser);
-               esql.executeQueryAndPrintResult(displayProfile);
+               String displayProfile="SELECT * FROM Users WHERE login=?";
+               service.getDatabase().executeQueryAndPrintResult(displayProfile, authorisedUser.getLogin());
+               out().println("Favorite items: " + Join(service.getFavorites(authorisedUser)));
             }
-            else if("No".equalsIgnoreCase(seeProfile)){
+            else if(seeProfile == null || "No".equalsIgnoreCase(seeProfile)){  // null once the input has ended
                ProfileInfo=false;
             }
             else{
-               System.out.println("Invalid Input! Try again!");
+               out().println("Invalid Input! Try again!");
             }
          }
          boolean profile = true;
          while(profile){
-            System.out.println("---Updating Profile---");
-            System.out.println("====================================");
-            System.out.println("1. Change Password");
-            System.out.println("2. Change Phone Number");
-            System.out.println("3. Change Favorite Item");
-            System.out.println("4. Change User Type Authority");
-            System.out.println("====================================");
-            System.out.println("9. Go Back");
+            out().println("---Updating Profile---");
+            out().println("====================================");
+            out().println("1. Change Password");
+            out().println("2. Change Phone Number");
+            out().println("3. Change Favorite Items");
+            out().println("4. Change User Type Authority");
+            out().println("====================================");
+            out().println("9. Go Back");
             switch (readChoice()){
-               case 1: ChangePassword(esql, authorisedUser);break;
-               case 2: ChangePhoneNumber(esql, authorisedUser);break;
-               case 3: ChangeFavItem(esql, authorisedUser);break;
-               case 4: ChangeType(esql, authorisedUser);break;
+               case 1: ChangePassword(service, authorisedUser);break;
+               case 2: ChangePhoneNumber(service, authorisedUser);break;
+               case 3: ChangeFavItem(service, authorisedUser);break;
+               case 4: ChangeType(service, authorisedUser);break;
                case 9: profile = false; break;
-               default : System.out.println("Unrecognized Choice!"); break;
+               default : out().println("Unrecognized Choice!"); break;
             }
          }
       }
       catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }   
   }
  /* first show the previous orders(5 most recent for customers) or orders from the past 24 hours for the managers and employees), then 
     place new order */
-  public static void PlaceOrder(Cafe esql, String authorisedUser){  //this is basically adding your order
+  public static void PlaceOrder(CafeService service, Session authorisedUser){  //this is basically adding your order
       try{
-         String check = String.format("SELECT * FROM Users WHERE login ='%s' AND type = 'Customer'", authorisedUser);
-         if(esql.executeQueryAndReturnResult(check).isEmpty()){
-            String query = String.format("SELECT * FROM Orders WHERE timeStampRecieved>= NOW()-INTERVAL '1 DAY'");
-            //or you can do this for String query = String.format("SELECT * FROM Orders WHERE timeStampReceived > (NOW() - INTERVAL 24 HOUR)");
-            esql.executeQueryAndPrintResult(query);
+         if(!authorisedUser.isCustomer()){
+            out().println("Showing the orders from the past 24 hours.");
+            BrowseOrders(service, authorisedUser, true, PAGE_SIZE);
          }
          else{
-            System.out.println("Showing the previous orders (5 most recent) for Customers.");
-            String query = String.format("SELECT * FROM Orders WHERE orderid>=(orderid-5) AND login = '%s'", authorisedUser);
-            //"SELECT * FROM Orders WHERE orderid>=(orderid-5)"
-            esql.executeQueryAndPrintResult(query);  
+            out().println("Showing the previous orders (" + HISTORY_SIZE + " most recent) for Customers.");
+            BrowseOrders(service, authorisedUser, false, HISTORY_SIZE);
          }
 
-         System.out.println("---Placing an Order---");
-         System.out.println("=============================");
+         out().println("---Placing an Order---");
+         out().println("=============================");
          boolean loop = true;
          while(loop==true){
-            System.out.println("Do you want to Add a Order? (Yes/No)");
-            String edit = in.readLine();
-            if("Yes".equalsIgnoreCase(edit)){
-               System.out.println("---Adding Order---");
-               System.out.println("Enter itemName:");
-               String item=in.readLine();
-               String cur=String.format("SELECT price FROM Menu WHERE itemName='%s'",item);
-               esql.executeQueryAndPrintResult(cur);
-               System.out.println("If you are Tipping, then Enter the Price amount with Tip: ");
-               System.out.println("If not, Enter the Price of the item: ");
-               String tipWithPrice = in.readLine();
-                  if(tipWithPrice.isEmpty()){
-                     System.out.println("Sorry! Please enter the correct amount.");
+            out().println("Do you want to Add a Order, or order your Favorites again? (Yes/No/Favorites)");
+            String edit = in().readLine();
+            if("Favorites".equalsIgnoreCase(edit)){
+               int orderid = service.reorderFavorites(authorisedUser);
+               if(orderid < 0){
+                  out().println("You have no favorite items yet, add them under Update Profile.");
+               }
+               else{
+                  out().println("Successfully placed order! Your order id is " + orderid
+                                     + " for " + Join(service.getFavorites(authorisedUser)));
+               }
+            }
+            else if("Yes".equalsIgnoreCase(edit)){
+               out().println("---Adding Order---");
+               List<String> basket = new ArrayList<String>();
+               BigDecimal subtotal = BigDecimal.ZERO;
+               while(true){
+                  out().println("Enter itemName (leave empty to finish):");
+                  String item=in().readLine();
+                  if(item == null || item.trim().isEmpty()){
+                     break;
+                  }
+                  MenuItem cur=service.findItem(item);
+                  if(cur == null){
+                     out().println("There is no item called " + item + " on the menu.");
+                     continue;
                   }
-               Float total = Float.parseFloat(tipWithPrice);
-               Long datetime = System.currentTimeMillis();
-               Timestamp curtime = new Timestamp(datetime); 
-               boolean isPaid= false;
-               String NewOrder = String.format("INSERT INTO Orders (login,paid,timeStampRecieved,total) VALUES('%s','%s','%s','%f')",authorisedUser,isPaid,curtime,total);  //we might not need orderid sense it generates automaticlly 
-               esql.executeUpdate(NewOrder); 
-               String NewOrderID = String.format("SELECT * FROM Orders WHERE login='%s'",authorisedUser);
-               esql.executeQueryAndPrintResult(NewOrderID);
-               System.out.println("Successfully placed order!");
-            }
-            else if("No".equalsIgnoreCase(edit)){
+                  basket.add(cur.getItemName());
+                  subtotal = subtotal.add(cur.getPrice());
+                  out().println("Added " + cur.getItemName() + " (" + String.format("%.2f", cur.getPrice())
+                                     + "), subtotal " + String.format("%.2f", subtotal));
+               }
+               if(basket.isEmpty()){
+                  out().println("Your basket is empty, nothing was ordered.");
+                  continue;
+               }
+               Float tip = ReadTip();
+               if(tip == null){  // the input has ended
+                  continue;
+               }
+               Order order = service.placeOrder(authorisedUser, basket, tip);
+               out().println("Successfully placed order! Your order id is " + order.getOrderid()
+                                  + ", total " + String.format("%.2f", order.getTotal()));
+            }
+            else if(edit == null || "No".equalsIgnoreCase(edit)){  // null once the input has ended
                loop=false;
             }
             else{
-               System.out.println("Invalid Input, try again: ");
-            }
-         }
-         // if("Yes".equalsIgnoreCase(edit)){
-         //    System.out.println("---Adding Order---");
-         //    System.out.println("How many items you want to order?");
-         //    String input = in.readLine(); //convert string into integer
-         //    int orderNumbers = Integer.parseInt(input);
-         //    float total=0;
-         //    float newcur;
-         //    for(int i=0;i<orderNumbers;i++){
-         //       System.out.println("Enter itemName:");
-         //       String item=in.readLine();
-         //       String cur=String.format("SELECT price FROM Menu WHERE itemName='%s'",item);
-         //       newcur=Float.intBitsToFloat(esql.executeQueryAndPrintResult(cur));
-         //       total=total+(newcur*1.421428571*Math.pow(10,-45));
-         //    }
-         //     Long datetime = System.currentTimeMillis();
-         //     Timestamp curtime = new Timestamp(datetime); 
-         //     boolean isPaid= false;
-         //    String NewOrder = String.format("INSERT INTO Orders (orderid,login,paid,timeStampRecieved,total) VALUES('%s','%s','%s','%f')",orderid,authorisedUser,isPaid,curtime,total);  //we might not need orderid sense it generates automaticlly 
-         //    esql.executeUpdate(NewOrder); 
-         //    String NewOrderID = String.format("SELECT * FROM Orders WHERE login='%s'",authorisedUser);
-         //    esql.executeQueryAndPrintResult(NewOrderID);
-
-         //    //System.out.println("Your orderid is");
-         //    //System.out.println(orderid + NewOrder);
-         //    System.out.println("Successfully placed order!");
-         // }   
+               out().println("Invalid Input, try again: ");
+            }
+         }
       }
       catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
    }
 
+  // asks for the tip until it is empty (no tip) or a non-negative amount, null when the input has ended.
+  private static Float ReadTip() throws IOException {
+     while(true){
+        out().println("If you are Tipping, then Enter the Tip amount, otherwise leave it empty: ");
+        String tipInput = in().readLine();
+        if(tipInput == null){
+           return null;
+        }
+        if(tipInput.trim().isEmpty()){
+           return 0f;
+        }
+        try{
+           float tip = Float.parseFloat(tipInput.trim());
+           if(tip >= 0 && !Float.isInfinite(tip)){
+              return tip;
+           }
+        }catch(NumberFormatException e){
+           // asked again below.
+        }
+        out().println("Your input is invalid!");
+     }
+  }
+
 
 
-  public static void UpdateOrder(Cafe esql, String authorisedUser){  
+  public static void UpdateOrder(CafeService service, Session authorisedUser){  
      try{
-         System.out.println("---Updating Order---");
-         System.out.println("=====================================");
-         String check=String.format("SELECT type FROM Users WHERE login = '%s' AND type='Customer'",authorisedUser);
-         
-         if(esql.executeQueryAndReturnResult(check).isEmpty()){
-            System.out.println("Enter the Order ID you want to update:");
-            String orderid=in.readLine();
+         out().println("---Updating Order---");
+         out().println("=====================================");
+         if(!authorisedUser.isCustomer()){
+            out().println("Do you want to mark an order \"Paid\", mark many orders paid at once (\"Bulk\") or change the \"Status\" of its items?");
+            String what=in().readLine();
+            if("Status".equalsIgnoreCase(what)){
+               UpdateItemStatus(service, authorisedUser);
+               return;
+            }
+            if("Bulk".equalsIgnoreCase(what)){
+               MarkOrdersPaid(service, authorisedUser);
+               return;
+            }
+            out().println("Enter the Order ID you want to update:");
+            String orderid=in().readLine();
             //int serialNum = Serial.write(orderid);
-            // System.out.println("Has the order been paid: 'True' or 'False' (type True or False)");
-            // String userInput = in.readLine();
+            // out().println("Has the order been paid: 'True' or 'False' (type True or False)");
+            // String userInput = in().readLine();
             // if('True'.equalsIgnoreCase(userInput)){
-               boolean paidstatus=true;
-               String query=String.format("UPDATE Orders SET paid='%s' WHERE orderid='%s'",paidstatus,orderid);
-               esql.executeUpdate(query);
-               System.out.println("Successfully Updated Order!");
+               if(service.markOrderPaid(authorisedUser, Integer.parseInt(orderid.trim()))){
+                  out().println("Successfully Updated Order!");
+               }
+               else{
+                  out().println("There is no order " + orderid.trim() + ".");
+               }
             //}
             // else if('False'.equalsIgnoreCase(userInput)){return;}
          }
          else{
-            System.out.println("You are a customer, please inform the manager to update your order.");
+            out().println("You are a customer, please inform the manager to update your order.");
+         }
+     }
+     catch(Exception e){
+      err().println (e.getMessage ());
+   }
+  }
+
+  /* Marks many orders paid with one statement, e.g. when the till is reconciled at the end of a shift:
+     a list of order ids, a range of them, or every unpaid order of a login and/or placed before a time */
+  public static void MarkOrdersPaid(CafeService service, Session authorisedUser){
+     try{
+         out().println("Enter the Order IDs separated by commas (e.g. 12, 15, 31), a range (e.g. 100-250),");
+         out().println("or leave it empty to pay every unpaid order of a login or placed before a time:");
+         String ids = in().readLine();
+         if(ids == null){
+            return;
+         }
+         int paid;
+         ids = ids.trim();
+         if(ids.matches("\\d+\\s*-\\s*\\d+")){
+            String[] range = ids.split("-");
+            paid = service.markOrderRangePaid(authorisedUser, Integer.parseInt(range[0].trim()), Integer.parseInt(range[1].trim()));
+         }
+         else if(!ids.isEmpty()){
+            String[] list = ids.split("[,\\s]+");
+            int[] orderids = new int[list.length];
+            for(int i = 0; i < list.length; ++i){
+               orderids[i] = Integer.parseInt(list[i]);
+            }
+            paid = service.markOrdersPaid(authorisedUser, orderids);
+         }
+         else{
+            out().println("\tEnter the login whose orders are paid (leave empty for everybody):");
+            String login = in().readLine();
+            out().println("\tEnter the time the orders were placed before, yyyy-mm-dd hh:mm (leave empty for any time):");
+            String before = in().readLine();
+            login = (login == null || login.trim().isEmpty()) ? null : login.trim();
+            Timestamp time = (before == null || before.trim().isEmpty()) ? null
+               : Timestamp.valueOf(before.trim().length() == 16 ? before.trim() + ":00" : before.trim());
+            if(login == null && time == null){
+               out().println("Nothing was marked paid, give a login or a time.");
+               return;
+            }
+            paid = service.markUnpaidOrdersPaid(authorisedUser, login, time);
          }
+         out().println("Marked " + paid + " unpaid order" + (paid == 1 ? "" : "s") + " paid.");
      }
      catch(Exception e){
-      System.err.println (e.getMessage ());
+      err().println (e.getMessage ());
    }
   }
 
-  public static void ChangePassword(Cafe esql, String authorisedUser){
+  /* Lets kitchen staff change the status of the items of an order. The updates are queued and written
+     together, the result is checked once all of them are entered */
+  public static void UpdateItemStatus(CafeService service, Session authorisedUser){
+     try{
+         out().println("Enter the Order ID whose items you want to update:");
+         String input = in().readLine();
+         if(input == null){
+            return;
+         }
+         int orderid = Integer.parseInt(input.trim());
+         service.getDatabase().executeQueryAndPrintResult(
+            "SELECT itemName, quantity, status, lastUpdated, comments FROM ItemStatus WHERE orderid = ? ORDER BY itemName", orderid);
+         Map<String, Future<Boolean>> updates = new LinkedHashMap<String, Future<Boolean>>();
+         while(true){
+            out().println("Enter itemName (leave empty to finish):");
+            String itemName = in().readLine();
+            if(itemName == null || itemName.trim().isEmpty()){
+               break;
+            }
+            out().println("Enter the new status of " + itemName.trim() + ":");
+            String status = in().readLine();
+            if(status == null){
+               break;
+            }
+            updates.put(itemName.trim(), service.updateItemStatus(authorisedUser, orderid, itemName.trim(), status.trim()));
+         }
+         for(Map.Entry<String, Future<Boolean>> update : updates.entrySet()){
+            if(update.getValue().get()){
+               out().println("Updated " + update.getKey() + ".");
+            }
+            else{
+               out().println("Order " + orderid + " has no item called " + update.getKey() + ".");
+            }
+         }
+     }
+     catch(ExecutionException e){
+      err().println (e.getCause ().getMessage ());
+     }
+     catch(Exception e){
+      err().println (e.getMessage ());
+   }
+  }
+
+  /* Shows the orders of the last 24 hours per hour for managers and employees, from the in-process
+     totals so it opens at once even when there are many orders */
+  public static void Dashboard(CafeService service, Session authorisedUser){
+     try{
+         if(authorisedUser.isCustomer()){
+            out().println("Only managers and employees can see the dashboard.");
+            return;
+         }
+         boolean reload = false;
+         while(true){
+            OrderDashboard.Summary summary = service.getDashboard(authorisedUser, reload);
+            out().println("---Orders of the last 24 hours---");
+            out().println("Orders: " + summary.getOrders() + "   Revenue: " + String.format("%.2f", summary.getRevenue())
+                               + "   Unpaid: " + summary.getUnpaid());
+            // wide enough for the three top items.
+            ResultPrinter printer = new ResultPrinter(new BufferedWriter(new OutputStreamWriter(out())), 80);
+            printer.printHeader(new String[]{"hour", "orders", "revenue", "unpaid", "top items"},
+                                new int[]{16, 6, 9, 6, 80});
+            for(OrderDashboard.Hour hour : summary.getHours()){
+               StringBuilder top = new StringBuilder();
+               for(String item : hour.getTopItems()){
+                  top.append(top.length() > 0 ? ", " : "").append(item);
+               }
+               printer.printValues(String.valueOf(hour.getStart()).substring(0, 16), String.valueOf(hour.getOrders()),
+                                   String.format("%.2f", hour.getRevenue()), String.valueOf(hour.getUnpaid()),
+                                   top.toString());
+            }
+            printer.flush();
+            out().print("[R]eload from the database, [E]xport orders to CSV files, or leave empty to go back: ");
+            String input = in().readLine();
+            if(input != null && "E".equalsIgnoreCase(input.trim())){
+               ExportOrders(service, authorisedUser);
+               continue;
+            }
+            if(input == null || !"R".equalsIgnoreCase(input.trim())){
+               return;
+            }
+            reload = true;
+         }
+     }
+     catch(Exception e){
+      err().println (e.getMessage ());
+   }
+  }
+
+  /* Lets managers write the orders and items of a date range to CSV files, instead of scrolling them */
+  public static void ExportOrders(CafeService service, Session authorisedUser){
+     try{
+         out().println("\tEnter the first day to export, yyyy-mm-dd (or yyyy-mm-dd hh:mm):");
+         String from = in().readLine();
+         out().println("\tEnter the day after the last one, yyyy-mm-dd (or yyyy-mm-dd hh:mm):");
+         String to = in().readLine();
+         out().println("\tEnter the directory the files are written to:");
+         String dir = in().readLine();
+         if(from == null || to == null || dir == null || dir.trim().isEmpty()){
+            return;
+         }
+         OrderExporter.Export export = service.exportOrders(authorisedUser, OrderExporter.parseTime(from),
+                                                            OrderExporter.parseTime(to), new File(dir.trim()));
+         for(OrderExporter.Slice slice : export.getSlices()){
+            out().println(slice);
+         }
+         out().println(export);
+     }
+     catch(Exception e){
+      err().println (e.getMessage ());
+   }
+  }
+
+  /* Shows where the time goes for managers: every SQL statement with its counts and latencies, the
+     connection pool and the status writer */
+  public static void Diagnostics(CafeService service, Session authorisedUser){
+     try{
+         while(true){
+            out().println(service.getDiagnostics(authorisedUser));
+            out().print("[R]eset the numbers, or leave empty to go back: ");
+            String input = in().readLine();
+            if(input == null || !"R".equalsIgnoreCase(input.trim())){
+               return;
+            }
+            service.getDatabase().getStatementStats().reset();
+         }
+     }
+     catch(Exception e){
+      err().println (e.getMessage ());
+   }
+  }
+
+  /* Sales reports for managers: revenue per day, the best selling items and the best customers. They
+     read the totals the triggers keep per day, item and customer, so they open at once however many
+     orders there are */
+  public static void Reports(CafeService service, Session authorisedUser){
+     try{
+         SalesReports reports = service.getSalesReports(authorisedUser);
+         boolean report = true;
+         while(report){
+            out().println("---Sales Reports---");
+            out().println("====================================");
+            out().println("1. Revenue per Day");
+            out().println("2. Top Selling Items");
+            out().println("3. Top Customers");
+            out().println("4. Customer Lifetime Spend");
+            out().println("====================================");
+            out().println("9. Go Back");
+            ResultPrinter printer = ResultPrinter.to(out());
+            try{
+               switch (readChoice()){
+                  case 1: reports.revenuePerDay(ReadCount("days", 14), printer); break;
+                  case 2: reports.topItems(ReadCount("days", 30), ReadCount("items", 10), printer); break;
+                  case 3: reports.topCustomers(ReadCount("customers", 10), printer); break;
+                  case 4:
+                     out().println("\tEnter the customer's login:");
+                     String login = in().readLine();
+                     if(login != null && reports.customerSpend(login.trim(), printer) == 0){
+                        out().println("No orders found for " + login.trim() + ".");
+                     }
+                     break;
+                  case 9: report = false; break;
+                  default : out().println("Unrecognized Choice!"); break;
+               }
+            }
+            catch(Exception e){  // a bad count or a failed report, stays in the menu
+               printer.flush();
+               err().println (e.getMessage ());
+            }
+            printer.flush();
+         }
+     }
+     catch(Exception e){
+      err().println (e.getMessage ());
+   }
+  }
+
+  // asks for how many days, items, ... a report shows, defaultCount when left empty.
+  private static int ReadCount(String what, int defaultCount) throws IOException {
+     out().println("\tEnter the number of " + what + " (leave empty for " + defaultCount + "):");
+     String count = in().readLine();
+     return (count == null || count.trim().isEmpty()) ? defaultCount : Integer.parseInt(count.trim());
+  }
+
+  public static void ChangePassword(CafeService service, Session authorisedUser){
       try{
-         System.out.println("---We Are Now Changing Password--- ");
-         System.out.println("\tPlease Enter New Password: ");
-         String newPass = in.readLine();
+         out().println("---We Are Now Changing Password--- ");
+         out().println("\tPlease Enter New Password: ");
+         String newPass = in().readLine();
 
-         String query = String.format("UPDATE Users SET password = '%s' WHERE login = '%s'", newPass, authorisedUser);
-         esql.executeUpdate(query);
-         System.out.println("Passord is now Changed!");
+         service.changePassword(authorisedUser, newPass);
+         out().println("Passord is now Changed!");
       }
       catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
   }
 
-  public static void ChangePhoneNumber(Cafe esql, String authorisedUser){
+  public static void ChangePhoneNumber(CafeService service, Session authorisedUser){
       try{
-         System.out.println("---We Are Now Changing Phone Number--- ");
-         System.out.println("\tPlease Enter New Phone Number: ");
-         String newPhoneNum = in.readLine();
+         out().println("---We Are Now Changing Phone Number--- ");
+         out().println("\tPlease Enter New Phone Number: ");
+         String newPhoneNum = in().readLine();
 
-         String query = String.format("UPDATE Users SET phoneNum = '%s' WHERE login = '%s'", newPhoneNum, authorisedUser);
-         esql.executeUpdate(query);
-         System.out.println("Phone Number is now Changed!");
+         service.changePhoneNumber(authorisedUser, newPhoneNum);
+         out().println("Phone Number is now Changed!");
       }
       catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       }
   }
 
-  public static void ChangeFavItem(Cafe esql, String authorisedUser){
+  public static void ChangeFavItem(CafeService service, Session authorisedUser){
    try{
-      System.out.println("---We Are Now Changing Favorite Item--- ");
-      System.out.println("\tPlease Enter New Favorite Item: ");
-      String newFavItem = in.readLine();
-
-      String query = String.format("UPDATE Users SET favItems = '%s' WHERE login = '%s'", newFavItem, authorisedUser);
-      esql.executeUpdate(query);
-      System.out.println("Your Favorite Item is now Changed!");
+      out().println("---We Are Now Changing Favorite Items--- ");
+      while(true){
+         out().println("Your favorite items: " + Join(service.getFavorites(authorisedUser)));
+         out().println("\tEnter an item to add, -item to remove it, or leave empty to finish: ");
+         String item = in().readLine();
+         if(item == null || item.trim().isEmpty()){
+            break;
+         }
+         item = item.trim();
+         if(item.startsWith("-")){
+            if(!service.removeFavorite(authorisedUser, item.substring(1))){
+               out().println(item.substring(1).trim() + " is not one of your favorites.");
+            }
+         }
+         else if(!service.addFavorite(authorisedUser, item)){
+            out().println("There is no item called " + item + " on the menu.");
+         }
+      }
    }
    catch(Exception e){
-      System.err.println (e.getMessage ());
+      err().println (e.getMessage ());
    }
 
   }
 
   /* Made sure that the authorisedUser is a manager then asked customer login in order to be able 
      to change the customer to employe or manager */
-  public static void ChangeType(Cafe esql, String authorisedUser){
+  public static void ChangeType(CafeService service, Session authorisedUser){
    try{  
-      System.out.println("---Checking if you are a manager. Please Wait-- ");
-      String query = String.format("SELECT type FROM Users WHERE login ='%s' AND type = 'Manager '", authorisedUser);
-       //might not need this if we figure out the conversion="M" thing
-      if(esql.executeQueryAndReturnResult(query).isEmpty()){
-         System.out.println("You are not a manager So you are not able to change the types of autorization.");
+      out().println("---Checking if you are a manager. Please Wait-- ");
+      if(!authorisedUser.isManager()){
+         out().println("You are not a manager So you are not able to change the types of autorization.");
       }
       else{
-            System.out.println("---Your Are a Manager! You're able to set other User from Customer to Manger or to Employee. --- ");
-            System.out.println("====================================");
-            System.out.println("1. Change Customer to Employee");
-            System.out.println("2. Change Customer to Manager");
-            System.out.println("====================================");
-            System.out.println("\tEither enter \"1\" or \"2\"");
-            String choice = in.readLine();
-            //String option1 = "1";  we can use option1 for the if statement like--> if(option1.equals(choice)){} just in case the other dont works
-            if("1".equals(choice)){
-               boolean checkLogin2 = true;
-               while(checkLogin2){
-                  System.out.println("Enter the User login of the Customer that you want to update there type:");
-                  String login = in.readLine();
-                  String checkID=String.format("SELECT * FROM Users WHERE login='%s' AND type='Customer'",login);
-                  if(esql.executeQueryAndReturnResult(checkID).isEmpty()){
-                     System.out.println("Invalid Login! Try again");
-                  }
-                  else{
-                     String query2 = String.format("UPDATE Users SET type = 'Employee' WHERE login = '%s'", login);
-                     esql.executeUpdate(query2);
-                     System.out.println("Your Authority Type is now Changed!");
-                     checkLogin2 = false;
-                  }
-               }
-            }
-            //String option2 = "2";  we can use option2 for the if statement like--> if(option2.equals(choice)){} just in case 
-            else if("2".equals(choice)){
+            out().println("---Your Are a Manager! You're able to set other User from Customer to Manger or to Employee. --- ");
+            out().println("====================================");
+            out().println("1. Change Customer to Employee");
+            out().println("2. Change Customer to Manager");
+            out().println("====================================");
+            out().println("\tEither enter \"1\" or \"2\"");
+            String choice = in().readLine();
+            String newType = "1".equals(choice) ? "Employee" : "2".equals(choice) ? "Manager" : null;
+            if(newType != null){
                boolean checkLogin = true;
-               while(checkLogin == true){ //do if statements instead
-                  System.out.println("Enter the User login of the Customer that you want to update there type:");
-                  String login = in.readLine();
-                  String checkID=String.format("SELECT * FROM Users WHERE login='%s' AND type='Customer'",login);
-                  if(esql.executeQueryAndReturnResult(checkID).isEmpty()){
-                     System.out.println("Invalid Login! Try again");
+               while(checkLogin){
+                  out().println("Enter the User login of the Customer that you want to update there type:");
+                  String login = in().readLine();
+                  if(login == null){
+                     return;
+                  }
+                  if(!service.changeType(authorisedUser, login, newType)){
+                     out().println("Invalid Login! Try again");
                   }
                   else{
-                     String query3 = String.format("UPDATE Users SET type = 'Manager' WHERE login = '%s'", login);
-                     esql.executeUpdate(query3);
-                     System.out.println("Your Authority Type is now Changed!");
+                     out().println("Your Authority Type is now Changed!");
                      checkLogin = false;
                   }
                }
-               //maybe ask if you want to see results
-            }      
+            }
          }
       }
    catch(Exception e){
-         System.err.println (e.getMessage ());
+         err().println (e.getMessage ());
       } 
   }
 
-  public static void SearchItem(Cafe esql){
+  /*
+   * Lists the customers who favorite an item, for managers
+   **/
+  public static void FavoritedBy(CafeService service, Session authorisedUser){
    try{
-      System.out.print("\t Please select the chiose of search for items by \"Name\" or \"Type\": ");
-      String check = in.readLine();
+      out().println("\tEnter the item name: ");
+      String itemName = in().readLine();
+      MenuItem item = service.findItem(itemName);
+      if(item == null){
+         out().println("There is no item called " + itemName + " on the menu.");
+         return;
+      }
+      int count = service.countFavoritedBy(authorisedUser, item.getItemName());
+      List<String> logins = service.getFavoritedBy(authorisedUser, item.getItemName(), PAGE_SIZE);
+      out().println(count + " users favorite " + item.getItemName()
+                    + (count > logins.size() ? ", the first " + logins.size() + ": " : ": ") + Join(logins));
+   }catch(Exception e){
+      err().println (e.getMessage ());
+   }
+  }
+
+  // the names separated by commas, or "(none)".
+  private static String Join(List<String> names){
+     if(names.isEmpty()){
+        return "(none)";
+     }
+     StringBuilder joined = new StringBuilder();
+     for(String name : names){
+        joined.append(joined.length() > 0 ? ", " : "").append(name);
+     }
+     return joined.toString();
+  }
+
+  public static void SearchItem(CafeService service){
+   try{
+      out().print("\t Please select the chiose of search for items by \"Name\", \"Type\" or \"Words\": ");
+      String check = in().readLine();
       if("Name".equalsIgnoreCase(check)) {
-        System.out.println("\tEnter The Item name you are searching: ");
-        String itemName = in.readLine();
-        String query = String.format("SELECT M.itemName, M.price FROM MENU M WHERE M.itemName = '%s'", itemName);
-      esql.executeQueryAndPrintResult(query);
+        out().println("\tEnter The Item name you are searching: ");
+        String itemName = in().readLine();
+        MenuItem item = service.findItem(itemName);
+        if(item != null){
+           PrintMenuItems(Collections.singletonList(item), false);
+        }
+        else{
+           PrintSearchResults(service, itemName);
+        }
+      }
+      else if("Type".equalsIgnoreCase(check)){
+        out().println("\tEnter The Item Type of what you are searching: ");
+        String itemType = in().readLine();
+        List<MenuItem> items = service.findItemsByType(itemType);
+        if(!items.isEmpty()){
+           PrintMenuItems(items, false);
+        }
+        else{
+           PrintSearchResults(service, itemType);
+        }
       }
       else{
-        System.out.println("\tEnter The Item Type of what you are searching: ");
-        String itemType = in.readLine();
-        String query = String.format("SELECT M.itemName, M.price FROM MENU M WHERE M.type = '%s'", itemType);
-      esql.executeQueryAndPrintResult(query);
+        out().println("\tEnter words of the name, type or description, a start of a word or a misspelling will do: ");
+        PrintSearchResults(service, in().readLine());
       }
      }catch(Exception e){
-     System.err.println (e.getMessage ());
+     err().println (e.getMessage ());
    }
   }
 
-  public static void UpdateMenu(Cafe esql, String authorisedUser){
+  /* Shows the closest matches of a search, ranked, when nothing matched exactly */
+  private static void PrintSearchResults(CafeService service, String query) throws SQLException {
+     List<MenuItem> items = service.searchItems(query, SEARCH_SIZE);
+     if(items.isEmpty()){
+        out().println("Nothing on the menu matches \"" + query + "\".");
+     }
+     else{
+        out().println("Closest matches for \"" + query + "\":");
+        PrintMenuItems(items, true);
+     }
+  }
+
+  public static void UpdateMenu(CafeService service, Session authorisedUser){
       try{
          //I think our problem is our <SELECT type> 
-         String query1 = String.format("SELECT type FROM Users WHERE login ='%s' AND type='Manager'", authorisedUser);
-         
-         if(esql.executeQueryAndReturnResult(query1).isEmpty()){
-            System.out.println("You are not a manager.");
+         if(!authorisedUser.isManager()){
+            out().println("You are not a manager.");
          }
          else{
-            System.out.println("Do you want to \"Add\", \"Delete\" or \"Update\" an item?");
-            String edit = in.readLine();
+            out().println("Do you want to \"Add\", \"Delete\" or \"Update\" an item?");
+            String edit = in().readLine();
             if("Add".equalsIgnoreCase(edit)){
-               System.out.println("---Adding item---");
-               System.out.println("Enter ItemName:");
-               String ItemName = in.readLine();
-               System.out.println("Enter Type:");
-               String Type = in.readLine();
-               System.out.println("Enter Price:");
-               String curPrice = in.readLine();
-               float Price=Float.parseFloat(curPrice);
-               System.out.println("Enter Description:");
-               String Description = in.readLine();
-               System.out.println("Enter Image URL:");
-               String URL = in.readLine();
-
-               String query = String.format("INSERT INTO MENU (itemName,type,price,description,imageURL) VALUES('%s','%s','%f','%s','%s')",ItemName,Type,Price,Description,URL);
-               esql.executeUpdate(query);
-               System.out.println("Successfully added the item!");
+               out().println("---Adding item---");
+               out().println("Enter ItemName:");
+               String ItemName = in().readLine();
+               out().println("Enter Type:");
+               String Type = in().readLine();
+               out().println("Enter Price:");
+               String curPrice = in().readLine();
+               BigDecimal Price=new BigDecimal(curPrice.trim());
+               out().println("Enter Description:");
+               String Description = in().readLine();
+               out().println("Enter Image URL:");
+               String URL = in().readLine();
+
+               service.addMenuItem(authorisedUser, new MenuItem(ItemName, Type, Price, Description, URL));
+               out().println("Successfully added the item!");
                
             }
             else if("Delete".equalsIgnoreCase(edit)){
-               System.out.println("-------------------------------------Deleting item------------------------------------");
-               System.out.println("Enter ItemName that you want to delete:");
-               String ItemName=in.readLine();
+               out().println("-------------------------------------Deleting item------------------------------------");
+               out().println("Enter ItemName that you want to delete:");
+               String ItemName=in().readLine();
                // String delForeignKey = String.format("DELETE FROM ItemStatus WHERE itemName='%s'",ItemName);
                // esql.executeQuery(delForeignKey);
-               String query = String.format("DELETE FROM MENU WHERE itemName='%s'",ItemName);
-               esql.executeUpdate(query);
-               System.out.print("Successfully deleted the item!");
+               if(service.deleteMenuItem(authorisedUser, ItemName)){
+                  out().println("Successfully deleted the item!");
+               }
+               else{
+                  out().println("There is no item called " + ItemName + " on the menu.");
+               }
             }
             else if("Update".equalsIgnoreCase(edit)){
-               System.out.println("------------------------------Updating item----------------------------------");
-             
-                  System.out.println("Enter ItemName that you want to update:");
-                  String ItemName=in.readLine();
-                  boolean looping = true;
-                  while(looping == true){
-                  String checkitemname=String.format("SELECT * FROM Menu WHERE itemName='%s'",ItemName);
-                  if(esql.executeQueryAndReturnResult(checkitemname).isEmpty()){
-                     System.out.println("Invalid Itemname, Try again");
+               out().println("------------------------------Updating item----------------------------------");
+               String ItemName = null;
+               while(ItemName == null){
+                  out().println("Enter ItemName that you want to update:");
+                  String name=in().readLine();
+                  if(name == null){
+                     return;
+                  }
+                  if(service.findItem(name) == null){
+                     out().println("Invalid Itemname, Try again");
                   }
                   else{
-                     looping = false;
+                     ItemName = name;
                   }
                }
-               System.out.println("What do you want to update, ItemName, Type, Price, Description or URL?");
-               String input=in.readLine();
+               out().println("What do you want to update, ItemName, Type, Price, Description or URL?");
+               String input=in().readLine();
+               CafeService.MenuField field = null;
                if("ItemName".equalsIgnoreCase(input)){
-                  System.out.println("Enter New ItemName:");
-                  String newname=in.readLine();
-                  String query=String.format("UPDATE MENU SET itemName='%s' WHERE itemName='%s'",newname,ItemName);
-                  esql.executeUpdate(query);
+                  field = CafeService.MenuField.ITEM_NAME;
                }
                else if("Type".equalsIgnoreCase(input)){
-                  System.out.println("Enter New Type:");
-                  String newtype=in.readLine();
-                  String query=String.format("UPDATE MENU SET type='%s' WHERE itemName='%s'",newtype,ItemName);
-                  esql.executeUpdate(query);
+                  field = CafeService.MenuField.TYPE;
                }
                else if("Price".equalsIgnoreCase(input)){
-                  System.out.println("Enter New Price:");
-                  String curnewprice=in.readLine();
-                  Float newprice=Float.parseFloat(curnewprice);
-                  String query=String.format("UPDATE MENU SET price='%f' WHERE itemName='%s'",newprice,ItemName);
-                  esql.executeUpdate(query);
+                  field = CafeService.MenuField.PRICE;
                }
                else if("Description".equalsIgnoreCase(input)){
-                  System.out.println("Enter New Description:");
-                  String newdescription=in.readLine();
-                  String query=String.format("UPDATE MENU SET description='%s' WHERE itemName='%s'",newdescription,ItemName);
-                  esql.executeUpdate(query);
+                  field = CafeService.MenuField.DESCRIPTION;
                }
                else if("URL".equalsIgnoreCase(input)){
-                  System.out.println("Enter New URL:");
-                  String newURL=in.readLine();
-                  String query=String.format("UPDATE MENU SET imageURL='%s' WHERE itemName='%s'",newURL,ItemName);
-                  esql.executeUpdate(query);
+                  field = CafeService.MenuField.IMAGE_URL;
+               }
+               if(field != null){
+                  out().println("Enter New " + input + ":");
+                  String value=in().readLine();
+                  service.updateMenuItem(authorisedUser, ItemName, field, value);
                }
             }
          }
      }
      catch(Exception e){
-      System.err.println (e.getMessage ());
+      err().println (e.getMessage ());
     }
   }
 
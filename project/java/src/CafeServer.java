@@ -0,0 +1,250 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the Cafe user interface to every register of a store from one
+ * process. Each TCP connection is a session of its own (e.g. telnet or
+ * nc to the port), reading and writing the connection the way the
+ * console version reads the keyboard, on a thread of its own: a virtual
+ * thread where the JVM has them (Java 21), looked up by reflection so the
+ * class still builds on older JDKs, a platform thread otherwise. The
+ * sessions share one Cafe, so one connection pool, menu cache, order id
+ * allocator and status writer. A connection is only held while a
+ * statement runs, so a pool far smaller than the number of sessions
+ * serves them.
+ *
+ * Usage: java CafeServer &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;listen port&gt;
+ *
+ * Settings (system properties):
+ *    cafe.server.bind         address listened on (127.0.0.1)
+ *    cafe.server.maxSessions  sessions served at once, more are turned away (200)
+ *    cafe.server.idleTimeout  ms a session waits for input before it is closed (1800000)
+ *    cafe.pool.max            connections shared by the sessions (16)
+ *
+ */
+public class CafeServer {
+
+   private final CafeService _service;
+   private final ServerSocket _listener;
+   private final ExecutorService _threads;
+   private final boolean _virtual;
+   private final Semaphore _slots;
+   private final int _idleTimeout;
+
+   private final AtomicInteger _active = new AtomicInteger();
+   private final AtomicLong _served = new AtomicLong();
+   private final AtomicLong _rejected = new AtomicLong();
+
+   /**
+    * @param service the cafe the sessions use
+    * @param listener the bound socket sessions are accepted on
+    * @param maxSessions sessions served at once
+    * @param idleTimeoutMillis how long a session waits for input, 0 for ever
+    */
+   public CafeServer(CafeService service, ServerSocket listener, int maxSessions, int idleTimeoutMillis){
+      this._service = service;
+      this._listener = listener;
+      ExecutorService threads = virtualThreads();
+      this._virtual = threads != null;
+      this._threads = threads != null ? threads : platformThreads();
+      this._slots = new Semaphore(maxSessions);
+      this._idleTimeout = idleTimeoutMillis;
+   }//end CafeServer
+
+   /**
+    * @return a virtual thread per task, or null before Java 21
+    */
+   static ExecutorService virtualThreads(){
+      try{
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }catch (Exception e){
+         return null;
+      }//end try
+   }//end virtualThreads
+
+   // a daemon thread per task with a small stack, sessions only run the menus.
+   private static ExecutorService platformThreads(){
+      final AtomicInteger count = new AtomicInteger();
+      return Executors.newCachedThreadPool(new ThreadFactory(){
+         public Thread newThread(Runnable task){
+            Thread thread = new Thread(null, task, "session-" + count.incrementAndGet(), 256 * 1024);
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+   }//end platformThreads
+
+   /**
+    * Accepts sessions until the listener is closed.
+    *
+    * @throws java.io.IOException when accepting fails
+    */
+   public void serve() throws IOException {
+      while (true){
+         final Socket socket;
+         try{
+            socket = _listener.accept();
+         }catch (SocketException e){
+            if (_listener.isClosed())
+               return;
+            throw e;
+         }//end try
+         if (!_slots.tryAcquire()){
+            _rejected.incrementAndGet();
+            turnAway(socket);
+            continue;
+         }//end if
+         _threads.execute(new Runnable(){
+            public void run(){
+               try{
+                  session(socket);
+               }finally{
+                  _slots.release();
+               }//end try
+            }
+         });
+      }//end while
+   }//end serve
+
+   // runs the menus of one connection with the connection as its terminal.
+   private void session(Socket socket){
+      _active.incrementAndGet();
+      try{
+         socket.setSoTimeout(_idleTimeout);
+         socket.setTcpNoDelay(true);
+         Terminal terminal = Terminal.of(socket.getInputStream(), socket.getOutputStream());
+         Terminal.attach(terminal);
+         try{
+            Cafe.Greeting();
+            Cafe.MainMenu(_service);
+            terminal.out().println("Bye !");
+            terminal.out().flush();
+         }finally{
+            Terminal.detach();
+         }//end try
+      }catch (Exception e){
+         System.err.println("Session " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+      }finally{
+         _active.decrementAndGet();
+         _served.incrementAndGet();
+         close(socket);
+      }//end try
+   }//end session
+
+   private static void turnAway(Socket socket){
+      try{
+         OutputStream out = socket.getOutputStream();
+         out.write("The cafe is busy, please try again later.\r\n".getBytes("UTF-8"));
+         out.flush();
+      }catch (IOException e){
+         // the client has gone already.
+      }finally{
+         close(socket);
+      }//end try
+   }//end turnAway
+
+   private static void close(Socket socket){
+      try{
+         socket.close();
+      }catch (IOException e){
+         // ignored.
+      }//end try
+   }//end close
+
+   /**
+    * Stops accepting sessions, the ones running are left to finish.
+    */
+   public void close(){
+      try{
+         _listener.close();
+      }catch (IOException e){
+         // ignored.
+      }//end try
+      _threads.shutdown();
+   }//end close
+
+   /**
+    * @return true when the sessions run on virtual threads
+    */
+   public boolean isVirtual(){
+      return _virtual;
+   }//end isVirtual
+
+   public String toString(){
+      return "server[virtual=" + _virtual + " active=" + _active.get() + " served=" + _served.get()
+         + " rejected=" + _rejected.get() + "]";
+   }//end toString
+
+   /**
+    * The server entry point, stopped with Ctrl-C or a kill.
+    *
+    * @param args the command line arguments &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;listen port&gt;
+    */
+   public static void main(String[] args){
+      if (args.length != 4){
+         System.err.println("Usage: java [-classpath <classpath>] " + CafeServer.class.getName()
+                            + " <dbname> <port> <user> <listen port>");
+         return;
+      }//end if
+      Cafe esql = null;
+      try{
+         Class.forName("org.postgresql.Driver");
+         esql = new Cafe(args[0], args[1], args[2], "",
+                         Integer.getInteger("cafe.pool.min", 1),
+                         Integer.getInteger("cafe.pool.max", 16),
+                         Long.getLong("cafe.pool.timeout", 5000L));
+         ServerSocket listener = new ServerSocket();
+         listener.setReuseAddress(true);
+         listener.bind(new InetSocketAddress(System.getProperty("cafe.server.bind", "127.0.0.1"),
+                                             Integer.parseInt(args[3])));
+         final CafeServer server = new CafeServer(new CafeService(esql), listener,
+                                                  Integer.getInteger("cafe.server.maxSessions", 200),
+                                                  Integer.getInteger("cafe.server.idleTimeout", 1800000));
+         final Thread main = Thread.currentThread();
+         Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
+            public void run(){
+               server.close();
+               try{
+                  // lets main write the queued status updates and close the pool.
+                  main.join(10000);
+               }catch (InterruptedException e){
+                  // exiting anyway.
+               }//end try
+            }
+         }));
+         System.out.println("Serving sessions on " + listener.getLocalSocketAddress() + ", each on a "
+                            + (server.isVirtual() ? "virtual" : "platform") + " thread");
+         server.serve();
+         System.out.println(server);
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+}//end CafeServer
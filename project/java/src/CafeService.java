@@ -0,0 +1,539 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * The Cafe operations without any console I/O. Every method takes its
+ * input as arguments and returns its result, so the same logic serves the
+ * interactive menus in Cafe.main, the LoadGenerator and any other front
+ * end. Operations restricted to employees or managers check the caller's
+ * Session and throw AccessDeniedException.
+ *
+ */
+public class CafeService {
+
+   /**
+    * Thrown when the session's user type may not run an operation.
+    */
+   public static class AccessDeniedException extends Exception {
+      private static final long serialVersionUID = 1L;
+
+      public AccessDeniedException(String message){
+         super(message);
+      }
+   }//end AccessDeniedException
+
+   /**
+    * The Menu columns a manager can change.
+    */
+   public enum MenuField {
+      ITEM_NAME("itemName"), TYPE("type"), PRICE("price"), DESCRIPTION("description"), IMAGE_URL("imageURL");
+
+      private final String _column;
+
+      MenuField(String column){
+         this._column = column;
+      }
+
+      public String column(){ return _column; }
+   }//end MenuField
+
+   // newest first; orderid breaks ties between orders placed at the same time.
+   private static final String ORDER_BY = " ORDER BY timeStampRecieved DESC, orderid DESC LIMIT ?";
+   private static final String HISTORY =
+      "SELECT " + Order.COLUMNS + " FROM Orders WHERE login = ?";
+   private static final String RECENT =
+      "SELECT " + Order.COLUMNS + " FROM Orders WHERE timeStampRecieved >= NOW() - INTERVAL '1 DAY'";
+   // the keyset of the last order already shown.
+   private static final String AFTER = " AND (timeStampRecieved, orderid) < (?, ?)";
+
+   private static final String FAVORITES =
+      "SELECT itemName FROM UserFavorites WHERE login = ? ORDER BY itemName";
+   private static final String ADD_FAVORITE =
+      "INSERT INTO UserFavorites (login, itemName) VALUES (?, ?) ON CONFLICT DO NOTHING";
+   // served from the (itemName, login) index.
+   private static final String FAVORITED_BY =
+      "SELECT login FROM UserFavorites WHERE itemName = ? ORDER BY login LIMIT ?";
+   private static final String COUNT_FAVORITED_BY =
+      "SELECT count(*) FROM UserFavorites WHERE itemName = ?";
+
+   // only unpaid orders come back, so the dashboard counts each payment once.
+   private static final String MARK_PAID = "UPDATE Orders SET paid = true WHERE paid IS NOT TRUE AND ";
+   private static final String PAID_PLACED = " RETURNING orderid, timeStampRecieved";
+
+   private final Cafe _esql;
+   // the sessions logged in through this service, by login, so a change of
+   // their user type reaches them. Weak, a session dropped without logOut goes too.
+   private final Map<String, Set<Session>> _sessions = new HashMap<String, Set<Session>>();
+
+   public CafeService(Cafe esql){
+      this._esql = esql;
+   }//end CafeService
+
+   /**
+    * @return the database the service runs against
+    */
+   public Cafe getDatabase(){
+      return _esql;
+   }
+
+   /**
+    * Creates a new customer.
+    */
+   public void createUser(String login, String password, String phone) throws SQLException {
+      _esql.executeUpdate("INSERT INTO USERS (phoneNum, login, password, type) VALUES (?,?,?,?)",
+                          phone, login, password, "Customer");
+   }//end createUser
+
+   /**
+    * @return the user's session, or null when the credentials are wrong
+    */
+   public Session logIn(String login, String password) throws SQLException {
+      Session session = Session.logIn(_esql, login, password);
+      if (session != null){
+         synchronized (_sessions){
+            Set<Session> sessions = _sessions.get(session.getLogin());
+            if (sessions == null){
+               sessions = Collections.newSetFromMap(new WeakHashMap<Session, Boolean>());
+               _sessions.put(session.getLogin(), sessions);
+            }//end if
+            sessions.add(session);
+         }//end synchronized
+      }//end if
+      return session;
+   }//end logIn
+
+   /**
+    * Forgets a session, it no longer follows changes of its user type.
+    */
+   public void logOut(Session session){
+      synchronized (_sessions){
+         Set<Session> sessions = _sessions.get(session.getLogin());
+         if (sessions != null){
+            sessions.remove(session);
+            if (sessions.isEmpty())
+               _sessions.remove(session.getLogin());
+         }//end if
+      }//end synchronized
+   }//end logOut
+
+   /**
+    * Gets a new process ready for its first user: loads the menu and runs
+    * the queries of logging in and of the first screens once, for no user,
+    * so the first real ones skip the statement preparation and class
+    * loading. See Cafe.prewarm.
+    */
+   public void prewarm() throws SQLException {
+      Session.prewarm(_esql);
+      _esql.getMenu().getItems();
+      _esql.prewarm(HISTORY + ORDER_BY, "", 0);
+      _esql.prewarm(RECENT + ORDER_BY, 0);
+      _esql.prewarm(FAVORITES, "");
+   }//end prewarm
+
+   public List<MenuItem> getMenuItems() throws SQLException {
+      return _esql.getMenu().getItems();
+   }
+
+   /**
+    * @return the item called itemName, or null when there is none
+    */
+   public MenuItem findItem(String itemName) throws SQLException {
+      return _esql.getMenu().getItem(itemName);
+   }
+
+   public List<MenuItem> findItemsByType(String type) throws SQLException {
+      return _esql.getMenu().getItemsByType(type);
+   }
+
+   /**
+    * Searches item names, types and descriptions from memory, allowing
+    * for partial words and typos.
+    *
+    * @return at most limit items, best match first
+    */
+   public List<MenuItem> searchItems(String query, int limit) throws SQLException {
+      return _esql.getMenu().search(query, limit);
+   }
+
+   /**
+    * Orders a basket of items for the session's user.
+    *
+    * @return the new order, with its total
+    */
+   public Order placeOrder(Session user, List<String> itemNames, float tip) throws SQLException {
+      return _esql.placeOrder(user.getLogin(), itemNames, tip);
+   }//end placeOrder
+
+   /**
+    * Orders every favorite item of the user once, in a single statement.
+    *
+    * @return the new order id, or -1 when the user has no favorites
+    */
+   public int reorderFavorites(Session user) throws SQLException {
+      return _esql.reorderFavorites(user.getLogin());
+   }//end reorderFavorites
+
+   /**
+    * Marks an order paid. Customers may not do this.
+    *
+    * @return false when there is no such order
+    */
+   public boolean markOrderPaid(Session user, int orderid) throws SQLException, AccessDeniedException {
+      if (user.isCustomer())
+         throw new AccessDeniedException("You are a customer, please inform the manager to update your order.");
+      if (markPaid("orderid = ?", orderid) > 0)
+         return true;
+      return _esql.exists("SELECT orderid FROM Orders WHERE orderid = ?", orderid);
+   }//end markOrderPaid
+
+   /**
+    * Marks a list of orders paid in one statement, the ids travel as a
+    * single array parameter. Customers may not do this.
+    *
+    * @return how many of the orders were unpaid
+    */
+   public int markOrdersPaid(Session user, int... orderids) throws SQLException, AccessDeniedException {
+      if (user.isCustomer())
+         throw new AccessDeniedException("You are a customer, please inform the manager to update your order.");
+      if (orderids.length == 0)
+         return 0;
+      return markPaid("orderid = ANY(CAST(? AS integer[]))", orderids);
+   }//end markOrdersPaid
+
+   /**
+    * Marks the orders first to last, both included, paid in one
+    * statement. Customers may not do this.
+    *
+    * @return how many of the orders were unpaid
+    */
+   public int markOrderRangePaid(Session user, int first, int last) throws SQLException, AccessDeniedException {
+      if (user.isCustomer())
+         throw new AccessDeniedException("You are a customer, please inform the manager to update your order.");
+      return markPaid("orderid BETWEEN ? AND ?", first, last);
+   }//end markOrderRangePaid
+
+   /**
+    * Marks every unpaid order of a login, or placed before a time, or
+    * both, paid in one statement. The unpaid orders are found through the
+    * partial Orders_unpaid_index, which only holds unpaid orders. Customers
+    * may not do this.
+    *
+    * @param login whose orders, or null for everybody's
+    * @param before only orders placed before this time, or null for all
+    * @return how many orders were marked paid
+    */
+   public int markUnpaidOrdersPaid(Session user, String login, Timestamp before)
+         throws SQLException, AccessDeniedException {
+      if (user.isCustomer())
+         throw new AccessDeniedException("You are a customer, please inform the manager to update your order.");
+      if (login == null && before == null)
+         throw new IllegalArgumentException("Give a login, a time or both.");
+      if (before == null)
+         return markPaid("login = ?", login);
+      if (login == null)
+         return markPaid("timeStampRecieved < ?", before);
+      return markPaid("login = ? AND timeStampRecieved < ?", login, before);
+   }//end markUnpaidOrdersPaid
+
+   // one UPDATE, committed as one transaction, telling the dashboard of each order it paid once done.
+   private int markPaid(String where, Object... params) throws SQLException {
+      final List<Integer> orderids = new ArrayList<Integer>();
+      final List<Timestamp> placed = new ArrayList<Timestamp>();
+      int paid = _esql.forEachRow(MARK_PAID + where + PAID_PLACED, new Cafe.RowHandler(){
+         public boolean handle(ResultSet rs) throws SQLException {
+            orderids.add(rs.getInt(1));
+            placed.add(rs.getTimestamp(2));
+            return true;
+         }
+      }, params);
+      OrderDashboard dashboard = _esql.getDashboard();
+      for (int i = 0; i < orderids.size(); ++i)
+         dashboard.orderPaid(orderids.get(i), placed.get(i));
+      return paid;
+   }//end markPaid
+
+   /**
+    * Lists the user's own orders, newest first. Served from the
+    * (login, timeStampRecieved, orderid) index, so a page costs the same
+    * however many orders the user has.
+    *
+    * @param limit the most orders returned
+    * @param after the last order of the previous page, or null for the newest orders
+    */
+   public Order.Page getOrderHistory(Session user, int limit, Order after) throws SQLException {
+      return after == null
+         ? fetchOrders(HISTORY + ORDER_BY, limit, user.getLogin())
+         : fetchOrders(HISTORY + AFTER + ORDER_BY, limit, user.getLogin(),
+                       after.getTimeStampRecieved(), after.getOrderid());
+   }//end getOrderHistory
+
+   /**
+    * Lists everybody's orders of the last 24 hours, newest first. Customers
+    * may not do this.
+    *
+    * @param limit the most orders returned
+    * @param after the last order of the previous page, or null for the newest orders
+    */
+   public Order.Page getRecentOrders(Session user, int limit, Order after) throws SQLException, AccessDeniedException {
+      if (user.isCustomer())
+         throw new AccessDeniedException("Only employees and managers can see all recent orders.");
+      return after == null
+         ? fetchOrders(RECENT + ORDER_BY, limit)
+         : fetchOrders(RECENT + AFTER + ORDER_BY, limit,
+                       after.getTimeStampRecieved(), after.getOrderid());
+   }//end getRecentOrders
+
+   /**
+    * Changes the status of an ordered item. The update is written in the
+    * background with others, see Cafe.updateItemStatus. Customers may not
+    * do this.
+    *
+    * @return completes with false when the order has no such item
+    */
+   public Future<Boolean> updateItemStatus(Session user, int orderid, String itemName, String status)
+         throws AccessDeniedException, InterruptedException {
+      if (user.isCustomer())
+         throw new AccessDeniedException("You are a customer, please inform the manager to update your order.");
+      return _esql.updateItemStatus(orderid, itemName, status);
+   }//end updateItemStatus
+
+   /**
+    * The orders of the last 24 hours per hour. Customers may not see it.
+    *
+    * @param reload true to reload the totals from the database first, to
+    *               include orders placed or paid by other processes
+    */
+   public OrderDashboard.Summary getDashboard(Session user, boolean reload) throws SQLException, AccessDeniedException {
+      if (user.isCustomer())
+         throw new AccessDeniedException("Only managers and employees can see the dashboard.");
+      if (reload)
+         _esql.getDashboard().reload();
+      return _esql.getDashboard().getSummary();
+   }//end getDashboard
+
+   /**
+    * Writes the orders placed from from up to to, and their items, to
+    * CSV files in dir, see OrderExporter. Only managers may do this.
+    */
+   public OrderExporter.Export exportOrders(Session manager, Timestamp from, Timestamp to, File dir) throws Exception {
+      requireManager(manager, "Only managers can export the orders.");
+      return new OrderExporter(_esql).export(from, to, dir);
+   }//end exportOrders
+
+   /**
+    * The sales reports, see SalesReports. Only managers may see them.
+    */
+   public SalesReports getSalesReports(Session manager) throws SQLException, AccessDeniedException {
+      requireManager(manager, "Only managers can see the sales reports.");
+      SalesReports reports = new SalesReports(_esql);
+      if (!reports.isInstalled())
+         throw new SQLException("There are no sales aggregates yet, run migrate.sh first.");
+      return reports;
+   }//end getSalesReports
+
+   /**
+    * Describes where the time goes: the statistics of every SQL template,
+    * the connection pool and the status writer. Only managers may see it.
+    */
+   public String getDiagnostics(Session manager) throws AccessDeniedException {
+      requireManager(manager, "Only managers can see the diagnostics.");
+      StatementStats stats = _esql.getStatementStats();
+      return "---Diagnostics---\n"
+         + stats.getStatementCount() + " statements, " + stats.getErrorCount() + " failed, "
+         + stats.getSlowCount() + " slower than " + stats.getSlowThresholdMillis() + " ms\n"
+         + _esql.getPool() + "\n"
+         + _esql.getStatusWriter() + "\n"
+         + stats.dump();
+   }//end getDiagnostics
+
+   public void changePassword(Session user, String password) throws SQLException {
+      _esql.executeUpdate("UPDATE Users SET password = ? WHERE login = ?", password, user.getLogin());
+   }//end changePassword
+
+   public void changePhoneNumber(Session user, String phoneNum) throws SQLException {
+      _esql.executeUpdate("UPDATE Users SET phoneNum = ? WHERE login = ?", phoneNum, user.getLogin());
+      user.setPhoneNum(phoneNum);
+   }//end changePhoneNumber
+
+   /**
+    * @return the names of the user's favorite items, in name order
+    */
+   public List<String> getFavorites(Session user) throws SQLException {
+      return firstColumn(FAVORITES, user.getLogin());
+   }//end getFavorites
+
+   /**
+    * Adds a menu item to the user's favorites.
+    *
+    * @param itemName the item's name, in any case
+    * @return false when there is no such item on the menu
+    */
+   public boolean addFavorite(Session user, String itemName) throws SQLException {
+      MenuItem item = menuItem(itemName);
+      if (item == null)
+         return false;
+      _esql.executeUpdate(ADD_FAVORITE, user.getLogin(), item.getItemName());
+      return true;
+   }//end addFavorite
+
+   /**
+    * @return false when the item was not one of the user's favorites
+    */
+   public boolean removeFavorite(Session user, String itemName) throws SQLException {
+      MenuItem item = menuItem(itemName);
+      return _esql.executeUpdate("DELETE FROM UserFavorites WHERE login = ? AND itemName = ?", user.getLogin(),
+                                 item == null ? itemName.trim() : item.getItemName()) > 0;
+   }//end removeFavorite
+
+   /**
+    * The customers who favorite an item. Only managers may see them.
+    *
+    * @param itemName the item's exact name
+    * @param limit the most logins returned, in login order
+    */
+   public List<String> getFavoritedBy(Session manager, String itemName, int limit)
+         throws SQLException, AccessDeniedException {
+      requireManager(manager, "Only managers can see who favorites an item.");
+      return firstColumn(FAVORITED_BY, itemName, limit);
+   }//end getFavoritedBy
+
+   /**
+    * @return how many users favorite the item
+    */
+   public int countFavoritedBy(Session manager, String itemName) throws SQLException, AccessDeniedException {
+      requireManager(manager, "Only managers can see who favorites an item.");
+      return Integer.parseInt(firstColumn(COUNT_FAVORITED_BY, itemName).get(0));
+   }//end countFavoritedBy
+
+   /**
+    * Promotes a customer to Employee or Manager. Only managers may do this.
+    * The customer's sessions in this process, e.g. at another CafeServer
+    * terminal, get the new type at once; other processes see it at the
+    * next log in.
+    *
+    * @return false when login is not a customer
+    */
+   public boolean changeType(Session manager, String login, String type) throws SQLException, AccessDeniedException {
+      requireManager(manager, "You are not a manager So you are not able to change the types of autorization.");
+      if (!"Employee".equals(type) && !"Manager".equals(type))
+         throw new IllegalArgumentException("Unknown user type: " + type);
+      int updated = _esql.executeUpdate("UPDATE Users SET type = ? WHERE login = ? AND type = 'Customer'", type, login);
+      if (updated == 0)
+         return false;
+      synchronized (_sessions){
+         Set<Session> sessions = _sessions.get(login);
+         if (sessions != null)
+            for (Session session : sessions)
+               session.setType(type);
+      }//end synchronized
+      return true;
+   }//end changeType
+
+   public void addMenuItem(Session manager, MenuItem item) throws SQLException, AccessDeniedException {
+      requireManager(manager, "You are not a manager.");
+      _esql.executeUpdate("INSERT INTO MENU (itemName,type,price,description,imageURL) VALUES(?,?,?,?,?)",
+                          item.getItemName(), item.getType(), item.getPrice(), item.getDescription(),
+                          item.getImageURL());
+      _esql.getMenu().refresh(item.getItemName());
+   }//end addMenuItem
+
+   /**
+    * @return false when there is no such item
+    */
+   public boolean deleteMenuItem(Session manager, String itemName) throws SQLException, AccessDeniedException {
+      requireManager(manager, "You are not a manager.");
+      int deleted = _esql.executeUpdate("DELETE FROM MENU WHERE itemName=?", itemName);
+      _esql.getMenu().refresh(itemName);
+      return deleted > 0;
+   }//end deleteMenuItem
+
+   /**
+    * Changes one column of a menu item.
+    *
+    * @return false when there is no such item
+    * @throws java.lang.NumberFormatException when a new price is not a number
+    */
+   public boolean updateMenuItem(Session manager, String itemName, MenuField field, String value)
+         throws SQLException, AccessDeniedException {
+      requireManager(manager, "You are not a manager.");
+      Object newValue = field == MenuField.PRICE ? (Object) new BigDecimal(value.trim()) : value;
+      int updated = _esql.executeUpdate("UPDATE MENU SET " + field.column() + "=? WHERE itemName=?",
+                                        newValue, itemName);
+      _esql.getMenu().refresh(itemName);
+      if (field == MenuField.ITEM_NAME)
+         _esql.getMenu().refresh(value);
+      return updated > 0;
+   }//end updateMenuItem
+
+   // runs a query ending in LIMIT ?, fetching one extra row to learn whether more follow.
+   private Order.Page fetchOrders(String query, final int limit, Object... params) throws SQLException {
+      Object[] limited = new Object[params.length + 1];
+      System.arraycopy(params, 0, limited, 0, params.length);
+      limited[params.length] = limit + 1;
+      final List<Order> orders = new ArrayList<Order>(limit);
+      final boolean[] more = {false};
+      _esql.forEachRow(query, new Cafe.RowHandler(){
+         public boolean handle(ResultSet rs) throws SQLException {
+            if (orders.size() == limit){
+               more[0] = true;
+               return false;
+            }//end if
+            orders.add(Order.fromRow(rs));
+            return true;
+         }
+      }, limited);
+      return new Order.Page(orders, more[0]);
+   }//end fetchOrders
+
+   // the item called itemName, or else the one whose name differs only in case.
+   private MenuItem menuItem(String itemName) throws SQLException {
+      MenuItem item = findItem(itemName);
+      if (item != null || itemName == null)
+         return item;
+      for (MenuItem candidate : getMenuItems())
+         if (candidate.getItemName().equalsIgnoreCase(itemName.trim()))
+            return candidate;
+      return null;
+   }//end menuItem
+
+   private List<String> firstColumn(String query, Object... params) throws SQLException {
+      final List<String> values = new ArrayList<String>();
+      _esql.forEachRow(query, new Cafe.RowHandler(){
+         public boolean handle(ResultSet rs) throws SQLException {
+            values.add(rs.getString(1));
+            return true;
+         }
+      }, params);
+      return values;
+   }//end firstColumn
+
+   private static void requireManager(Session user, String message) throws AccessDeniedException {
+      if (!user.isManager())
+         throw new AccessDeniedException(message);
+   }//end requireManager
+
+}//end CafeService
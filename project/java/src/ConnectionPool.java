@@ -0,0 +1,473 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of physical PostgreSQL connections shared by every session
+ * of a Cafe process. Callers borrow a connection, use it and hand it back
+ * with release(). Idle connections are kept in LIFO order so a single
+ * threaded caller keeps getting the same physical session back.
+ *
+ * The pool state is guarded by a ReentrantLock rather than the monitor,
+ * so a virtual thread waiting for a connection gives up its carrier.
+ *
+ */
+public class ConnectionPool {
+
+   // query used to check that an idle connection is still alive.
+   private static final String VALIDATION_QUERY = "SELECT 1";
+
+   private final String _url;
+   private final String _user;
+   private final String _passwd;
+   private final int _minSize;
+   private final int _maxSize;
+   private final long _borrowTimeoutMillis;
+   private final long _validateAfterMillis;
+   private final long _idleTimeoutMillis;
+   private final int _statementCacheSize;
+
+   private final ReentrantLock _lock = new ReentrantLock();
+   // signalled whenever a connection or a slot may have become free.
+   private final Condition _available = _lock.newCondition();
+   // idle connections, most recently returned first.
+   private final Deque<PooledConnection> _idle = new ArrayDeque<PooledConnection>();
+   private volatile int _total = 0;
+   private volatile int _active = 0;
+   private boolean _closed = false;
+   // connections left to openDeferred(), counted in _total.
+   private int _deferred = 0;
+
+   // pool metrics, written under _lock; volatile so the getters read them without it.
+   private volatile long _borrows = 0;
+   private volatile long _waits = 0;
+   private volatile long _timeouts = 0;
+   private volatile long _created = 0;
+   private volatile long _discarded = 0;
+   private volatile long _totalWaitNanos = 0;
+   private volatile long _maxWaitNanos = 0;
+
+   /**
+    * Creates a new pool and opens minSize connections up front.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param minSize number of connections kept open even when idle
+    * @param maxSize upper bound on open connections
+    * @param borrowTimeoutMillis how long borrow() waits for a free connection
+    * @param validateAfterMillis idle time after which a connection is tested before reuse
+    * @param idleTimeoutMillis idle time after which connections above minSize are closed
+    * @param statementCacheSize prepared statements cached per connection
+    * @throws java.sql.SQLException when the initial connections cannot be opened
+    */
+   public ConnectionPool(String url, String user, String passwd,
+                         int minSize, int maxSize, long borrowTimeoutMillis,
+                         long validateAfterMillis, long idleTimeoutMillis,
+                         int statementCacheSize) throws SQLException {
+      this(url, user, passwd, minSize, maxSize, borrowTimeoutMillis, validateAfterMillis, idleTimeoutMillis,
+           statementCacheSize, false);
+   }//end ConnectionPool
+
+   /**
+    * Creates a new pool whose first connections may be opened later, by
+    * openDeferred(), e.g. on another thread while the user reads the
+    * menu. Meanwhile borrow() waits for them instead of opening its own.
+    *
+    * @param deferred true to leave the first max(minSize, 1) connections to openDeferred()
+    * @throws java.sql.SQLException when the initial connections cannot be opened
+    */
+   public ConnectionPool(String url, String user, String passwd,
+                         int minSize, int maxSize, long borrowTimeoutMillis,
+                         long validateAfterMillis, long idleTimeoutMillis,
+                         int statementCacheSize, boolean deferred) throws SQLException {
+      if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+         throw new IllegalArgumentException("Invalid pool size: min=" + minSize + " max=" + maxSize);
+      this._url = url;
+      this._user = user;
+      this._passwd = passwd;
+      this._minSize = minSize;
+      this._maxSize = maxSize;
+      this._borrowTimeoutMillis = borrowTimeoutMillis;
+      this._validateAfterMillis = validateAfterMillis;
+      this._idleTimeoutMillis = idleTimeoutMillis;
+      this._statementCacheSize = statementCacheSize;
+
+      if (deferred){
+         // the slots are taken now, so no borrower opens a connection of its own meanwhile.
+         _deferred = Math.max(minSize, 1);
+         _total = _deferred;
+         return;
+      }//end if
+      try{
+         for (int i = 0; i < minSize; ++i){
+            _idle.addLast(open());
+            _total++;
+         }//end for
+      }catch (SQLException e){
+         close();
+         throw e;
+      }//end try
+   }//end ConnectionPool
+
+   /**
+    * Borrows a connection, waiting up to the borrow timeout when the pool
+    * is exhausted. Idle connections that sat unused for longer than the
+    * validation interval are tested first and silently replaced if dead.
+    *
+    * @return a connection that must be handed back with release()
+    * @throws java.sql.SQLException on timeout or when a new connection fails
+    */
+   public PooledConnection borrow() throws SQLException {
+      long start = System.nanoTime();
+      long deadline = start + TimeUnit.MILLISECONDS.toNanos(_borrowTimeoutMillis);
+      while (true){
+         PooledConnection pc = null;
+         boolean waited = false;
+         _lock.lock();
+         try{
+            while (true){
+               if (_closed)
+                  throw new SQLException("Connection pool is closed");
+               if (!_idle.isEmpty()){
+                  pc = _idle.pollFirst();
+                  break;
+               }
+               if (_total < _maxSize && _deferred == 0){
+                  _total++;
+                  break;
+               }
+               long remaining = deadline - System.nanoTime();
+               if (remaining <= 0){
+                  _timeouts++;
+                  throw new SQLException("Timed out after " + _borrowTimeoutMillis
+                                         + " ms waiting for a database connection");
+               }
+               waited = true;
+               try{
+                  _available.awaitNanos(remaining);
+               }catch (InterruptedException e){
+                  Thread.currentThread().interrupt();
+                  throw new SQLException("Interrupted while waiting for a database connection");
+               }//end try
+            }//end while
+            _active++;
+         }finally{
+            _lock.unlock();
+         }//end try
+
+         if (pc == null){
+            // a slot was reserved for a brand new connection.
+            try{
+               pc = open();
+            }catch (SQLException e){
+               _lock.lock();
+               try{
+                  _total--;
+                  _active--;
+                  _available.signalAll();
+               }finally{
+                  _lock.unlock();
+               }//end try
+               throw e;
+            }//end try
+         }else if (!isUsable(pc)){
+            discard(pc);
+            continue;
+         }//end if
+
+         recordBorrow(System.nanoTime() - start, waited);
+         return pc;
+      }//end while
+   }//end borrow
+
+   /**
+    * Opens the connections left over by a deferred pool and hands them to
+    * the waiting borrowers. Does nothing for other pools, or when called
+    * again.
+    *
+    * @throws java.sql.SQLException when a connection cannot be opened; the
+    *         borrowers then open their own
+    */
+   public void openDeferred() throws SQLException {
+      while (true){
+         _lock.lock();
+         try{
+            if (_deferred == 0)
+               return;
+         }finally{
+            _lock.unlock();
+         }//end try
+         PooledConnection pc;
+         try{
+            pc = open();
+         }catch (SQLException e){
+            _lock.lock();
+            try{
+               _total -= _deferred;
+               _deferred = 0;
+               _available.signalAll();
+            }finally{
+               _lock.unlock();
+            }//end try
+            throw e;
+         }//end try
+         boolean kept = false;
+         _lock.lock();
+         try{
+            // another caller may have opened the last one meanwhile.
+            if (_deferred > 0){
+               _deferred--;
+               if (_closed){
+                  _total--;
+               }else{
+                  _idle.addFirst(pc);
+                  kept = true;
+               }//end if
+            }//end if
+            _available.signalAll();
+         }finally{
+            _lock.unlock();
+         }//end try
+         if (!kept)
+            closeQuietly(pc);
+      }//end while
+   }//end openDeferred
+
+   /**
+    * Hands a borrowed connection back to the pool. Connections that were
+    * closed or flagged broken by the caller are discarded instead.
+    *
+    * @param pc the connection obtained from borrow(), may be null
+    */
+   public void release(PooledConnection pc){
+      if (pc == null)
+         return;
+      boolean reusable = !pc.isBroken();
+      if (reusable){
+         try{
+            Connection c = pc.connection();
+            if (c.isClosed()){
+               reusable = false;
+            }else if (!c.getAutoCommit()){
+               // never hand an open transaction to the next borrower.
+               c.rollback();
+               c.setAutoCommit(true);
+            }//end if
+         }catch (SQLException e){
+            reusable = false;
+         }//end try
+      }//end if
+      if (!reusable){
+         discard(pc);
+         return;
+      }//end if
+
+      pc.touch();
+      PooledConnection expired = null;
+      _lock.lock();
+      try{
+         _active--;
+         if (_closed){
+            _total--;
+            expired = pc;
+         }else{
+            _idle.addFirst(pc);
+            expired = trimIdle();
+         }//end if
+         _available.signalAll();
+      }finally{
+         _lock.unlock();
+      }//end try
+      if (expired != null)
+         closeQuietly(expired);
+   }//end release
+
+   /**
+    * Closes every idle connection and refuses further borrows. Connections
+    * still on loan are closed as they are released.
+    */
+   public void close(){
+      Deque<PooledConnection> toClose;
+      _lock.lock();
+      try{
+         _closed = true;
+         toClose = new ArrayDeque<PooledConnection>(_idle);
+         _total -= _idle.size();
+         _idle.clear();
+         _available.signalAll();
+      }finally{
+         _lock.unlock();
+      }//end try
+      for (PooledConnection pc : toClose)
+         closeQuietly(pc);
+   }//end close
+
+   public int getActiveCount(){ return _active; }
+   public int getIdleCount(){
+      _lock.lock();
+      try{
+         return _idle.size();
+      }finally{
+         _lock.unlock();
+      }//end try
+   }
+   public int getTotalCount(){ return _total; }
+   public long getBorrowCount(){ return _borrows; }
+   public long getWaitCount(){ return _waits; }
+   public long getTimeoutCount(){ return _timeouts; }
+   public long getCreatedCount(){ return _created; }
+   public long getDiscardedCount(){ return _discarded; }
+   public double getTotalWaitMillis(){ return _totalWaitNanos / 1e6; }
+   public double getMaxWaitMillis(){ return _maxWaitNanos / 1e6; }
+   public double getAverageWaitMillis(){
+      _lock.lock();
+      try{
+         return _borrows == 0 ? 0.0 : _totalWaitNanos / 1e6 / _borrows;
+      }finally{
+         _lock.unlock();
+      }//end try
+   }
+
+   /**
+    * @return a one line summary of the pool metrics
+    */
+   public String toString(){
+      _lock.lock();
+      try{
+         return String.format("pool[active=%d idle=%d total=%d/%d borrows=%d waits=%d timeouts=%d "
+                              + "created=%d discarded=%d avgWait=%.3fms maxWait=%.3fms]",
+                              _active, _idle.size(), _total, _maxSize, _borrows, _waits, _timeouts,
+                              _created, _discarded, getAverageWaitMillis(), _maxWaitNanos / 1e6);
+      }finally{
+         _lock.unlock();
+      }//end try
+   }
+
+   private PooledConnection open() throws SQLException {
+      Connection c = DriverManager.getConnection(_url, _user, _passwd);
+      _lock.lock();
+      try{
+         _created++;
+      }finally{
+         _lock.unlock();
+      }//end try
+      return new PooledConnection(c, _statementCacheSize);
+   }//end open
+
+   private boolean isUsable(PooledConnection pc){
+      if (System.currentTimeMillis() - pc.lastUsed() < _validateAfterMillis)
+         return true;
+      Statement stmt = null;
+      try{
+         stmt = pc.connection().createStatement();
+         stmt.executeQuery(VALIDATION_QUERY).close();
+         return true;
+      }catch (SQLException e){
+         return false;
+      }finally{
+         try{
+            if (stmt != null) stmt.close();
+         }catch (SQLException e){
+            // ignored.
+         }//end try
+      }//end try
+   }//end isUsable
+
+   private void discard(PooledConnection pc){
+      _lock.lock();
+      try{
+         _active--;
+         _total--;
+         _discarded++;
+         _available.signalAll();
+      }finally{
+         _lock.unlock();
+      }//end try
+      closeQuietly(pc);
+   }//end discard
+
+   // removes the oldest idle connection above minSize once it has expired.
+   private PooledConnection trimIdle(){
+      if (_idle.size() <= _minSize)
+         return null;
+      PooledConnection oldest = _idle.peekLast();
+      if (System.currentTimeMillis() - oldest.lastUsed() < _idleTimeoutMillis)
+         return null;
+      _idle.pollLast();
+      _total--;
+      return oldest;
+   }//end trimIdle
+
+   private void recordBorrow(long waitNanos, boolean waited){
+      _lock.lock();
+      try{
+         _borrows++;
+         if (waited) _waits++;
+         _totalWaitNanos += waitNanos;
+         if (waitNanos > _maxWaitNanos) _maxWaitNanos = waitNanos;
+      }finally{
+         _lock.unlock();
+      }//end try
+   }//end recordBorrow
+
+   private static void closeQuietly(PooledConnection pc){
+      pc.statements().clear();
+      try{
+         pc.connection().close();
+      }catch (SQLException e){
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+   /**
+    * A physical connection owned by the pool.
+    */
+   public static final class PooledConnection {
+      private final Connection _connection;
+      private final StatementCache _statements;
+      private volatile long _lastUsed = System.currentTimeMillis();
+      private volatile boolean _broken = false;
+
+      PooledConnection(Connection connection, int statementCacheSize){
+         this._connection = connection;
+         this._statements = new StatementCache(connection, statementCacheSize);
+      }
+
+      public Connection connection(){ return _connection; }
+
+      /**
+       * @return the prepared statements cached on this connection
+       */
+      public StatementCache statements(){ return _statements; }
+
+      /**
+       * Flags the connection so release() closes it instead of pooling it.
+       */
+      public void markBroken(){ _broken = true; }
+
+      boolean isBroken(){ return _broken; }
+      long lastUsed(){ return _lastUsed; }
+      void touch(){ _lastUsed = System.currentTimeMillis(); }
+   }//end PooledConnection
+
+}//end ConnectionPool
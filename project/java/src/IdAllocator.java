@@ -0,0 +1,107 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out ids from a sequence in blocks (hi/lo). The sequence is created
+ * with INCREMENT BY the block size, so one nextval reserves the ids
+ * [value, value + block size) for this process and the following inserts
+ * carry their own id without asking the server. Other processes, and
+ * inserts that leave the id to the column default, get their own blocks.
+ * The unused rest of a block is skipped when the process exits, so ids
+ * have gaps but never repeat.
+ *
+ */
+public class IdAllocator {
+
+   private final Cafe _esql;
+   private final String _sequence;
+   // held while reserving a block, so a ReentrantLock rather than the monitor.
+   private final Lock _lock = new ReentrantLock();
+   private int _blockSize = 0;
+   // the next id to hand out and the end of the reserved block.
+   private long _next = 0;
+   private long _limit = 0;
+   private long _blocks = 0;
+
+   /**
+    * @param esql the database holding the sequence
+    * @param sequence the sequence name, e.g. orders_orderid_seq
+    */
+   public IdAllocator(Cafe esql, String sequence){
+      this._esql = esql;
+      this._sequence = sequence;
+   }//end IdAllocator
+
+   /**
+    * @return an id nobody else has been or will be given
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public int nextId() throws SQLException {
+      _lock.lock();
+      try{
+         if (_next >= _limit){
+            if (_blockSize == 0)
+               _blockSize = readBlockSize();
+            List<List<String>> result = _esql.executeQueryAndReturnResult("SELECT nextval(CAST(? AS regclass))", _sequence);
+            _next = Long.parseLong(result.get(0).get(0).trim());
+            _limit = _next + _blockSize;
+            ++_blocks;
+         }//end if
+         return (int) _next++;
+      }finally{
+         _lock.unlock();
+      }//end try
+   }//end nextId
+
+   /**
+    * @return the ids reserved per nextval, 0 before the first id is handed out
+    */
+   public int getBlockSize(){
+      _lock.lock();
+      try{
+         return _blockSize;
+      }finally{
+         _lock.unlock();
+      }//end try
+   }
+
+   /**
+    * @return the number of blocks reserved so far
+    */
+   public long getBlockCount(){
+      _lock.lock();
+      try{
+         return _blocks;
+      }finally{
+         _lock.unlock();
+      }//end try
+   }
+
+   // the sequence's INCREMENT BY; a sequence that was never altered gives blocks of one id.
+   private int readBlockSize() throws SQLException {
+      List<List<String>> result = _esql.executeQueryAndReturnResult(
+         "SELECT increment FROM information_schema.sequences WHERE sequence_name = ?", _sequence);
+      if (result.isEmpty())
+         throw new SQLException("There is no sequence called " + _sequence);
+      int increment = Integer.parseInt(result.get(0).get(0).trim());
+      if (increment < 1)
+         throw new SQLException("Sequence " + _sequence + " must count upwards to allocate blocks from it");
+      return increment;
+   }//end readBlockSize
+
+}//end IdAllocator
@@ -0,0 +1,499 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Derives an index script from what the application actually runs. The
+ * workload file written by Cafe (-Dcafe.workload.log=file) gives the SQL
+ * templates and how often each ran; the catalog gives the existing
+ * indexes and how often Postgres used them. The advisor proposes one
+ * composite index per filtered access path (equality columns first, then
+ * the range or ORDER BY column) and drops indexes that are unused,
+ * duplicate a wider index or cover long text columns. Insert throughput
+ * into Orders is measured with the current and with the proposed indexes
+ * inside a transaction that is rolled back.
+ *
+ * Usage: java IndexAdvisor &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;workload file&gt; [output script]
+ *
+ */
+public class IndexAdvisor {
+
+   // text columns at least this wide are never worth a B-tree.
+   private static final int WIDE_COLUMN = 256;
+
+   private static final Pattern TABLE = Pattern.compile(
+      "(?i)\\b(?:FROM|JOIN|UPDATE|INTO)\\s+(\\w+)(?:\\s+(?:AS\\s+)?(?!WHERE|SET|VALUES|ORDER|GROUP|LIMIT|JOIN|ON|LEFT|INNER|\\()(\\w+))?");
+   private static final Pattern PREDICATE = Pattern.compile(
+      "(?i)(?:(\\w+)\\.)?(\\w+)\\s*(=\\s*ANY|=|>=|<=|<>|<|>|\\bLIKE\\b|\\bBETWEEN\\b)");
+   private static final Pattern ORDER_BY = Pattern.compile("(?i)\\bORDER\\s+BY\\s+(.*?)(?:\\bLIMIT\\b|\\bOFFSET\\b|$)");
+   private static final Pattern WHERE = Pattern.compile("(?i)\\bWHERE\\b(.*?)(?:\\bORDER\\s+BY\\b|\\bGROUP\\s+BY\\b|\\bLIMIT\\b|$)");
+
+   private final Cafe _esql;
+   // table -> column -> declared character length (0 for non text)
+   private final Map<String, Map<String, Integer>> _columns = new LinkedHashMap<String, Map<String, Integer>>();
+   private final List<Index> _existing = new ArrayList<Index>();
+   private final Map<String, Candidate> _candidates = new LinkedHashMap<String, Candidate>();
+   private final Map<String, Long> _inserts = new LinkedHashMap<String, Long>();
+   private long _statements = 0;
+
+   public IndexAdvisor(Cafe esql){
+      this._esql = esql;
+   }//end IndexAdvisor
+
+   /**
+    * Reads the table columns and the existing indexes with their usage.
+    * The indexes of partitions are left out, they come and go with their
+    * partition; their scans and size count toward the index they belong to.
+    */
+   public void loadCatalog() throws SQLException {
+      for (List<String> row : _esql.executeQueryAndReturnResult(
+              "SELECT lower(table_name), lower(column_name), COALESCE(character_maximum_length, 0) "
+              + "FROM information_schema.columns WHERE table_schema = current_schema()")){
+         Map<String, Integer> columns = _columns.get(row.get(0));
+         if (columns == null){
+            columns = new LinkedHashMap<String, Integer>();
+            _columns.put(row.get(0), columns);
+         }//end if
+         columns.put(row.get(1), Integer.parseInt(row.get(2).trim()));
+      }//end for
+      for (List<String> row : _esql.executeQueryAndReturnResult(
+              "SELECT lower(c.relname), i.relname, x.indisprimary, x.indisunique, "
+              + "COALESCE(s.idx_scan, 0) + COALESCE(p.scans, 0), pg_relation_size(i.oid) + COALESCE(p.bytes, 0), "
+              + "pg_get_indexdef(x.indexrelid) "
+              + "FROM pg_index x JOIN pg_class i ON i.oid = x.indexrelid "
+              + "JOIN pg_class c ON c.oid = x.indrelid JOIN pg_namespace n ON n.oid = c.relnamespace "
+              + "LEFT JOIN pg_stat_user_indexes s ON s.indexrelid = x.indexrelid "
+              + "LEFT JOIN (SELECT h.inhparent, sum(ps.idx_scan) AS scans, sum(pg_relation_size(h.inhrelid)) AS bytes "
+              + "FROM pg_inherits h LEFT JOIN pg_stat_user_indexes ps ON ps.indexrelid = h.inhrelid "
+              + "GROUP BY h.inhparent) p ON p.inhparent = x.indexrelid "
+              + "WHERE n.nspname = current_schema() AND NOT c.relispartition AND NOT i.relispartition ORDER BY 1, 2")){
+         Index index = new Index(row.get(0), row.get(1), indexColumns(row.get(6)));
+         index.primary = isTrue(row.get(2));
+         index.unique = isTrue(row.get(3));
+         index.scans = Long.parseLong(row.get(4).trim());
+         index.bytes = Long.parseLong(row.get(5).trim());
+         _existing.add(index);
+      }//end for
+   }//end loadCatalog
+
+   /**
+    * Reads a workload file of "count TAB sql" lines.
+    */
+   public void loadWorkload(File file) throws IOException {
+      BufferedReader reader = new BufferedReader(new FileReader(file));
+      try{
+         String line;
+         while ((line = reader.readLine()) != null){
+            int tab = line.indexOf('\t');
+            if (tab < 0)
+               continue;
+            addStatement(line.substring(tab + 1), Long.parseLong(line.substring(0, tab).trim()));
+         }//end while
+      }finally{
+         reader.close();
+      }//end try
+   }//end loadWorkload
+
+   /**
+    * Adds one SQL template executed count times to the workload.
+    */
+   public void addStatement(String sql, long count){
+      _statements += count;
+      // the EXISTS wrapper added by Cafe.exists does not change the access path.
+      String body = sql.replaceFirst("(?i)^SELECT 1 WHERE EXISTS \\((.*)\\)$", "$1");
+      Map<String, String> aliases = new LinkedHashMap<String, String>();
+      Matcher m = TABLE.matcher(body);
+      while (m.find()){
+         String table = m.group(1).toLowerCase();
+         if (!_columns.containsKey(table))
+            continue;
+         aliases.put(table, table);
+         if (m.group(2) != null)
+            aliases.put(m.group(2).toLowerCase(), table);
+      }//end while
+      if (aliases.isEmpty())
+         return;
+      if (body.trim().toUpperCase().startsWith("INSERT")){
+         String table = aliases.values().iterator().next();
+         Long previous = _inserts.get(table);
+         _inserts.put(table, (previous == null ? 0 : previous) + count);
+         return;
+      }//end if
+
+      // equality columns then range columns, per table.
+      Map<String, List<String>> equality = new LinkedHashMap<String, List<String>>();
+      Map<String, List<String>> range = new LinkedHashMap<String, List<String>>();
+      Matcher where = WHERE.matcher(body);
+      if (where.find()){
+         Matcher p = PREDICATE.matcher(where.group(1));
+         while (p.find()){
+            String table = resolve(aliases, p.group(1), p.group(2));
+            if (table == null)
+               continue;
+            String op = p.group(3).replaceAll("\\s+", "").toUpperCase();
+            boolean eq = "=".equals(op) || "=ANY".equals(op);
+            add(eq ? equality : range, table, p.group(2).toLowerCase());
+         }//end while
+      }//end if
+      Matcher order = ORDER_BY.matcher(body);
+      if (order.find()){
+         for (String term : order.group(1).split(",")){
+            String[] parts = term.trim().split("\\s+")[0].split("\\.");
+            String column = parts[parts.length - 1];
+            String table = resolve(aliases, parts.length > 1 ? parts[0] : null, column);
+            if (table != null)
+               add(range, table, column.toLowerCase());
+         }//end for
+      }//end if
+
+      for (String table : new java.util.LinkedHashSet<String>(aliases.values())){
+         List<String> columns = new ArrayList<String>();
+         if (equality.containsKey(table))
+            columns.addAll(equality.get(table));
+         int equalityColumns = columns.size();
+         if (range.containsKey(table)){
+            String first = range.get(table).get(0);
+            if (!columns.contains(first))
+               columns.add(first);
+         }//end if
+         if (columns.isEmpty())
+            continue;
+         String key = table + columns;
+         Candidate candidate = _candidates.get(key);
+         if (candidate == null){
+            candidate = new Candidate(table, columns, equalityColumns, sql);
+            _candidates.put(key, candidate);
+         }//end if
+         candidate.count += count;
+      }//end for
+   }//end addStatement
+
+   /**
+    * Works out which indexes to create and which to drop.
+    *
+    * @return the DDL statements, each preceded by a comment line giving the reason
+    */
+   public List<String> advise(){
+      List<String> script = new ArrayList<String>();
+      List<Index> planned = new ArrayList<Index>(_existing);
+      List<Index> created = new ArrayList<Index>();
+
+      for (Candidate candidate : _candidates.values()){
+         if (covered(planned, candidate.table, candidate.columns) || wide(candidate.table, candidate.columns)
+             || uniqueProbe(candidate))
+            continue;
+         StringBuilder name = new StringBuilder(capitalize(candidate.table));
+         for (String column : candidate.columns)
+            name.append('_').append(column);
+         Index index = new Index(candidate.table, name.append("_index").toString(), candidate.columns);
+         index.planned = true;
+         planned.add(index);
+         created.add(index);
+         script.add("-- serves " + candidate.count + " executions of: " + candidate.sql);
+         script.add("CREATE INDEX " + index.name + " ON " + capitalize(index.table)
+                    + " (" + join(index.columns) + ");");
+      }//end for
+
+      for (Index index : _existing){
+         if (index.primary || index.unique)
+            continue;
+         String reason = null;
+         Index wider = widerIndex(planned, index);
+         if (wider != null)
+            reason = "its columns are a prefix of " + wider.name;
+         else if (wide(index.table, index.columns))
+            reason = "indexes a text column of " + WIDE_COLUMN + "+ characters";
+         else if (index.scans == 0 && !servesCandidate(index))
+            reason = "never scanned and no recorded statement filters on it";
+         if (reason == null)
+            continue;
+         planned.remove(index);
+         script.add("-- " + index.name + " (" + index.bytes / 1024 + " kB, " + index.scans + " scans) " + reason);
+         script.add("DROP INDEX IF EXISTS " + index.name + ";");
+      }//end for
+      return script;
+   }//end advise
+
+   /**
+    * Times inserting rows into Orders, runs the script, times it again and
+    * rolls everything back. Both the inserted rows and the index changes
+    * are undone; only the consumed order ids are not.
+    *
+    * @return the rows/sec before and after
+    */
+   public double[] measureInserts(List<String> script, int rows) throws SQLException {
+      ConnectionPool.PooledConnection conn = _esql.getPool().borrow();
+      try{
+         Connection c = conn.connection();
+         c.setAutoCommit(false);
+         double before = timeInserts(c, rows);
+         Statement ddl = c.createStatement();
+         try{
+            for (String line : script)
+               if (!line.startsWith("--"))
+                  ddl.executeUpdate(line);
+         }finally{
+            ddl.close();
+         }//end try
+         double after = timeInserts(c, rows);
+         c.rollback();
+         return new double[]{before, after};
+      }finally{
+         _esql.getPool().release(conn);
+      }//end try
+   }//end measureInserts
+
+   private static double timeInserts(Connection c, int rows) throws SQLException {
+      PreparedStatement stmt = c.prepareStatement(
+         "INSERT INTO Orders (login, paid, timeStampRecieved, total) VALUES (?, ?, ?, ?)");
+      try{
+         long start = System.nanoTime();
+         for (int i = 0; i < rows; ++i){
+            stmt.setString(1, "advisor" + (i % 100));
+            stmt.setBoolean(2, false);
+            stmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            stmt.setFloat(4, i % 20);
+            stmt.addBatch();
+            if (i % 500 == 499)
+               stmt.executeBatch();
+         }//end for
+         stmt.executeBatch();
+         return rows / ((System.nanoTime() - start) / 1e9);
+      }finally{
+         stmt.close();
+      }//end try
+   }//end timeInserts
+
+   public long getStatementCount(){ return _statements; }
+   public Map<String, Long> getInsertCounts(){ return _inserts; }
+   public List<Index> getExistingIndexes(){ return _existing; }
+
+   private String resolve(Map<String, String> aliases, String qualifier, String column){
+      if (qualifier != null)
+         return aliases.get(qualifier.toLowerCase());
+      for (String table : aliases.values())
+         if (_columns.get(table).containsKey(column.toLowerCase()))
+            return table;
+      return null;
+   }//end resolve
+
+   private boolean wide(String table, List<String> columns){
+      Map<String, Integer> widths = _columns.get(table);
+      for (String column : columns){
+         Integer width = widths == null ? null : widths.get(column);
+         if (width != null && width >= WIDE_COLUMN)
+            return true;
+      }//end for
+      return false;
+   }//end wide
+
+   // a path whose equality columns include a whole unique key finds one row already.
+   private boolean uniqueProbe(Candidate candidate){
+      List<String> equality = candidate.columns.subList(0, candidate.equalityColumns);
+      for (Index index : _existing)
+         if ((index.primary || index.unique) && index.table.equals(candidate.table)
+             && equality.containsAll(index.columns))
+            return true;
+      return false;
+   }//end uniqueProbe
+
+   private boolean servesCandidate(Index index){
+      for (Candidate candidate : _candidates.values())
+         if (candidate.table.equals(index.table) && startsWith(index.columns, candidate.columns.subList(0, 1)))
+            return true;
+      return false;
+   }//end servesCandidate
+
+   // an index is covered when another index starts with all of its columns.
+   private static boolean covered(List<Index> indexes, String table, List<String> columns){
+      for (Index index : indexes)
+         if (index.table.equals(table) && startsWith(index.columns, columns))
+            return true;
+      return false;
+   }//end covered
+
+   private static Index widerIndex(List<Index> indexes, Index index){
+      for (Index other : indexes){
+         if (other == index || !other.table.equals(index.table))
+            continue;
+         boolean longer = other.columns.size() > index.columns.size();
+         boolean sameButKeyed = other.columns.size() == index.columns.size() && (other.primary || other.unique);
+         if ((longer || sameButKeyed) && startsWith(other.columns, index.columns))
+            return other;
+      }//end for
+      return null;
+   }//end widerIndex
+
+   private static boolean startsWith(List<String> columns, List<String> prefix){
+      return columns.size() >= prefix.size() && columns.subList(0, prefix.size()).equals(prefix);
+   }//end startsWith
+
+   // the key columns, up to the parenthesis closing them; a WHERE or INCLUDE after it is not a key.
+   static List<String> indexColumns(String definition){
+      List<String> columns = new ArrayList<String>();
+      int open = definition.indexOf('(');
+      if (open < 0)
+         return columns;
+      int depth = 0;
+      int start = open + 1;
+      for (int i = open; i < definition.length(); ++i){
+         char c = definition.charAt(i);
+         if (c == '(')
+            ++depth;
+         else if (c == ')')
+            --depth;
+         if (depth == 0 || c == ',' && depth == 1){
+            columns.add(definition.substring(start, i).trim().split("\\s+")[0].replace("\"", "").toLowerCase());
+            start = i + 1;
+            if (depth == 0)
+               break;
+         }//end if
+      }//end for
+      return columns;
+   }//end indexColumns
+
+   private static void add(Map<String, List<String>> map, String table, String column){
+      List<String> columns = map.get(table);
+      if (columns == null){
+         columns = new ArrayList<String>();
+         map.put(table, columns);
+      }//end if
+      if (!columns.contains(column))
+         columns.add(column);
+   }//end add
+
+   private static boolean isTrue(String value){
+      return value != null && value.trim().startsWith("t");
+   }//end isTrue
+
+   private static String capitalize(String table){
+      if ("itemstatus".equals(table))
+         return "ItemStatus";
+      return Character.toUpperCase(table.charAt(0)) + table.substring(1);
+   }//end capitalize
+
+   private static String join(List<String> values){
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < values.size(); ++i)
+         sb.append(i > 0 ? ", " : "").append(values.get(i));
+      return sb.toString();
+   }//end join
+
+   /**
+    * An existing or proposed index.
+    */
+   static final class Index {
+      final String table;
+      final String name;
+      final List<String> columns;
+      boolean primary = false;
+      boolean unique = false;
+      boolean planned = false;
+      long scans = 0;
+      long bytes = 0;
+
+      Index(String table, String name, List<String> columns){
+         this.table = table;
+         this.name = name;
+         this.columns = columns;
+      }
+   }//end Index
+
+   /**
+    * An access path seen in the workload.
+    */
+   static final class Candidate {
+      final String table;
+      final List<String> columns;
+      final int equalityColumns;
+      final String sql;
+      long count = 0;
+
+      Candidate(String table, List<String> columns, int equalityColumns, String sql){
+         this.table = table;
+         this.columns = columns;
+         this.equalityColumns = equalityColumns;
+         this.sql = sql;
+      }
+   }//end Candidate
+
+   /**
+    * The index advisor entry point
+    *
+    * @param args the command line arguments &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;workload file&gt; [output script]
+    */
+   public static void main(String[] args){
+      if (args.length < 4 || args.length > 5){
+         System.err.println("Usage: java [-classpath <classpath>] " + IndexAdvisor.class.getName()
+                            + " <dbname> <port> <user> <workload file> [output script]");
+         return;
+      }//end if
+      Cafe esql = null;
+      try{
+         Class.forName("org.postgresql.Driver");
+         esql = new Cafe(args[0], args[1], args[2], "");
+         IndexAdvisor advisor = new IndexAdvisor(esql);
+         advisor.loadCatalog();
+         advisor.loadWorkload(new File(args[3]));
+
+         System.out.println("Existing indexes:");
+         for (Index index : advisor.getExistingIndexes())
+            System.out.println(String.format("  %-40s %-10s %8d kB %10d scans%s", index.name, index.table,
+                                             index.bytes / 1024, index.scans,
+                                             index.primary ? " (primary key)" : index.unique ? " (unique)" : ""));
+         System.out.println("Recorded " + advisor.getStatementCount() + " statement executions, inserts per table: "
+                            + advisor.getInsertCounts());
+
+         List<String> script = advisor.advise();
+         PrintWriter out = new PrintWriter(args.length == 5 ? new FileWriter(args[4]) : new java.io.OutputStreamWriter(System.out));
+         out.println("-- Generated by IndexAdvisor from " + args[3]);
+         for (String line : script)
+            out.println(line);
+         out.flush();
+         if (args.length == 5){
+            out.close();
+            System.out.println("Wrote " + args[4]);
+         }//end if
+
+         int rows = Integer.getInteger("cafe.advisor.insertRows", 2000);
+         if (rows > 0){
+            double[] rate = advisor.measureInserts(script, rows);
+            System.out.println(String.format("Orders insert throughput: %.0f rows/sec now, %.0f rows/sec with the script (%+.0f%%)",
+                                             rate[0], rate[1], (rate[1] / rate[0] - 1) * 100));
+         }//end if
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+}//end IndexAdvisor
@@ -0,0 +1,130 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations. Values are kept in microseconds in
+ * log-linear buckets: each power of two is split into 16 sub-buckets, so
+ * a percentile is within about 6% of the true value while the whole
+ * histogram is a fixed array of counters that any number of threads can
+ * record into.
+ *
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BITS = 4;
+   private static final int SUB_COUNT = 1 << SUB_BITS;
+   // 16 exact buckets below 16us, then 16 per power of two up to 2^63us.
+   private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+   private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong _count = new AtomicLong();
+   private final AtomicLong _totalMicros = new AtomicLong();
+   private final AtomicLong _maxMicros = new AtomicLong();
+
+   /**
+    * Records one duration.
+    *
+    * @param nanos the duration in nanoseconds
+    */
+   public void record(long nanos){
+      long micros = Math.max(0, nanos / 1000);
+      _counts.incrementAndGet(bucket(micros));
+      _count.incrementAndGet();
+      _totalMicros.addAndGet(micros);
+      long max = _maxMicros.get();
+      while (micros > max && !_maxMicros.compareAndSet(max, micros))
+         max = _maxMicros.get();
+   }//end record
+
+   public long getCount(){ return _count.get(); }
+
+   /**
+    * @return the longest duration recorded, in milliseconds
+    */
+   public double getMaxMillis(){ return _maxMicros.get() / 1000.0; }
+
+   /**
+    * @return the mean duration, in milliseconds
+    */
+   public double getMeanMillis(){
+      long count = _count.get();
+      return count == 0 ? 0 : _totalMicros.get() / 1000.0 / count;
+   }//end getMeanMillis
+
+   /**
+    * @param percentile between 0 and 100
+    * @return the duration that percentile of the recorded values do not
+    *         exceed, in milliseconds
+    */
+   public double getPercentileMillis(double percentile){
+      long count = _count.get();
+      if (count == 0)
+         return 0;
+      long rank = (long) Math.ceil(count * percentile / 100.0);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; ++i){
+         seen += _counts.get(i);
+         if (seen >= Math.max(1, rank))
+            return Math.min(upperBound(i), _maxMicros.get()) / 1000.0;
+      }//end for
+      return getMaxMillis();
+   }//end getPercentileMillis
+
+   /**
+    * Adds the values recorded in another histogram to this one.
+    */
+   public void add(LatencyHistogram other){
+      for (int i = 0; i < BUCKETS; ++i)
+         _counts.addAndGet(i, other._counts.get(i));
+      _count.addAndGet(other._count.get());
+      _totalMicros.addAndGet(other._totalMicros.get());
+      long micros = other._maxMicros.get();
+      long max = _maxMicros.get();
+      while (micros > max && !_maxMicros.compareAndSet(max, micros))
+         max = _maxMicros.get();
+   }//end add
+
+   public void reset(){
+      for (int i = 0; i < BUCKETS; ++i)
+         _counts.set(i, 0);
+      _count.set(0);
+      _totalMicros.set(0);
+      _maxMicros.set(0);
+   }//end reset
+
+   public String toString(){
+      return String.format("count=%d p50=%.3fms p99=%.3fms max=%.3fms", getCount(),
+                           getPercentileMillis(50), getPercentileMillis(99), getMaxMillis());
+   }//end toString
+
+   static int bucket(long micros){
+      if (micros < SUB_COUNT)
+         return (int) micros;
+      int exponent = 63 - Long.numberOfLeadingZeros(micros);
+      int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+      return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+   }//end bucket
+
+   // the largest value that falls in bucket i.
+   static long upperBound(int i){
+      if (i < SUB_COUNT)
+         return i;
+      int exponent = i / SUB_COUNT + SUB_BITS - 1;
+      long sub = i % SUB_COUNT;
+      return ((SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+   }//end upperBound
+
+}//end LatencyHistogram
@@ -0,0 +1,293 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Drives a CafeService with simulated customers and employees, each on
+ * its own thread with its own Session, and reports the throughput and
+ * latency of every operation. Customers browse, search, place orders,
+ * order their favorites again and look at their order history; employees look at the recent orders and
+ * the dashboard, move ordered items through the kitchen and mark the
+ * customers' orders paid. The orders placed are real, so run it against
+ * a test database.
+ *
+ * Usage: java LoadGenerator &lt;dbname&gt; &lt;port&gt; &lt;user&gt;
+ *
+ * Settings (system properties):
+ *    cafe.load.customers    customer threads (8)
+ *    cafe.load.employees    employee threads (2)
+ *    cafe.load.seconds      measured run time (30)
+ *    cafe.load.warmup       seconds run before measuring (5)
+ *    cafe.load.customerMix  weighted customer operations
+ *                           (login=5,menu=20,search=25,order=25,reorder=5,history=10,profile=10)
+ *    cafe.load.employeeMix  weighted employee operations
+ *                           (menu=10,recent=15,pay=25,dashboard=5,status=45)
+ *
+ */
+public class LoadGenerator {
+
+   private static final String DEFAULT_CUSTOMER_MIX = "login=5,menu=20,search=25,order=25,reorder=5,history=10,profile=10";
+   private static final String DEFAULT_EMPLOYEE_MIX = "menu=10,recent=15,pay=25,dashboard=5,status=45";
+   private static final String[] STATUSES = {"Started", "Cooking", "Ready", "Served"};
+   private static final String[] OPERATIONS = {"login", "menu", "search", "order", "reorder", "history", "profile", "recent", "pay", "dashboard", "status"};
+
+   private final CafeService _service;
+   private final Map<String, LatencyHistogram> _latency = new LinkedHashMap<String, LatencyHistogram>();
+   private final Map<String, AtomicLong> _errors = new LinkedHashMap<String, AtomicLong>();
+   // orders placed by the customers and not yet paid by an employee.
+   private final ConcurrentLinkedQueue<Integer> _unpaid = new ConcurrentLinkedQueue<Integer>();
+   // (orderid, itemName) of recently ordered items, for status updates.
+   private final AtomicReferenceArray<Object[]> _ordered = new AtomicReferenceArray<Object[]>(1024);
+   private final AtomicLong _orderedCount = new AtomicLong();
+   private List<String[]> _customers;
+   private List<String[]> _employees;
+   private List<MenuItem> _items;
+   private List<String> _types;
+   private volatile boolean _measuring = false;
+   private volatile boolean _running = true;
+
+   public LoadGenerator(CafeService service){
+      this._service = service;
+      for (String op : OPERATIONS){
+         _latency.put(op, new LatencyHistogram());
+         _errors.put(op, new AtomicLong());
+      }//end for
+   }//end LoadGenerator
+
+   /**
+    * Runs the simulated users for warmup plus seconds and prints a report.
+    *
+    * @throws java.lang.Exception when the users or the menu cannot be loaded
+    */
+   public void run(int customers, int employees, int warmup, int seconds,
+                   String customerMix, String employeeMix) throws Exception {
+      _customers = loadUsers("Customer", Math.max(100, customers * 10));
+      _employees = loadUsers("Employee", employees);
+      _employees.addAll(loadUsers("Manager", employees));
+      _items = _service.getMenuItems();
+      _types = new ArrayList<String>();
+      for (MenuItem item : _items)
+         if (!_types.contains(item.getType()))
+            _types.add(item.getType());
+      if (_customers.isEmpty() || _items.isEmpty())
+         throw new IllegalStateException("The database has no customers or no menu items to work with.");
+      if (employees > 0 && _employees.isEmpty())
+         throw new IllegalStateException("The database has no employees or managers to work with.");
+
+      final Mix customerOps = new Mix(customerMix);
+      final Mix employeeOps = new Mix(employeeMix);
+      final CountDownLatch done = new CountDownLatch(customers + employees);
+      for (int i = 0; i < customers + employees; ++i){
+         final boolean customer = i < customers;
+         Thread thread = new Thread(new Runnable(){
+            public void run(){
+               try{
+                  simulate(customer ? _customers : _employees, customer ? customerOps : employeeOps);
+               }finally{
+                  done.countDown();
+               }//end try
+            }
+         }, (customer ? "customer-" : "employee-") + i);
+         thread.setDaemon(true);
+         thread.start();
+      }//end for
+
+      Thread.sleep(warmup * 1000L);
+      for (LatencyHistogram histogram : _latency.values())
+         histogram.reset();
+      for (AtomicLong errors : _errors.values())
+         errors.set(0);
+      _measuring = true;
+      long start = System.nanoTime();
+      Thread.sleep(seconds * 1000L);
+      _running = false;
+      double elapsed = (System.nanoTime() - start) / 1e9;
+      done.await();
+      _service.getDatabase().getStatusWriter().flush();
+      report(elapsed, customers, employees);
+   }//end run
+
+   private List<String[]> loadUsers(String type, int limit) throws Exception {
+      List<String[]> users = new ArrayList<String[]>();
+      for (List<String> row : _service.getDatabase().executeQueryAndReturnResult(
+              "SELECT login, password FROM Users WHERE type = ? ORDER BY login LIMIT ?", type, limit))
+         users.add(new String[]{MenuItem.trim(row.get(0)), MenuItem.trim(row.get(1))});
+      return users;
+   }//end loadUsers
+
+   // one simulated user: logs in once, then runs operations from the mix.
+   private void simulate(List<String[]> users, Mix mix){
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      Session session = null;
+      while (_running){
+         String op = session == null ? "login" : mix.next(random);
+         long start = System.nanoTime();
+         try{
+            if ("login".equals(op)){
+               String[] user = users.get(random.nextInt(users.size()));
+               session = _service.logIn(user[0], user[1]);
+            }else if ("menu".equals(op)){
+               _service.getMenuItems();
+            }else if ("search".equals(op)){
+               String name = _items.get(random.nextInt(_items.size())).getItemName();
+               int kind = random.nextInt(3);
+               if (kind == 0)
+                  _service.findItem(name);
+               else if (kind == 1)
+                  _service.findItemsByType(_types.get(random.nextInt(_types.size())));
+               else
+                  // the first letters of a name, as typed so far.
+                  _service.searchItems(name.substring(0, Math.min(name.length(), 1 + random.nextInt(6))), 10);
+            }else if ("order".equals(op)){
+               List<String> basket = new ArrayList<String>();
+               for (int n = 1 + random.nextInt(3); n > 0; --n)
+                  basket.add(_items.get(random.nextInt(_items.size())).getItemName());
+               int orderid = _service.placeOrder(session, basket, random.nextInt(3)).getOrderid();
+               _unpaid.offer(orderid);
+               _ordered.set((int) (_orderedCount.getAndIncrement() % _ordered.length()),
+                            new Object[]{orderid, basket.get(0)});
+            }else if ("reorder".equals(op)){
+               int orderid = _service.reorderFavorites(session);
+               if (orderid >= 0)
+                  _unpaid.offer(orderid);
+            }else if ("history".equals(op)){
+               _service.getOrderHistory(session, 5, null);
+            }else if ("profile".equals(op)){
+               // writes the same number back so the data is unchanged.
+               _service.changePhoneNumber(session, session.getPhoneNum());
+            }else if ("recent".equals(op)){
+               _service.getRecentOrders(session, 20, null);
+            }else if ("pay".equals(op)){
+               Integer orderid = _unpaid.poll();
+               if (orderid == null)
+                  continue;
+               _service.markOrderPaid(session, orderid);
+            }else if ("dashboard".equals(op)){
+               _service.getDashboard(session, false);
+            }else if ("status".equals(op)){
+               Object[] item = _ordered.get(random.nextInt(_ordered.length()));
+               if (item == null)
+                  continue;
+               // queued, the writer's own counters tell what was written.
+               _service.updateItemStatus(session, (Integer) item[0], (String) item[1],
+                                         STATUSES[random.nextInt(STATUSES.length)]);
+            }//end if
+         }catch (Exception e){
+            if (_measuring)
+               _errors.get(op).incrementAndGet();
+            continue;
+         }//end try
+         if (_measuring)
+            _latency.get(op).record(System.nanoTime() - start);
+      }//end while
+   }//end simulate
+
+   private void report(double elapsed, int customers, int employees){
+      System.out.println(String.format("%d customers, %d employees, %.1f s, pool %s",
+                                       customers, employees, elapsed, _service.getDatabase().getPool()));
+      System.out.println(_service.getDatabase().getStatusWriter());
+      System.out.println(String.format("%-8s %9s %7s %10s %9s %9s %9s %9s",
+                                       "op", "count", "errors", "ops/s", "mean ms", "p50 ms", "p99 ms", "max ms"));
+      long total = 0;
+      for (Map.Entry<String, LatencyHistogram> entry : _latency.entrySet()){
+         LatencyHistogram histogram = entry.getValue();
+         long errors = _errors.get(entry.getKey()).get();
+         if (histogram.getCount() == 0 && errors == 0)
+            continue;
+         total += histogram.getCount();
+         System.out.println(String.format("%-8s %9d %7d %10.1f %9.3f %9.3f %9.3f %9.3f",
+                                          entry.getKey(), histogram.getCount(), errors,
+                                          histogram.getCount() / elapsed, histogram.getMeanMillis(),
+                                          histogram.getPercentileMillis(50),
+                                          histogram.getPercentileMillis(99), histogram.getMaxMillis()));
+      }//end for
+      System.out.println(String.format("total    %9d %7s %10.1f", total, "", total / elapsed));
+      System.out.println();
+      System.out.print(_service.getDatabase().getStatementStats().dump());
+   }//end report
+
+   /**
+    * A weighted choice of operations parsed from "name=weight,...".
+    */
+   private static class Mix {
+      private final String[] _ops;
+      private final int[] _cumulative;
+
+      Mix(String spec){
+         String[] parts = spec.split(",");
+         _ops = new String[parts.length];
+         _cumulative = new int[parts.length];
+         int sum = 0;
+         for (int i = 0; i < parts.length; ++i){
+            String[] pair = parts[i].trim().split("=");
+            _ops[i] = pair[0].trim();
+            boolean known = false;
+            for (String op : OPERATIONS)
+               known |= op.equals(_ops[i]);
+            if (!known || pair.length != 2)
+               throw new IllegalArgumentException("Bad operation mix entry: " + parts[i]);
+            sum += Integer.parseInt(pair[1].trim());
+            _cumulative[i] = sum;
+         }//end for
+         if (sum <= 0)
+            throw new IllegalArgumentException("The operation mix has no weight: " + spec);
+      }//end Mix
+
+      String next(ThreadLocalRandom random){
+         int pick = random.nextInt(_cumulative[_cumulative.length - 1]);
+         int i = 0;
+         while (_cumulative[i] <= pick)
+            ++i;
+         return _ops[i];
+      }//end next
+   }//end Mix
+
+   public static void main(String[] args){
+      if (args.length != 3){
+         System.err.println("Usage: java [-classpath <classpath>] " + LoadGenerator.class.getName()
+                            + " <dbname> <port> <user>");
+         return;
+      }//end if
+      Cafe esql = null;
+      try{
+         Class.forName("org.postgresql.Driver");
+         int customers = Integer.getInteger("cafe.load.customers", 8);
+         int employees = Integer.getInteger("cafe.load.employees", 2);
+         esql = new Cafe(args[0], args[1], args[2], "",
+                         Integer.getInteger("cafe.pool.min", 1),
+                         Integer.getInteger("cafe.pool.max", customers + employees),
+                         Long.getLong("cafe.pool.timeout", 5000L));
+         new LoadGenerator(new CafeService(esql)).run(
+            customers, employees,
+            Integer.getInteger("cafe.load.warmup", 5),
+            Integer.getInteger("cafe.load.seconds", 30),
+            System.getProperty("cafe.load.customerMix", DEFAULT_CUSTOMER_MIX),
+            System.getProperty("cafe.load.employeeMix", DEFAULT_EMPLOYEE_MIX));
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+}//end LoadGenerator
@@ -0,0 +1,185 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A read-through, in-process copy of the Menu table indexed by item name,
+ * by type and for searching (see MenuSearchIndex). The menu is loaded on
+ * first use and, when a refresh interval is set, reloaded once the copy is
+ * older than that interval so edits made by other processes show up.
+ * refresh() reads a single item again after an edit made here. Every
+ * change builds a new snapshot with its own search index and swaps it in,
+ * so a reader sees one whole menu. Items are listed in MenuItem.BY_NAME
+ * order.
+ *
+ */
+public class MenuCache {
+
+   private static final String MENU_QUERY =
+      "SELECT itemName, type, price, description, imageURL FROM Menu";
+   private static final String ITEM_QUERY =
+      "SELECT itemName, type, price, description, imageURL FROM Menu WHERE itemName = ?";
+
+   private final Cafe _esql;
+   private final long _refreshMillis;
+   // the current snapshot, replaced as a whole so readers never lock.
+   private volatile Snapshot _snapshot = null;
+   // taken to replace the snapshot; a ReentrantLock, not the monitor, as load() queries under it.
+   private final Lock _lock = new ReentrantLock();
+
+   /**
+    * @param esql the database the menu is read from
+    * @param refreshMillis age after which the copy is reloaded, 0 to keep it
+    */
+   public MenuCache(Cafe esql, long refreshMillis){
+      this._esql = esql;
+      this._refreshMillis = refreshMillis;
+   }//end MenuCache
+
+   /**
+    * @return every item, ordered by name
+    */
+   public List<MenuItem> getItems() throws SQLException {
+      return snapshot().items;
+   }//end getItems
+
+   /**
+    * @param itemName the exact item name, trailing blanks are ignored as in char(n)
+    * @return the item, or null when there is none
+    */
+   public MenuItem getItem(String itemName) throws SQLException {
+      return itemName == null ? null : snapshot().byName.get(stripTrailing(itemName));
+   }//end getItem
+
+   /**
+    * @return the items of the given type, ordered by name
+    */
+   public List<MenuItem> getItemsByType(String type) throws SQLException {
+      List<MenuItem> items = type == null ? null : snapshot().byType.get(stripTrailing(type));
+      return items == null ? Collections.<MenuItem>emptyList() : items;
+   }//end getItemsByType
+
+   /**
+    * @return the items whose name, type or description match query, best
+    *         first; see MenuSearchIndex.search
+    */
+   public List<MenuItem> search(String query, int limit) throws SQLException {
+      return snapshot().search.search(query, limit);
+   }//end search
+
+   /**
+    * Reads one item again and swaps in a snapshot holding it, or without
+    * it when it is gone. Called after every change made through
+    * UpdateMenu, so the rest of the menu is not read again. The item is
+    * read under the lock, so two refreshes of it cannot land out of order.
+    *
+    * @param itemName the item that was added, changed or deleted
+    */
+   public void refresh(String itemName) throws SQLException {
+      if (itemName == null || _snapshot == null)
+         return;
+      String name = stripTrailing(itemName);
+      _lock.lock();
+      try{
+         Snapshot current = _snapshot;
+         if (current == null)
+            return;
+         List<List<String>> result = _esql.executeQueryAndReturnResult(ITEM_QUERY, name);
+         List<MenuItem> items = new ArrayList<MenuItem>(current.items.size() + 1);
+         for (MenuItem item : current.items)
+            if (!item.getItemName().equals(name))
+               items.add(item);
+         if (!result.isEmpty())
+            items.add(MenuItem.fromRecord(result.get(0)));
+         _snapshot = snapshot(items, current.loadedAt);
+      }finally{
+         _lock.unlock();
+      }//end try
+   }//end refresh
+
+   private Snapshot snapshot() throws SQLException {
+      Snapshot current = _snapshot;
+      if (current != null && (_refreshMillis <= 0
+                              || System.currentTimeMillis() - current.loadedAt < _refreshMillis))
+         return current;
+      _lock.lock();
+      try{
+         current = _snapshot;
+         if (current == null || (_refreshMillis > 0
+                                 && System.currentTimeMillis() - current.loadedAt >= _refreshMillis)){
+            current = load();
+            _snapshot = current;
+         }//end if
+         return current;
+      }finally{
+         _lock.unlock();
+      }//end try
+   }//end snapshot
+
+   private Snapshot load() throws SQLException {
+      List<MenuItem> items = new ArrayList<MenuItem>();
+      for (List<String> record : _esql.executeQueryAndReturnResult(MENU_QUERY))
+         items.add(MenuItem.fromRecord(record));
+      return snapshot(items, System.currentTimeMillis());
+   }//end load
+
+   // sorts items and indexes them in a new snapshot.
+   private static Snapshot snapshot(List<MenuItem> items, long loadedAt){
+      Collections.sort(items, MenuItem.BY_NAME);
+      return new Snapshot(items, new MenuSearchIndex(items), loadedAt);
+   }//end snapshot
+
+   // comparisons on char(n) ignore trailing blanks.
+   private static String stripTrailing(String value){
+      int end = value.length();
+      while (end > 0 && value.charAt(end - 1) == ' ')
+         --end;
+      return value.substring(0, end);
+   }//end stripTrailing
+
+   /**
+    * An immutable copy of the menu with its indexes.
+    */
+   private static final class Snapshot {
+      final long loadedAt;
+      final MenuSearchIndex search;
+      final List<MenuItem> items;
+      final Map<String, MenuItem> byName = new HashMap<String, MenuItem>();
+      final Map<String, List<MenuItem>> byType = new LinkedHashMap<String, List<MenuItem>>();
+
+      Snapshot(List<MenuItem> items, MenuSearchIndex search, long loadedAt){
+         this.loadedAt = loadedAt;
+         this.search = search;
+         this.items = Collections.unmodifiableList(items);
+         for (MenuItem item : items){
+            byName.put(item.getItemName(), item);
+            List<MenuItem> sameType = byType.get(item.getType());
+            if (sameType == null){
+               sameType = new ArrayList<MenuItem>();
+               byType.put(item.getType(), sameType);
+            }//end if
+            sameType.add(item);
+         }//end for
+      }
+   }//end Snapshot
+
+}//end MenuCache
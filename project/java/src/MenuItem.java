@@ -0,0 +1,74 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One row of the Menu table, with the blank padding of its char(n)
+ * columns removed (databases not yet migrated to varchar still pad).
+ *
+ */
+public class MenuItem {
+
+   private final String _itemName;
+   private final String _type;
+   private final BigDecimal _price;
+   private final String _description;
+   private final String _imageURL;
+
+   public MenuItem(String itemName, String type, BigDecimal price, String description, String imageURL){
+      this._itemName = itemName;
+      this._type = type;
+      this._price = price;
+      this._description = description;
+      this._imageURL = imageURL;
+   }//end MenuItem
+
+   /**
+    * Builds an item from a (itemName, type, price, description, imageURL) record.
+    */
+   public static MenuItem fromRecord(List<String> record){
+      return new MenuItem(trim(record.get(0)), trim(record.get(1)),
+                          new BigDecimal(record.get(2).trim()),
+                          trim(record.get(3)), trim(record.get(4)));
+   }//end fromRecord
+
+   public String getItemName(){ return _itemName; }
+   public String getType(){ return _type; }
+   public BigDecimal getPrice(){ return _price; }
+   public String getDescription(){ return _description; }
+   public String getImageURL(){ return _imageURL; }
+
+   public String toString(){
+      return _itemName + " (" + _type + ") " + _price;
+   }
+
+   /**
+    * The order the menu is listed in: by name ignoring case, then by name.
+    * Applied in Java, so it does not depend on the database collation.
+    */
+   public static final Comparator<MenuItem> BY_NAME = new Comparator<MenuItem>(){
+      public int compare(MenuItem a, MenuItem b){
+         int order = a.getItemName().compareToIgnoreCase(b.getItemName());
+         return order != 0 ? order : a.getItemName().compareTo(b.getItemName());
+      }
+   };
+
+   // char(n) columns come back blank padded.
+   static String trim(String value){
+      return value == null ? null : value.trim();
+   }//end trim
+
+}//end MenuItem
@@ -0,0 +1,268 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Typo tolerant search over the item names, types and descriptions of the
+ * menu, answered from memory. Every word of those fields is kept in a
+ * sorted vocabulary, which finds the words a query word is a prefix of,
+ * and in a trigram index, which finds the words containing it or within
+ * one or two edits of it. An item scores by how well each query word
+ * matches one of its words, weighted by the field the word is in, so a
+ * match in the name counts more than one in the description. An index
+ * is built from a whole menu and not changed after, so any number of
+ * threads can search it; a changed menu gets a new index.
+ *
+ */
+public class MenuSearchIndex {
+
+   // how well a query word matches an indexed word.
+   private static final double EXACT = 1.0;
+   private static final double PREFIX = 0.8;
+   private static final double SUBSTRING = 0.6;
+   private static final double TYPO = 0.5;
+   // how much a match counts in each field.
+   private static final double NAME = 3.0;
+   private static final double TYPE = 2.0;
+   private static final double DESCRIPTION = 1.0;
+   // added when the name starts with the whole query.
+   private static final double NAME_PREFIX = 1.0;
+
+   private final Map<String, MenuItem> _items = new HashMap<String, MenuItem>();
+   // word -> item name -> weight of the best field the word is in
+   private final TreeMap<String, Map<String, Double>> _vocabulary = new TreeMap<String, Map<String, Double>>();
+   // trigram -> words containing it
+   private final Map<String, Set<String>> _grams = new HashMap<String, Set<String>>();
+
+   public MenuSearchIndex(List<MenuItem> items){
+      for (MenuItem item : items)
+         add(item);
+   }//end MenuSearchIndex
+
+   /**
+    * @return the number of items indexed
+    */
+   public int size(){
+      return _items.size();
+   }//end size
+
+   /**
+    * Finds the items matching query, best first. An item matching more of
+    * the query words ranks above one matching fewer.
+    *
+    * @param query words of an item's name, type or description, whole,
+    *              started or misspelled
+    * @param limit the most items returned
+    */
+   public List<MenuItem> search(String query, int limit){
+      List<String> words = words(query);
+      if (words.isEmpty() || limit <= 0)
+         return Collections.emptyList();
+      final Map<MenuItem, double[]> scores = new HashMap<MenuItem, double[]>();
+      for (String word : words){
+         Map<String, Double> best = new HashMap<String, Double>();
+         for (Map.Entry<String, Double> match : matches(word).entrySet())
+            for (Map.Entry<String, Double> posting : _vocabulary.get(match.getKey()).entrySet()){
+               double score = match.getValue() * posting.getValue();
+               Double previous = best.get(posting.getKey());
+               if (previous == null || previous < score)
+                  best.put(posting.getKey(), score);
+            }//end for
+         for (Map.Entry<String, Double> entry : best.entrySet()){
+            MenuItem item = _items.get(entry.getKey());
+            double[] score = scores.get(item);
+            if (score == null){
+               score = new double[2];
+               scores.put(item, score);
+            }//end if
+            score[0] += 1;
+            score[1] += entry.getValue();
+         }//end for
+      }//end for
+
+      String whole = join(words);
+      for (Map.Entry<MenuItem, double[]> entry : scores.entrySet())
+         if (join(words(entry.getKey().getItemName())).startsWith(whole))
+            entry.getValue()[1] += NAME_PREFIX;
+      List<MenuItem> ranked = new ArrayList<MenuItem>(scores.keySet());
+      Collections.sort(ranked, new Comparator<MenuItem>(){
+         public int compare(MenuItem a, MenuItem b){
+            double[] x = scores.get(a);
+            double[] y = scores.get(b);
+            if (x[0] != y[0])
+               return Double.compare(y[0], x[0]);
+            if (x[1] != y[1])
+               return Double.compare(y[1], x[1]);
+            return MenuItem.BY_NAME.compare(a, b);
+         }
+      });
+      return ranked.size() > limit ? new ArrayList<MenuItem>(ranked.subList(0, limit)) : ranked;
+   }//end search
+
+   // the indexed words matching a query word, with how well they match.
+   private Map<String, Double> matches(String word){
+      Map<String, Double> matches = new HashMap<String, Double>();
+      for (String indexed : _vocabulary.subMap(word, true, word + Character.MAX_VALUE, false).keySet())
+         matches.put(indexed, indexed.length() == word.length() ? EXACT
+                     : PREFIX * (0.5 + 0.5 * word.length() / indexed.length()));
+      int edits = maxEdits(word);
+      if (word.length() < 3)
+         return matches;
+
+      // a word within k edits shares all but at most 3k of the query's trigrams.
+      Set<String> grams = grams(word);
+      Map<String, Integer> shared = new HashMap<String, Integer>();
+      for (String gram : grams){
+         Set<String> containing = _grams.get(gram);
+         if (containing == null)
+            continue;
+         for (String indexed : containing){
+            Integer count = shared.get(indexed);
+            shared.put(indexed, count == null ? 1 : count + 1);
+         }//end for
+      }//end for
+      int needed = Math.max(1, grams.size() - 3 * edits);
+      for (Map.Entry<String, Integer> candidate : shared.entrySet()){
+         String indexed = candidate.getKey();
+         if (matches.containsKey(indexed))
+            continue;
+         if (indexed.contains(word)){
+            matches.put(indexed, SUBSTRING);
+            continue;
+         }//end if
+         if (candidate.getValue() < needed)
+            continue;
+         int distance = distance(word, indexed, edits);
+         // a misspelled start of a longer word, e.g. "capu" for "cappuccino".
+         if (distance > edits && indexed.length() > word.length())
+            distance = distance(word, indexed.substring(0, word.length()), edits);
+         if (distance <= edits)
+            matches.put(indexed, TYPO * (1.0 - 0.2 * (distance - 1)) * (indexed.length() > word.length() + edits ? PREFIX : 1.0));
+      }//end for
+      return matches;
+   }//end matches
+
+   private void add(MenuItem item){
+      _items.put(item.getItemName(), item);
+      post(item.getItemName(), item.getItemName(), NAME);
+      post(item.getItemName(), item.getType(), TYPE);
+      post(item.getItemName(), item.getDescription(), DESCRIPTION);
+   }//end add
+
+   private void post(String itemName, String text, double weight){
+      for (String word : words(text)){
+         Map<String, Double> postings = _vocabulary.get(word);
+         if (postings == null){
+            postings = new HashMap<String, Double>();
+            _vocabulary.put(word, postings);
+            for (String gram : grams(word)){
+               Set<String> containing = _grams.get(gram);
+               if (containing == null){
+                  containing = new HashSet<String>();
+                  _grams.put(gram, containing);
+               }//end if
+               containing.add(word);
+            }//end for
+         }//end if
+         Double previous = postings.get(itemName);
+         if (previous == null || previous < weight)
+            postings.put(itemName, weight);
+      }//end for
+   }//end post
+
+   /**
+    * @return the lower case words of text, without repeats
+    */
+   static List<String> words(String text){
+      Set<String> words = new LinkedHashSet<String>();
+      if (text == null)
+         return new ArrayList<String>(words);
+      StringBuilder word = new StringBuilder();
+      for (int i = 0; i <= text.length(); ++i){
+         char ch = i < text.length() ? text.charAt(i) : ' ';
+         if (Character.isLetterOrDigit(ch)){
+            word.append(Character.toLowerCase(ch));
+         }else if (word.length() > 0){
+            words.add(word.toString());
+            word.setLength(0);
+         }//end if
+      }//end for
+      return new ArrayList<String>(words);
+   }//end words
+
+   // the trigrams of the word padded with a blank on each side, so its ends count too.
+   private static Set<String> grams(String word){
+      String padded = " " + word + " ";
+      Set<String> grams = new HashSet<String>();
+      for (int i = 0; i + 3 <= padded.length(); ++i)
+         grams.add(padded.substring(i, i + 3));
+      return grams;
+   }//end grams
+
+   private static int maxEdits(String word){
+      return word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : 2;
+   }//end maxEdits
+
+   /**
+    * The edit distance counting insertions, deletions, substitutions and
+    * swaps of neighbouring letters, giving up past max.
+    *
+    * @return the distance, or max + 1 when it is larger than max
+    */
+   static int distance(String a, String b, int max){
+      if (Math.abs(a.length() - b.length()) > max)
+         return max + 1;
+      int[] twoBack = new int[b.length() + 1];
+      int[] previous = new int[b.length() + 1];
+      int[] current = new int[b.length() + 1];
+      for (int j = 0; j <= b.length(); ++j)
+         previous[j] = j;
+      for (int i = 1; i <= a.length(); ++i){
+         current[0] = i;
+         int rowMin = i;
+         for (int j = 1; j <= b.length(); ++j){
+            int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+            int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+            if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+               d = Math.min(d, twoBack[j - 2] + 1);
+            current[j] = d;
+            rowMin = Math.min(rowMin, d);
+         }//end for
+         if (rowMin > max)
+            return max + 1;
+         int[] recycled = twoBack;
+         twoBack = previous;
+         previous = current;
+         current = recycled;
+      }//end for
+      return Math.min(previous[b.length()], max + 1);
+   }//end distance
+
+   private static String join(List<String> words){
+      StringBuilder joined = new StringBuilder();
+      for (String word : words)
+         joined.append(joined.length() > 0 ? " " : "").append(word);
+      return joined.toString();
+   }//end join
+
+}//end MenuSearchIndex
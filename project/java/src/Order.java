@@ -0,0 +1,92 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * One row of the Orders table. Orders are listed newest first, ordered by
+ * (timeStampRecieved, orderid), and the last order of a page is the
+ * keyset the next page starts after.
+ *
+ */
+public class Order {
+
+   /**
+    * The columns fromRow expects, in order.
+    */
+   static final String COLUMNS = "orderid, login, paid, timeStampRecieved, total";
+
+   private final int _orderid;
+   private final String _login;
+   private final boolean _paid;
+   private final Timestamp _timeStampRecieved;
+   private final BigDecimal _total;
+
+   public Order(int orderid, String login, boolean paid, Timestamp timeStampRecieved, BigDecimal total){
+      this._orderid = orderid;
+      this._login = login;
+      this._paid = paid;
+      this._timeStampRecieved = timeStampRecieved;
+      this._total = total;
+   }//end Order
+
+   /**
+    * Builds an order from the current row of a query selecting COLUMNS.
+    */
+   static Order fromRow(ResultSet rs) throws SQLException {
+      return new Order(rs.getInt(1), MenuItem.trim(rs.getString(2)), rs.getBoolean(3),
+                       rs.getTimestamp(4), rs.getBigDecimal(5));
+   }//end fromRow
+
+   public int getOrderid(){ return _orderid; }
+   public String getLogin(){ return _login; }
+   public boolean isPaid(){ return _paid; }
+   public Timestamp getTimeStampRecieved(){ return _timeStampRecieved; }
+   public BigDecimal getTotal(){ return _total; }
+
+   public String toString(){
+      return "#" + _orderid + " " + _login + " " + _timeStampRecieved + " " + _total + (_paid ? " paid" : "");
+   }
+
+   /**
+    * A page of orders, newest first.
+    */
+   public static class Page {
+      private final List<Order> _orders;
+      private final boolean _more;
+
+      Page(List<Order> orders, boolean more){
+         this._orders = orders;
+         this._more = more;
+      }//end Page
+
+      public List<Order> getOrders(){ return _orders; }
+
+      /**
+       * @return true when there are older orders after this page
+       */
+      public boolean hasMore(){ return _more; }
+
+      /**
+       * @return the order to pass as "after" for the next page, or null for an empty page
+       */
+      public Order last(){
+         return _orders.isEmpty() ? null : _orders.get(_orders.size() - 1);
+      }//end last
+   }//end Page
+
+}//end Order
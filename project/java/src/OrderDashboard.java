@@ -0,0 +1,420 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rolling totals of the orders of the last 24 hours, kept in ring buffers
+ * of per-minute and per-hour buckets. The buckets are loaded once from the
+ * database by two GROUP BY queries and then updated by placeOrder and
+ * markOrderPaid as orders come in, so a summary costs the same number of
+ * bucket reads however many orders were placed. Orders placed or paid by
+ * other processes only show up after reload().
+ *
+ * A load runs outside the lock, into new buckets that replace the old ones
+ * when it is done; summaries meanwhile come from the old ones. Both queries
+ * read one snapshot, and an order placed or paid while they run is looked
+ * up by its orderid in that snapshot, so it is counted once either way.
+ *
+ */
+public class OrderDashboard {
+
+   private static final long MINUTE_MILLIS = 60 * 1000L;
+   private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+   private static final int MINUTES = 24 * 60;
+   // a 24 hour window touches 25 clock hours.
+   private static final int HOURS = 25;
+   // items listed per hour.
+   private static final int TOP_ITEMS = 3;
+
+   private static final String SEED_ORDERS =
+      "SELECT date_trunc('minute', timeStampRecieved), count(*), sum(round(CAST(total AS numeric) * 100)), "
+      + "sum(CASE WHEN paid THEN 0 ELSE 1 END) FROM Orders WHERE timeStampRecieved > ? GROUP BY 1";
+   private static final String SEED_ITEMS =
+      "SELECT date_trunc('hour', o.timeStampRecieved), s.itemName, sum(s.quantity) "
+      + "FROM ItemStatus s JOIN Orders o ON o.orderid = s.orderid AND o.timeStampRecieved = s.timeStampRecieved "
+      + "WHERE s.timeStampRecieved > ? GROUP BY 1, 2";
+   // what the snapshot of a load holds of the orders placed or paid while it ran.
+   private static final String SEEN_ORDERS =
+      "SELECT orderid, paid IS TRUE FROM Orders WHERE timeStampRecieved > ? AND orderid IN (";
+
+   private final Cafe _esql;
+   // one load at a time; held while querying, so not the monitor.
+   private final Lock _loadLock = new ReentrantLock();
+   // null until loaded.
+   private Buckets _buckets = null;
+   // the orders placed or paid while a load runs, null otherwise.
+   private List<Event> _during = null;
+
+   public OrderDashboard(Cafe esql){
+      this._esql = esql;
+   }//end OrderDashboard
+
+   /**
+    * Adds a new order. Does nothing until the buckets are loaded, the load
+    * counts it then. Call it once the order is committed and its connection
+    * released.
+    *
+    * @param orderid the order's orderid
+    * @param placed the order's timeStampRecieved
+    * @param total the order's total
+    * @param quantities how many of each item were ordered
+    */
+   public synchronized void orderPlaced(int orderid, Timestamp placed, BigDecimal total, Map<String, Integer> quantities){
+      Event event = new Event(orderid, placed, total, quantities);
+      if (_during != null)
+         _during.add(event);
+      if (_buckets != null)
+         _buckets.apply(event, System.currentTimeMillis());
+   }//end orderPlaced
+
+   /**
+    * Counts an unpaid order as paid. Call it once the payment is committed
+    * and its connection released.
+    *
+    * @param orderid the order's orderid
+    * @param placed the order's timeStampRecieved
+    */
+   public synchronized void orderPaid(int orderid, Timestamp placed){
+      Event event = new Event(orderid, placed, null, null);
+      if (_during != null)
+         _during.add(event);
+      if (_buckets != null)
+         _buckets.apply(event, System.currentTimeMillis());
+   }//end orderPaid
+
+   /**
+    * @return the totals of the last 24 hours, loading the buckets on first use
+    * @throws java.sql.SQLException when the buckets cannot be loaded
+    */
+   public Summary getSummary() throws SQLException {
+      Buckets buckets;
+      synchronized (this){
+         buckets = _buckets;
+      }
+      if (buckets == null)
+         load(false);
+      synchronized (this){
+         return _buckets.summary(System.currentTimeMillis());
+      }
+   }//end getSummary
+
+   /**
+    * Loads the buckets again from the database, picking up orders placed
+    * or paid by other processes.
+    *
+    * @throws java.sql.SQLException when the buckets cannot be loaded
+    */
+   public void reload() throws SQLException {
+      load(true);
+   }//end reload
+
+   private void load(boolean again) throws SQLException {
+      _loadLock.lock();
+      try{
+         synchronized (this){
+            // loaded by another caller meanwhile.
+            if (!again && _buckets != null)
+               return;
+            _during = new ArrayList<Event>();
+         }
+         try{
+            loadSnapshot();
+         }finally{
+            synchronized (this){
+               _during = null;
+            }
+         }//end try
+      }finally{
+         _loadLock.unlock();
+      }//end try
+   }//end load
+
+   // fills new buckets from one snapshot, then swaps them in with the orders placed or paid meanwhile.
+   private void loadSnapshot() throws SQLException {
+      final long now = System.currentTimeMillis();
+      final Buckets buckets = new Buckets();
+      Timestamp since = new Timestamp((now / MINUTE_MILLIS - MINUTES + 1) * MINUTE_MILLIS);
+      ConnectionPool.PooledConnection conn = _esql.getPool().borrow();
+      try{
+         Connection c = conn.connection();
+         c.setAutoCommit(false);
+         Statement set = c.createStatement();
+         try{
+            set.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+         }finally{
+            set.close();
+         }//end try
+         ResultSet rs = query(c, SEED_ORDERS, since);
+         while (rs.next()){
+            int slot = buckets.minuteSlot(rs.getTimestamp(1).getTime(), now);
+            if (slot >= 0){
+               buckets.orders[slot] += rs.getInt(2);
+               buckets.revenueCents[slot] += rs.getLong(3);
+               buckets.unpaid[slot] += rs.getInt(4);
+            }//end if
+         }//end while
+         rs.getStatement().close();
+         rs = query(c, SEED_ITEMS, since);
+         while (rs.next()){
+            Map<String, Integer> items = buckets.items.get(buckets.hourSlot(rs.getTimestamp(1).getTime()));
+            String itemName = MenuItem.trim(rs.getString(2));
+            Integer count = items.get(itemName);
+            items.put(itemName, (count == null ? 0 : count) + rs.getInt(3));
+         }//end while
+         rs.getStatement().close();
+         // the events so far are looked up outside the lock, the swap waits until none are left.
+         int checked = 0;
+         while (true){
+            List<Event> events;
+            synchronized (this){
+               if (checked == _during.size()){
+                  _buckets = buckets;
+                  break;
+               }//end if
+               events = new ArrayList<Event>(_during.subList(checked, _during.size()));
+            }
+            checked += events.size();
+            reconcile(c, since, buckets, events);
+         }//end while
+         c.commit();
+      }finally{
+         // rolls back unless committed above and restores autocommit.
+         _esql.getPool().release(conn);
+      }//end try
+   }//end loadSnapshot
+
+   // adds the events the snapshot does not hold yet.
+   private static void reconcile(Connection c, Timestamp since, Buckets buckets, List<Event> events) throws SQLException {
+      StringBuilder sql = new StringBuilder(SEEN_ORDERS);
+      Object[] params = new Object[events.size() + 1];
+      params[0] = since;
+      for (int i = 0; i < events.size(); ++i){
+         sql.append(i == 0 ? "?" : ", ?");
+         params[i + 1] = events.get(i).orderid;
+      }//end for
+      // orderid to paid, of the orders in the snapshot.
+      Map<Integer, Boolean> seen = new HashMap<Integer, Boolean>();
+      ResultSet rs = query(c, sql.append(")").toString(), params);
+      while (rs.next())
+         seen.put(rs.getInt(1), rs.getBoolean(2));
+      rs.getStatement().close();
+      long now = System.currentTimeMillis();
+      for (Event event : events){
+         Boolean paid = seen.get(event.orderid);
+         if (event.quantities != null ? paid == null : !Boolean.TRUE.equals(paid))
+            buckets.apply(event, now);
+      }//end for
+   }//end reconcile
+
+   private static ResultSet query(Connection c, String sql, Object... params) throws SQLException {
+      PreparedStatement stmt = c.prepareStatement(sql);
+      try{
+         for (int i = 0; i < params.length; ++i)
+            stmt.setObject(i + 1, params[i]);
+         return stmt.executeQuery();
+      }catch (SQLException e){
+         stmt.close();
+         throw e;
+      }//end try
+   }//end query
+
+   private static List<String> top(Map<String, Integer> items){
+      List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(items.entrySet());
+      Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>(){
+         public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b){
+            int byCount = b.getValue().compareTo(a.getValue());
+            return byCount != 0 ? byCount : a.getKey().compareTo(b.getKey());
+         }
+      });
+      List<String> top = new ArrayList<String>(TOP_ITEMS);
+      for (int i = 0; i < entries.size() && i < TOP_ITEMS; ++i)
+         top.add(entries.get(i).getKey() + " x" + entries.get(i).getValue());
+      return top;
+   }//end top
+
+   // an order placed, or paid when quantities is null.
+   static final class Event {
+      final int orderid;
+      final Timestamp placed;
+      final BigDecimal total;
+      final Map<String, Integer> quantities;
+
+      Event(int orderid, Timestamp placed, BigDecimal total, Map<String, Integer> quantities){
+         this.orderid = orderid;
+         this.placed = placed;
+         this.total = total;
+         this.quantities = quantities;
+      }
+   }//end Event
+
+   // the ring buffers of one load.
+   static final class Buckets {
+      // slot i holds the minute (or hour) since the epoch in minute[i], or -1.
+      final long[] minute = new long[MINUTES];
+      final int[] orders = new int[MINUTES];
+      final long[] revenueCents = new long[MINUTES];
+      final int[] unpaid = new int[MINUTES];
+      final long[] hour = new long[HOURS];
+      final List<Map<String, Integer>> items = new ArrayList<Map<String, Integer>>(HOURS);
+
+      Buckets(){
+         for (int i = 0; i < MINUTES; ++i)
+            minute[i] = -1;
+         for (int i = 0; i < HOURS; ++i){
+            hour[i] = -1;
+            items.add(new HashMap<String, Integer>());
+         }//end for
+      }//end Buckets
+
+      void apply(Event event, long now){
+         int slot = minuteSlot(event.placed.getTime(), now);
+         if (slot < 0)
+            return;
+         if (event.quantities == null){
+            if (unpaid[slot] > 0)
+               unpaid[slot] -= 1;
+            return;
+         }//end if
+         orders[slot] += 1;
+         revenueCents[slot] += event.total.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+         unpaid[slot] += 1;
+         Map<String, Integer> hourItems = items.get(hourSlot(event.placed.getTime()));
+         for (Map.Entry<String, Integer> entry : event.quantities.entrySet()){
+            Integer count = hourItems.get(entry.getKey());
+            hourItems.put(entry.getKey(), (count == null ? 0 : count) + entry.getValue());
+         }//end for
+      }//end apply
+
+      Summary summary(long now){
+         long oldest = now / MINUTE_MILLIS - MINUTES;
+         Map<Long, Hour> hours = new HashMap<Long, Hour>();
+         List<Hour> ordered = new ArrayList<Hour>();
+         for (int i = 0; i < MINUTES; ++i){
+            if (minute[i] <= oldest)
+               continue;
+            long start = minute[i] * MINUTE_MILLIS / HOUR_MILLIS;
+            Hour row = hours.get(start);
+            if (row == null){
+               row = new Hour(new Timestamp(start * HOUR_MILLIS));
+               hours.put(start, row);
+               ordered.add(row);
+            }//end if
+            row.orders += orders[i];
+            row.revenueCents += revenueCents[i];
+            row.unpaid += unpaid[i];
+         }//end for
+         for (Hour row : ordered){
+            int slot = (int) (row.start.getTime() / HOUR_MILLIS % HOURS);
+            if (hour[slot] == row.start.getTime() / HOUR_MILLIS)
+               row.topItems = top(items.get(slot));
+         }//end for
+         Collections.sort(ordered, new Comparator<Hour>(){
+            public int compare(Hour a, Hour b){
+               return b.start.compareTo(a.start);
+            }
+         });
+         return new Summary(ordered);
+      }//end summary
+
+      // the slot of the minute of time, emptied if it held an older minute; -1 when outside the window.
+      int minuteSlot(long time, long now){
+         long m = time / MINUTE_MILLIS;
+         if (m <= now / MINUTE_MILLIS - MINUTES)
+            return -1;
+         int slot = (int) (m % MINUTES);
+         if (minute[slot] != m){
+            minute[slot] = m;
+            orders[slot] = 0;
+            revenueCents[slot] = 0;
+            unpaid[slot] = 0;
+         }//end if
+         return slot;
+      }//end minuteSlot
+
+      int hourSlot(long time){
+         long h = time / HOUR_MILLIS;
+         int slot = (int) (h % HOURS);
+         if (hour[slot] != h){
+            hour[slot] = h;
+            items.get(slot).clear();
+         }//end if
+         return slot;
+      }//end hourSlot
+   }//end Buckets
+
+   /**
+    * The totals of one clock hour.
+    */
+   public static class Hour {
+      private final Timestamp start;
+      private int orders = 0;
+      private long revenueCents = 0;
+      private int unpaid = 0;
+      private List<String> topItems = Collections.emptyList();
+
+      Hour(Timestamp start){
+         this.start = start;
+      }
+
+      public Timestamp getStart(){ return start; }
+      public int getOrders(){ return orders; }
+      public double getRevenue(){ return revenueCents / 100.0; }
+      public int getUnpaid(){ return unpaid; }
+
+      /**
+       * @return the most ordered items as "itemName xcount", most first
+       */
+      public List<String> getTopItems(){ return topItems; }
+   }//end Hour
+
+   /**
+    * The totals of the last 24 hours with a row per hour, newest first.
+    */
+   public static class Summary {
+      private final List<Hour> _hours;
+      private int _orders = 0;
+      private long _revenueCents = 0;
+      private int _unpaid = 0;
+
+      Summary(List<Hour> hours){
+         this._hours = Collections.unmodifiableList(hours);
+         for (Hour hour : hours){
+            _orders += hour.orders;
+            _revenueCents += hour.revenueCents;
+            _unpaid += hour.unpaid;
+         }//end for
+      }//end Summary
+
+      public List<Hour> getHours(){ return _hours; }
+      public int getOrders(){ return _orders; }
+      public double getRevenue(){ return _revenueCents / 100.0; }
+      public int getUnpaid(){ return _unpaid; }
+   }//end Summary
+
+}//end OrderDashboard
@@ -0,0 +1,352 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the Orders and ItemStatus rows of a time range to CSV files for
+ * reporting. The range is cut into slices (cafe.export.sliceHours) and
+ * every slice of every table is written to a file of its own, e.g.
+ * orders_20261017T0000.csv, by a few threads at once, each on a pooled
+ * connection. Both tables are partitioned on timeStampRecieved, so a
+ * slice only reads the partitions it covers.
+ *
+ * The rows are streamed with COPY (SELECT ...) TO STDOUT, which sends the
+ * result as one stream without a round trip per fetch, and written as
+ * they arrive, so memory does not grow with the export. When the JDBC
+ * driver has no COPY API the same CSV is written through
+ * Cafe.streamRows, from a cursor. A driver without cursors either, such
+ * as the bundled pg73jdbc3, reads each slice whole, so there the slice
+ * size bounds the memory used. The slices are read in separate
+ * transactions, so an export of a range still receiving orders is not
+ * one snapshot.
+ *
+ * Usage: java OrderExporter &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;from&gt; &lt;to&gt; &lt;directory&gt;
+ *        from and to as yyyy-mm-dd or yyyy-mm-dd hh:mm, to excluded
+ *
+ * Settings (system properties):
+ *    cafe.export.threads     slices written at once (4)
+ *    cafe.export.sliceHours  hours of orders per file (24)
+ *    cafe.export.gzip        true to write .csv.gz files (false)
+ *
+ */
+public class OrderExporter {
+
+   private static final String[] TABLES = {"Orders", "ItemStatus"};
+   private static final String[] COLUMNS = {
+      Order.COLUMNS,
+      "orderid, itemName, timeStampRecieved, lastUpdated, status, comments, quantity"};
+   private static final long HOUR_MILLIS = 3600000L;
+
+   private final Cafe _esql;
+   private final int _threads;
+   private final long _sliceMillis;
+   private final boolean _gzip;
+
+   public OrderExporter(Cafe esql){
+      this(esql, Integer.getInteger("cafe.export.threads", 4), Integer.getInteger("cafe.export.sliceHours", 24),
+           Boolean.getBoolean("cafe.export.gzip"));
+   }//end OrderExporter
+
+   /**
+    * @param threads slices written at once, at most the connections of the pool
+    * @param sliceHours hours of orders per file
+    * @param gzip true to compress the files
+    */
+   public OrderExporter(Cafe esql, int threads, int sliceHours, boolean gzip){
+      if (threads < 1 || sliceHours < 1)
+         throw new IllegalArgumentException("threads and sliceHours must be positive");
+      this._esql = esql;
+      this._threads = threads;
+      this._sliceMillis = sliceHours * HOUR_MILLIS;
+      this._gzip = gzip;
+   }//end OrderExporter
+
+   /**
+    * Writes the orders placed from from up to to, and their items.
+    *
+    * @param dir the directory the files are written to, created if needed
+    * @return the files written with their row counts and timings
+    * @throws java.lang.Exception when a query or a file fails, the files written so far are left
+    */
+   public Export export(Timestamp from, Timestamp to, File dir) throws Exception {
+      if (!from.before(to))
+         throw new IllegalArgumentException("Nothing to export from " + from + " to " + to);
+      if (!dir.isDirectory() && !dir.mkdirs())
+         throw new IOException("Unable to create " + dir);
+      long start = System.nanoTime();
+      List<Callable<Slice>> slices = new ArrayList<Callable<Slice>>();
+      for (long t = from.getTime(); t < to.getTime(); t += _sliceMillis){
+         final Timestamp sliceFrom = new Timestamp(t);
+         final Timestamp sliceTo = new Timestamp(Math.min(t + _sliceMillis, to.getTime()));
+         for (int i = 0; i < TABLES.length; ++i){
+            final String table = TABLES[i];
+            final String columns = COLUMNS[i];
+            final File file = new File(dir, fileName(table, sliceFrom));
+            slices.add(new Callable<Slice>(){
+               public Slice call() throws Exception {
+                  return exportSlice(table, columns, sliceFrom, sliceTo, file);
+               }
+            });
+         }//end for
+      }//end for
+
+      ExecutorService threads = Executors.newFixedThreadPool(Math.min(_threads, slices.size()));
+      try{
+         List<Slice> done = new ArrayList<Slice>();
+         for (Future<Slice> slice : threads.invokeAll(slices)){
+            try{
+               done.add(slice.get());
+            }catch (ExecutionException e){
+               if (e.getCause() instanceof Exception)
+                  throw (Exception) e.getCause();
+               throw e;
+            }//end try
+         }//end for
+         return new Export(done, System.nanoTime() - start, _threads);
+      }finally{
+         threads.shutdownNow();
+      }//end try
+   }//end export
+
+   private String fileName(String table, Timestamp from){
+      return table.toLowerCase() + "_" + new SimpleDateFormat("yyyyMMdd'T'HHmm").format(from)
+         + (_gzip ? ".csv.gz" : ".csv");
+   }//end fileName
+
+   // writes one table's rows of [from, to) to file.
+   private Slice exportSlice(String table, String columns, Timestamp from, Timestamp to, File file) throws Exception {
+      long start = System.nanoTime();
+      long rows;
+      OutputStream out = open(file);
+      try{
+         ConnectionPool.PooledConnection conn = _esql.getPool().borrow();
+         try{
+            Object copyApi = BulkLoader.copyApi(conn.connection());
+            if (copyApi != null){
+               // COPY takes no parameters; Timestamp.toString() is a plain literal.
+               rows = copyOut(copyApi, "COPY (SELECT " + columns + " FROM " + table + " WHERE timeStampRecieved >= '"
+                              + from + "' AND timeStampRecieved < '" + to + "') TO STDOUT WITH CSV HEADER", out);
+            }else{
+               // the cursor below needs a connection of its own.
+               _esql.getPool().release(conn);
+               conn = null;
+               rows = cursorOut(columns, "SELECT " + columns + " FROM " + table
+                                + " WHERE timeStampRecieved >= ? AND timeStampRecieved < ?", from, to, out);
+            }//end if
+         }finally{
+            if (conn != null)
+               _esql.getPool().release(conn);
+         }//end try
+      }finally{
+         out.close();
+      }//end try
+      return new Slice(table, from, file, rows, file.length(), System.nanoTime() - start);
+   }//end exportSlice
+
+   private OutputStream open(File file) throws IOException {
+      OutputStream out = new FileOutputStream(file);
+      if (!_gzip)
+         return new BufferedOutputStream(out, 65536);
+      // the fastest level, compression would otherwise be the slowest part of the export.
+      return new BufferedOutputStream(new GZIPOutputStream(out, 65536){
+         { def.setLevel(Deflater.BEST_SPEED); }
+      }, 65536);
+   }//end open
+
+   private static long copyOut(Object copyApi, String sql, OutputStream out) throws Exception {
+      Method copyOut = copyApi.getClass().getMethod("copyOut", String.class, OutputStream.class);
+      try{
+         return ((Long) copyOut.invoke(copyApi, sql, out)).longValue();
+      }catch (InvocationTargetException e){
+         if (e.getCause() instanceof Exception)
+            throw (Exception) e.getCause();
+         throw e;
+      }//end try
+   }//end copyOut
+
+   // the same CSV as COPY writes: NULL unquoted and empty, "" only where needed.
+   private long cursorOut(String columns, String query, Timestamp from, Timestamp to, OutputStream out)
+         throws SQLException, IOException {
+      final Writer csv = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 65536);
+      csv.write(columns.replace(" ", "").toLowerCase());
+      csv.write('\n');
+      final IOException[] failure = {null};
+      int rows = _esql.streamRows(query, new Cafe.RowHandler(){
+         public boolean handle(ResultSet rs) throws SQLException {
+            try{
+               int count = rs.getMetaData().getColumnCount();
+               for (int i = 1; i <= count; ++i){
+                  if (i > 1)
+                     csv.write(',');
+                  String value = rs.getString(i);
+                  if (value != null)
+                     csv.write(quote(value));
+               }//end for
+               csv.write('\n');
+               return true;
+            }catch (IOException e){
+               failure[0] = e;
+               return false;
+            }//end try
+         }
+      }, from, to);
+      if (failure[0] != null)
+         throw failure[0];
+      csv.flush();
+      return rows;
+   }//end cursorOut
+
+   private static String quote(String value){
+      if (!value.isEmpty() && value.indexOf(',') < 0 && value.indexOf('"') < 0
+          && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+         return value;
+      return '"' + value.replace("\"", "\"\"") + '"';
+   }//end quote
+
+   /**
+    * @return the time in s, accepting yyyy-mm-dd, yyyy-mm-dd hh:mm and yyyy-mm-dd hh:mm:ss
+    * @throws java.lang.IllegalArgumentException when s is none of them
+    */
+   public static Timestamp parseTime(String s){
+      s = s.trim();
+      if (s.length() == 10)
+         s += " 00:00";
+      if (s.length() == 16)
+         s += ":00";
+      return Timestamp.valueOf(s);
+   }//end parseTime
+
+   /**
+    * One file written.
+    */
+   public static final class Slice {
+      private final String _table;
+      private final Timestamp _from;
+      private final File _file;
+      private final long _rows;
+      private final long _bytes;
+      private final long _nanos;
+
+      Slice(String table, Timestamp from, File file, long rows, long bytes, long nanos){
+         this._table = table;
+         this._from = from;
+         this._file = file;
+         this._rows = rows;
+         this._bytes = bytes;
+         this._nanos = nanos;
+      }
+
+      public String getTable(){ return _table; }
+      public Timestamp getFrom(){ return _from; }
+      public File getFile(){ return _file; }
+      public long getRows(){ return _rows; }
+      public long getBytes(){ return _bytes; }
+      public long getNanos(){ return _nanos; }
+
+      public String toString(){
+         return String.format("%s: %d rows, %.1f MB in %.2f s", _file.getName(), _rows, _bytes / 1e6, _nanos / 1e9);
+      }
+   }//end Slice
+
+   /**
+    * The files of one export and its throughput.
+    */
+   public static final class Export {
+      private final List<Slice> _slices;
+      private final long _nanos;
+      private final int _threads;
+
+      Export(List<Slice> slices, long nanos, int threads){
+         this._slices = slices;
+         this._nanos = nanos;
+         this._threads = threads;
+      }
+
+      public List<Slice> getSlices(){ return _slices; }
+      public long getNanos(){ return _nanos; }
+
+      public long getRows(){
+         long rows = 0;
+         for (Slice slice : _slices)
+            rows += slice.getRows();
+         return rows;
+      }//end getRows
+
+      public long getBytes(){
+         long bytes = 0;
+         for (Slice slice : _slices)
+            bytes += slice.getBytes();
+         return bytes;
+      }//end getBytes
+
+      public String toString(){
+         double secs = Math.max(_nanos / 1e9, 1e-9);
+         return String.format("Exported %d rows to %d files, %.1f MB in %.2f s with %d threads (%.0f rows/sec, %.1f MB/sec)",
+                              getRows(), _slices.size(), getBytes() / 1e6, secs, _threads,
+                              getRows() / secs, getBytes() / 1e6 / secs);
+      }//end toString
+   }//end Export
+
+   /**
+    * The export entry point, e.g. run nightly for the day before.
+    *
+    * @param args the command line arguments &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;from&gt; &lt;to&gt; &lt;directory&gt;
+    */
+   public static void main(String[] args){
+      if (args.length != 6){
+         System.err.println("Usage: java [-classpath <classpath>] " + OrderExporter.class.getName()
+                            + " <dbname> <port> <user> <from> <to> <directory>");
+         return;
+      }//end if
+      Cafe esql = null;
+      try{
+         Class.forName("org.postgresql.Driver");
+         int threads = Integer.getInteger("cafe.export.threads", 4);
+         // a connection for every thread.
+         esql = new Cafe(args[0], args[1], args[2], "", 1, threads, Long.getLong("cafe.pool.timeout", 5000L));
+         Export export = new OrderExporter(esql).export(parseTime(args[3]), parseTime(args[4]), new File(args[5]));
+         for (Slice slice : export.getSlices())
+            System.out.println(slice);
+         System.out.println(export);
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+}//end OrderExporter
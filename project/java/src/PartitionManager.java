@@ -0,0 +1,260 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks after the monthly partitions of Orders and ItemStatus (see
+ * migrations/003_partition_orders.sql). Both tables are split on the
+ * order's timeStampRecieved with the same bounds, so orders_pYYYY_MM and
+ * itemstatus_pYYYY_MM hold the same orders and are created, split and
+ * archived together.
+ *
+ *  - ensureAhead() creates the partitions of this month and the next
+ *    ones, each Cafe does it when it starts.
+ *  - splitDefault() moves rows that landed in the default partitions,
+ *    e.g. loaded history, into partitions of their own month.
+ *  - archive() detaches the months older than the retention into the
+ *    archive schema, where they can still be queried or dropped.
+ *
+ * Queries on a time range then read only the partitions of that range,
+ * and each partition's indexes stay the size of one month. Lookups by
+ * orderid alone probe every partition's primary key, so the retention
+ * also bounds their cost.
+ *
+ * Usage: java PartitionManager &lt;dbname&gt; &lt;port&gt; &lt;user&gt;
+ *
+ * Settings (system properties):
+ *    cafe.partition.ahead      months created ahead of this one (2)
+ *    cafe.partition.retention  months kept before archiving, 0 keeps all (12)
+ *    cafe.partition.archive    "detach" to keep old months in the archive
+ *                              schema, "drop" to delete them (detach)
+ *
+ */
+public class PartitionManager {
+
+   private static final String[] TABLES = {"Orders", "ItemStatus"};
+   // pg_try_advisory_lock key, so only one process changes partitions at a time.
+   private static final long LOCK_KEY = 166019L;
+   private static final String MONTHS_AHEAD =
+      "SELECT to_char(m, 'YYYY_MM'), to_char(m, 'YYYY-MM-DD'), to_char(m + interval '1 month', 'YYYY-MM-DD') "
+      + "FROM generate_series(date_trunc('month', now()), date_trunc('month', now()) + CAST(? AS integer) * interval '1 month', "
+      + "interval '1 month') m";
+   private static final String MONTHS_IN_DEFAULT =
+      "SELECT to_char(m, 'YYYY_MM'), to_char(m, 'YYYY-MM-DD'), to_char(m + interval '1 month', 'YYYY-MM-DD') "
+      + "FROM (SELECT DISTINCT date_trunc('month', timeStampRecieved) AS m FROM orders_default) d ORDER BY 1";
+   private static final String PARTITIONS =
+      "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+      + "WHERE i.inhparent = CAST('orders' AS regclass) AND c.relname ~ '^orders_p[0-9]{4}_[0-9]{2}$' ORDER BY 1";
+
+   private final Cafe _esql;
+   private final long _lockTimeoutMillis;
+   private final int _retries;
+
+   public PartitionManager(Cafe esql){
+      this(esql, Long.getLong("cafe.migrate.lockTimeout", 2000L), Integer.getInteger("cafe.migrate.retries", 10));
+   }//end PartitionManager
+
+   public PartitionManager(Cafe esql, long lockTimeoutMillis, int retries){
+      this._esql = esql;
+      this._lockTimeoutMillis = lockTimeoutMillis;
+      this._retries = retries;
+   }//end PartitionManager
+
+   /**
+    * @return false when Orders is a plain table, before migration 003
+    */
+   public boolean isPartitioned() throws SQLException {
+      return _esql.exists("SELECT 1 FROM pg_partitioned_table WHERE partrelid = CAST('orders' AS regclass)");
+   }//end isPartitioned
+
+   /**
+    * Creates the partitions of this month and of the months ahead that do
+    * not exist yet. Does nothing when another process holds the lock.
+    *
+    * @return the partitions created
+    */
+   public List<String> ensureAhead(int months) throws SQLException, InterruptedException {
+      List<String> created = new ArrayList<String>();
+      if (!isPartitioned())
+         return created;
+      List<String> existing = partitions();
+      for (List<String> month : _esql.executeQueryAndReturnResult(MONTHS_AHEAD, months)){
+         if (existing.contains("orders_p" + month.get(0)))
+            continue;
+         List<String> ddl = new ArrayList<String>();
+         for (String table : TABLES)
+            ddl.add("CREATE TABLE IF NOT EXISTS " + table.toLowerCase() + "_p" + month.get(0) + " PARTITION OF " + table
+                    + " FOR VALUES FROM ('" + month.get(1) + "') TO ('" + month.get(2) + "')");
+         if (!runLocked(ddl))
+            break;
+         created.add(month.get(0));
+      }//end for
+      return created;
+   }//end ensureAhead
+
+   /**
+    * Moves every month found in the default partitions into partitions of
+    * its own, one month per transaction.
+    *
+    * @return the months moved
+    */
+   public List<String> splitDefault() throws SQLException, InterruptedException {
+      List<String> moved = new ArrayList<String>();
+      if (!isPartitioned())
+         return moved;
+      for (List<String> month : _esql.executeQueryAndReturnResult(MONTHS_IN_DEFAULT)){
+         String range = "timeStampRecieved >= '" + month.get(1) + "' AND timeStampRecieved < '" + month.get(2) + "'";
+         List<String> sql = new ArrayList<String>();
+         // filled outside the tables first, a new partition may not overlap rows of the default one.
+         for (String table : TABLES)
+            sql.add("CREATE TABLE " + table.toLowerCase() + "_p" + month.get(0) + " (LIKE " + table
+                    + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+         for (String table : TABLES)
+            sql.add("INSERT INTO " + table.toLowerCase() + "_p" + month.get(0) + " SELECT * FROM "
+                    + table.toLowerCase() + "_default WHERE " + range);
+         // ItemStatus first, its rows refer to the orders.
+         sql.add("DELETE FROM itemstatus_default WHERE " + range);
+         sql.add("DELETE FROM orders_default WHERE " + range);
+         for (String table : TABLES)
+            sql.add("ALTER TABLE " + table + " ATTACH PARTITION " + table.toLowerCase() + "_p" + month.get(0)
+                    + " FOR VALUES FROM ('" + month.get(1) + "') TO ('" + month.get(2) + "')");
+         if (!runLocked(sql))
+            break;
+         moved.add(month.get(0));
+      }//end for
+      return moved;
+   }//end splitDefault
+
+   /**
+    * Detaches the months that ended more than retention months ago. A
+    * detached ItemStatus month keeps its foreign key, now pointing at the
+    * detached Orders month beside it.
+    *
+    * @param retention months kept, counting this one
+    * @param drop true to drop the old months instead of moving them to the archive schema
+    * @return the months archived
+    */
+   public List<String> archive(int retention, boolean drop) throws SQLException, InterruptedException {
+      List<String> archived = new ArrayList<String>();
+      if (retention <= 0 || !isPartitioned())
+         return archived;
+      String cutoff = _esql.executeQueryAndReturnResult(
+         "SELECT to_char(date_trunc('month', now()) - CAST(? AS integer) * interval '1 month', 'YYYY_MM')",
+         retention - 1).get(0).get(0).trim();
+      for (String partition : partitions()){
+         String month = partition.substring("orders_p".length());
+         if (month.compareTo(cutoff) >= 0)
+            continue;
+         String orders = "orders_p" + month;
+         String items = "itemstatus_p" + month;
+         List<String> sql = new ArrayList<String>();
+         sql.add("ALTER TABLE ItemStatus DETACH PARTITION " + items);
+         sql.add("ALTER TABLE " + items + " DROP CONSTRAINT IF EXISTS itemstatus_order_fkey");
+         sql.add("ALTER TABLE Orders DETACH PARTITION " + orders);
+         if (drop){
+            sql.add("DROP TABLE " + items);
+            sql.add("DROP TABLE " + orders);
+         }else{
+            sql.add("ALTER TABLE " + items + " ADD CONSTRAINT itemstatus_order_fkey FOREIGN KEY (orderid, timeStampRecieved) "
+                    + "REFERENCES " + orders + " (orderid, timeStampRecieved) NOT VALID");
+            sql.add("CREATE SCHEMA IF NOT EXISTS archive");
+            sql.add("ALTER TABLE " + items + " SET SCHEMA archive");
+            sql.add("ALTER TABLE " + orders + " SET SCHEMA archive");
+         }//end if
+         if (!runLocked(sql))
+            break;
+         archived.add(month);
+      }//end for
+      return archived;
+   }//end archive
+
+   /**
+    * @return the monthly Orders partitions, oldest first
+    */
+   public List<String> partitions() throws SQLException {
+      List<String> names = new ArrayList<String>();
+      for (List<String> row : _esql.executeQueryAndReturnResult(PARTITIONS))
+         names.add(row.get(0).trim());
+      return names;
+   }//end partitions
+
+   // runs sql as one transaction holding the partition lock; false when another process holds it.
+   private boolean runLocked(List<String> sql) throws SQLException, InterruptedException {
+      ConnectionPool.PooledConnection conn = _esql.getPool().borrow();
+      try{
+         Connection c = conn.connection();
+         c.setAutoCommit(false);
+         Statement stmt = c.createStatement();
+         try{
+            // a session lock, the transaction below may roll back and start over.
+            ResultSet rs = stmt.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")");
+            boolean mine = rs.next() && rs.getBoolean(1);
+            rs.close();
+            c.commit();
+            if (!mine)
+               return false;
+            try{
+               SchemaMigrator.runInTransaction(c, stmt, sql, _lockTimeoutMillis, _retries);
+            }finally{
+               stmt.executeQuery("SELECT pg_advisory_unlock(" + LOCK_KEY + ")").close();
+               c.commit();
+            }//end try
+            return true;
+         }finally{
+            stmt.close();
+         }//end try
+      }finally{
+         _esql.getPool().release(conn);
+      }//end try
+   }//end runLocked
+
+   /**
+    * The partition maintenance entry point, run it daily, e.g. from cron.
+    *
+    * @param args the command line arguments &lt;dbname&gt; &lt;port&gt; &lt;user&gt;
+    */
+   public static void main(String[] args){
+      if (args.length != 3){
+         System.err.println("Usage: java [-classpath <classpath>] " + PartitionManager.class.getName()
+                            + " <dbname> <port> <user>");
+         return;
+      }//end if
+      Cafe esql = null;
+      try{
+         Class.forName("org.postgresql.Driver");
+         esql = new Cafe(args[0], args[1], args[2], "");
+         PartitionManager partitions = new PartitionManager(esql);
+         if (!partitions.isPartitioned()){
+            System.out.println("Orders is not partitioned, run migrate.sh first.");
+            return;
+         }//end if
+         System.out.println("Moved out of the default partitions: " + partitions.splitDefault());
+         System.out.println("Created: " + partitions.ensureAhead(Integer.getInteger("cafe.partition.ahead", 2)));
+         System.out.println("Archived: " + partitions.archive(Integer.getInteger("cafe.partition.retention", 12),
+                                                             "drop".equals(System.getProperty("cafe.partition.archive"))));
+         System.out.println("Partitions: " + partitions.partitions());
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+}//end PartitionManager
@@ -0,0 +1,183 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Renders a streamed result as a fixed-width table through a buffered
+ * writer. Column widths come from the ResultSetMetaData display sizes,
+ * capped at maxWidth, so no pass over the data is needed before printing.
+ * Blank padding of char(n) values is stripped before output.
+ *
+ */
+public class ResultPrinter implements Cafe.RowHandler {
+
+   // widest column printed, longer values are cut off.
+   public static final int DEFAULT_MAX_WIDTH = Integer.getInteger("cafe.print.maxWidth", 30);
+
+   private final Writer _out;
+   private final int _maxWidth;
+   private int[] _widths = null;
+   private int _rows = 0;
+   private final StringBuilder _line = new StringBuilder(256);
+
+   /**
+    * @param out where the table is written; flushed after the first row and by flush()
+    * @param maxWidth the widest a column may be
+    */
+   public ResultPrinter(Writer out, int maxWidth){
+      this._out = out;
+      this._maxWidth = maxWidth;
+   }//end ResultPrinter
+
+   /**
+    * Creates a printer writing to a stream through an 8k buffer.
+    */
+   public static ResultPrinter to(PrintStream stream){
+      return new ResultPrinter(new BufferedWriter(new OutputStreamWriter(stream), 8192),
+                               DEFAULT_MAX_WIDTH);
+   }//end to
+
+   public boolean handle(ResultSet rs) throws SQLException {
+      try{
+         if (_widths == null){
+            printHeader(rs.getMetaData());
+            printRow(rs);
+            _out.flush();
+         }else{
+            printRow(rs);
+         }//end if
+      }catch (IOException e){
+         throw new SQLException("Unable to write result: " + e.getMessage());
+      }//end try
+      ++_rows;
+      return true;
+   }//end handle
+
+   /**
+    * Flushes whatever is still buffered.
+    */
+   public void flush(){
+      try{
+         _out.flush();
+      }catch (IOException e){
+         // ignored, the console went away.
+      }//end try
+   }//end flush
+
+   /**
+    * @return the number of rows printed so far
+    */
+   public int getRowCount(){ return _rows; }
+
+   /**
+    * Starts a table whose rows are supplied with printValues instead of
+    * coming from a ResultSet.
+    *
+    * @param names the column headers
+    * @param widths the column widths, capped at maxWidth
+    */
+   public void printHeader(String[] names, int[] widths){
+      _widths = new int[names.length];
+      for (int i = 0; i < names.length; ++i)
+         _widths[i] = Math.min(Math.max(widths[i], names[i].length()), _maxWidth);
+      try{
+         writeHeader(names);
+      }catch (IOException e){
+         // ignored, the console went away.
+      }//end try
+   }//end printHeader
+
+   /**
+    * Prints one row of a table started with printHeader.
+    */
+   public void printValues(String... values){
+      _line.setLength(0);
+      for (int i = 0; i < _widths.length; ++i)
+         append(values[i], _widths[i]);
+      try{
+         endLine();
+      }catch (IOException e){
+         // ignored, the console went away.
+      }//end try
+      ++_rows;
+   }//end printValues
+
+   private void printHeader(ResultSetMetaData rsmd) throws SQLException, IOException {
+      int numCol = rsmd.getColumnCount();
+      String[] names = new String[numCol];
+      _widths = new int[numCol];
+      for (int i = 1; i <= numCol; ++i){
+         names[i - 1] = rsmd.getColumnLabel(i);
+         int size = rsmd.getColumnDisplaySize(i);
+         if (size <= 0 || size > _maxWidth)
+            size = _maxWidth;
+         _widths[i - 1] = Math.min(Math.max(size, names[i - 1].length()), _maxWidth);
+      }//end for
+      writeHeader(names);
+   }//end printHeader
+
+   private void writeHeader(String[] names) throws IOException {
+      _line.setLength(0);
+      for (int i = 0; i < names.length; ++i)
+         append(names[i], _widths[i]);
+      endLine();
+      _line.setLength(0);
+      for (int i = 0; i < _widths.length; ++i){
+         for (int j = 0; j < _widths[i]; ++j)
+            _line.append('-');
+         _line.append(i + 1 < _widths.length ? "-+-" : "");
+      }//end for
+      _line.append('\n');
+      _out.write(_line.toString());
+   }//end writeHeader
+
+   private void printRow(ResultSet rs) throws SQLException, IOException {
+      _line.setLength(0);
+      for (int i = 1; i <= _widths.length; ++i)
+         append(rs.getString(i), _widths[i - 1]);
+      endLine();
+   }//end printRow
+
+   private void append(String value, int width){
+      if (_line.length() > 0)
+         _line.append(" | ");
+      int end = value == null ? 0 : value.length();
+      // char(n) columns come back blank padded.
+      while (end > 0 && value.charAt(end - 1) == ' ')
+         --end;
+      if (end > width)
+         end = width;
+      if (value != null)
+         _line.append(value, 0, end);
+      for (int j = end; j < width; ++j)
+         _line.append(' ');
+   }//end append
+
+   private void endLine() throws IOException {
+      int end = _line.length();
+      while (end > 0 && _line.charAt(end - 1) == ' ')
+         --end;
+      _line.setLength(end);
+      _line.append('\n');
+      _out.write(_line.toString());
+   }//end endLine
+
+}//end ResultPrinter
@@ -0,0 +1,185 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+
+/**
+ * The sales reports of the Reports menu, read from the aggregate tables
+ * of migrations/007_sales_aggregates.sql instead of the orders:
+ *
+ *  - DailySales, the orders, revenue and paid revenue of each day
+ *  - DailyItemSales, how many of each item were ordered each day
+ *  - CustomerSpend, what each customer has ordered and paid in all
+ *
+ * Triggers on Orders and ItemStatus append the totals of every insert
+ * and update to the *Pending tables beside them, fold() adds those in.
+ * Every report folds first, so the pending rows stay few without a cron
+ * job, and reads a table together with the pending rows left by orders
+ * placed meanwhile or by a fold it skipped because another session was
+ * folding (indexed by day and login, migration 008). A report costs a
+ * row per day, item or customer however many orders there are. Top
+ * Customers reads the folded totals alone, in the order of their index.
+ *
+ * backfill() rebuilds everything from the orders, e.g. after the
+ * triggers were disabled for a bulk load. It refuses once the totals
+ * reach back further than the orders, archived or dropped months would
+ * drop out of a rebuilt total.
+ *
+ * Usage: java SalesReports &lt;dbname&gt; &lt;port&gt; &lt;user&gt; [fold|backfill]
+ *
+ */
+public class SalesReports {
+
+   private static final String REVENUE_PER_DAY =
+      "SELECT day, sum(orders) AS orders, sum(revenue) AS revenue, "
+      + "round(sum(revenue) / NULLIF(sum(orders), 0), 2) AS avgOrder, sum(paidRevenue) AS paidRevenue "
+      + "FROM (SELECT day, orders, revenue, paidRevenue FROM DailySales WHERE day > CURRENT_DATE - ? "
+      + "UNION ALL SELECT day, orders, revenue, paidRevenue FROM DailySalesPending WHERE day > CURRENT_DATE - ?) s "
+      + "GROUP BY day ORDER BY day DESC";
+   private static final String TOP_ITEMS =
+      "SELECT itemName, sum(quantity) AS sold "
+      + "FROM (SELECT itemName, quantity FROM DailyItemSales WHERE day > CURRENT_DATE - ? "
+      + "UNION ALL SELECT itemName, quantity FROM DailyItemSalesPending WHERE day > CURRENT_DATE - ?) s "
+      + "GROUP BY itemName ORDER BY sold DESC, itemName LIMIT ?";
+   private static final String TOP_CUSTOMERS =
+      "SELECT login, orders, spent, round(spent / NULLIF(orders, 0), 2) AS avgOrder, paid, lastOrder "
+      + "FROM CustomerSpend ORDER BY spent DESC LIMIT ?";
+   private static final String CUSTOMER_SPEND =
+      "SELECT login, sum(orders) AS orders, sum(spent) AS spent, round(sum(spent) / NULLIF(sum(orders), 0), 2) AS avgOrder, "
+      + "sum(paid) AS paid, max(lastOrder) AS lastOrder "
+      + "FROM (SELECT * FROM CustomerSpend WHERE login = ? UNION ALL SELECT * FROM CustomerSpendPending WHERE login = ?) s "
+      + "GROUP BY login";
+   // a day totalled before the oldest order left in Orders.
+   private static final String OLDER_THAN_ORDERS =
+      "SELECT 1 WHERE (SELECT min(day) FROM (SELECT min(day) AS day FROM DailySales "
+      + "UNION ALL SELECT min(day) FROM DailySalesPending) d) "
+      + "< COALESCE((SELECT CAST(min(timeStampRecieved) AS date) FROM Orders), CAST('infinity' AS date))";
+
+   private final Cafe _esql;
+
+   public SalesReports(Cafe esql){
+      this._esql = esql;
+   }//end SalesReports
+
+   /**
+    * @return false before migration 007
+    */
+   public boolean isInstalled() throws SQLException {
+      return _esql.exists("SELECT 1 FROM pg_class WHERE relname = 'dailysales'");
+   }//end isInstalled
+
+   /**
+    * The orders, revenue, average order and paid revenue of the last days,
+    * newest first. Days without orders are left out.
+    *
+    * @param days the days shown, counting today
+    * @return the number of days printed
+    */
+   public int revenuePerDay(int days, Cafe.RowHandler handler) throws SQLException {
+      fold();
+      return _esql.forEachRow(REVENUE_PER_DAY, handler, days, days);
+   }//end revenuePerDay
+
+   /**
+    * The items ordered most often in the last days, counting each item of
+    * an order as many times as it was ordered.
+    *
+    * @param days the days counted, counting today
+    * @param limit the most items shown
+    */
+   public int topItems(int days, int limit, Cafe.RowHandler handler) throws SQLException {
+      fold();
+      return _esql.forEachRow(TOP_ITEMS, handler, days, days, limit);
+   }//end topItems
+
+   /**
+    * The customers who spent the most of all time, as of the fold done
+    * first; orders placed since show up at the next report.
+    */
+   public int topCustomers(int limit, Cafe.RowHandler handler) throws SQLException {
+      fold();
+      return _esql.forEachRow(TOP_CUSTOMERS, handler, limit);
+   }//end topCustomers
+
+   /**
+    * What one customer has ordered and paid of all time.
+    *
+    * @return 0 when the customer never ordered
+    */
+   public int customerSpend(String login, Cafe.RowHandler handler) throws SQLException {
+      fold();
+      return _esql.forEachRow(CUSTOMER_SPEND, handler, login, login);
+   }//end customerSpend
+
+   /**
+    * Adds the pending rows into the aggregate tables. Does nothing when
+    * another session is folding at the same time.
+    *
+    * @return the days folded
+    */
+   public long fold() throws SQLException {
+      return Long.parseLong(_esql.executeQueryAndReturnResult("SELECT sales_fold()").get(0).get(0).trim());
+   }//end fold
+
+   /**
+    * Rebuilds the aggregate tables from Orders and ItemStatus. Orders and
+    * items cannot be added or changed meanwhile.
+    *
+    * @return the orders counted
+    * @throws java.sql.SQLException when the totals hold days older than
+    *         every order, e.g. of archived months, which a rebuild loses
+    */
+   public long backfill() throws SQLException {
+      if (_esql.exists(OLDER_THAN_ORDERS))
+         throw new SQLException("The sales totals go back further than the orders, a rebuild would lose "
+                                + "the archived months. Not rebuilt.");
+      return Long.parseLong(_esql.executeQueryAndReturnResult("SELECT sales_backfill()").get(0).get(0).trim());
+   }//end backfill
+
+   /**
+    * The aggregate maintenance entry point: fold the pending rows, e.g.
+    * after a bulk load, or rebuild everything with backfill.
+    *
+    * @param args the command line arguments &lt;dbname&gt; &lt;port&gt; &lt;user&gt; [fold|backfill]
+    */
+   public static void main(String[] args){
+      String command = args.length == 4 ? args[3] : "fold";
+      if ((args.length != 3 && args.length != 4) || !("fold".equals(command) || "backfill".equals(command))){
+         System.err.println("Usage: java [-classpath <classpath>] " + SalesReports.class.getName()
+                            + " <dbname> <port> <user> [fold|backfill]");
+         return;
+      }//end if
+      Cafe esql = null;
+      try{
+         Class.forName("org.postgresql.Driver");
+         esql = new Cafe(args[0], args[1], args[2], "");
+         SalesReports reports = new SalesReports(esql);
+         if (!reports.isInstalled()){
+            System.out.println("There are no sales aggregates yet, run migrate.sh first.");
+            return;
+         }//end if
+         long start = System.nanoTime();
+         if ("backfill".equals(command))
+            System.out.print("Rebuilt from " + reports.backfill() + " orders");
+         else
+            System.out.print("Folded " + reports.fold() + " days");
+         System.out.println(" in " + (System.nanoTime() - start) / 1000000L + " ms");
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+}//end SalesReports
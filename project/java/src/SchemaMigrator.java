@@ -0,0 +1,412 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Brings a database up to the latest schema version. The migrations are
+ * the files NNN_description.sql of the migrations directory; the versions
+ * applied are kept in SchemaVersion, and a database without that table is
+ * taken to be at version 1, the original create_tables.sql. Each
+ * statement of a migration runs in its own transaction with a lock
+ * timeout, so a table is only locked while its own statement runs and a
+ * long running transaction elsewhere makes the statement retry instead of
+ * queueing every other session behind it. Migrations are written so that
+ * a statement can run again when the migrator is stopped half way, or put
+ * the statements that must not be split between BEGIN; and COMMIT; lines,
+ * which run as one transaction.
+ *
+ * The table and index sizes and the timings of the application's common
+ * queries are reported before and after.
+ *
+ * Usage: java SchemaMigrator &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;migrations directory&gt;
+ *
+ * Settings (system properties):
+ *    cafe.migrate.lockTimeout  ms a statement waits for its lock (2000)
+ *    cafe.migrate.retries      attempts per statement (10)
+ *    cafe.migrate.runs         executions per timed query (50)
+ *
+ */
+public class SchemaMigrator {
+
+   private static final Pattern FILE_NAME = Pattern.compile("(\\d+)_(.+)\\.sql");
+
+   private static final String CREATE_VERSION_TABLE =
+      "CREATE TABLE IF NOT EXISTS SchemaVersion(version integer NOT NULL, description varchar(200) NOT NULL, "
+      + "appliedAt timestamp NOT NULL, millis bigint NOT NULL, PRIMARY KEY(version))";
+
+   // a partition and its indexes count towards the partitioned table and its indexes.
+   private static final String SIZES =
+      "SELECT t.relname, CASE WHEN t.relkind IN ('i', 'I') THEN i.indrelid::regclass::text ELSE '' END, "
+      + "sum(CASE c.relkind WHEN 'i' THEN pg_relation_size(c.oid) ELSE pg_table_size(c.oid) END) "
+      + "FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace "
+      + "LEFT JOIN pg_inherits h ON h.inhrelid = c.oid "
+      + "JOIN pg_class t ON t.oid = COALESCE(h.inhparent, c.oid) "
+      + "LEFT JOIN pg_index i ON i.indexrelid = t.oid "
+      + "WHERE n.nspname = current_schema() AND c.relkind IN ('r', 'i') AND t.relname NOT LIKE 'schemaversion%' "
+      + "GROUP BY 1, 2 ORDER BY 2, 1";
+
+   private final Cafe _esql;
+   private final long _lockTimeoutMillis;
+   private final int _retries;
+
+   public SchemaMigrator(Cafe esql, long lockTimeoutMillis, int retries){
+      this._esql = esql;
+      this._lockTimeoutMillis = lockTimeoutMillis;
+      this._retries = Math.max(1, retries);
+   }//end SchemaMigrator
+
+   /**
+    * @return the highest version applied, creating SchemaVersion at version 1 when missing
+    */
+   public int currentVersion() throws SQLException {
+      _esql.executeUpdate(CREATE_VERSION_TABLE);
+      _esql.executeUpdate("INSERT INTO SchemaVersion SELECT 1, 'baseline', now(), 0 "
+                          + "WHERE NOT EXISTS (SELECT 1 FROM SchemaVersion)");
+      List<List<String>> result = _esql.executeQueryAndReturnResult("SELECT max(version) FROM SchemaVersion");
+      return Integer.parseInt(result.get(0).get(0).trim());
+   }//end currentVersion
+
+   /**
+    * @return the migrations in dir newer than version, oldest first
+    */
+   public static List<File> pending(File dir, int version) throws IOException {
+      File[] files = dir.listFiles();
+      if (files == null)
+         throw new IOException(dir + " is not a directory");
+      Arrays.sort(files);
+      List<File> pending = new ArrayList<File>();
+      for (File file : files)
+         if (version(file) > version)
+            pending.add(file);
+      return pending;
+   }//end pending
+
+   /**
+    * Applies one migration and records it in SchemaVersion.
+    *
+    * @return the milliseconds it took
+    */
+   public long apply(File migration) throws IOException, SQLException, InterruptedException {
+      long start = System.nanoTime();
+      List<String> statements = readStatements(migration);
+      ConnectionPool.PooledConnection conn = _esql.getPool().borrow();
+      try{
+         Connection c = conn.connection();
+         c.setAutoCommit(false);
+         Statement stmt = c.createStatement();
+         try{
+            List<String> transaction = null;
+            for (String sql : statements){
+               if ("BEGIN".equalsIgnoreCase(sql.trim())){
+                  transaction = new ArrayList<String>();
+                  continue;
+               }//end if
+               if (transaction != null && !"COMMIT".equalsIgnoreCase(sql.trim())){
+                  transaction.add(sql);
+                  continue;
+               }//end if
+               List<String> run = transaction != null ? transaction : Collections.singletonList(sql);
+               transaction = null;
+               long began = System.nanoTime();
+               runInTransaction(c, stmt, run, _lockTimeoutMillis, _retries);
+               System.out.println(String.format("  %8.1f ms  %s", (System.nanoTime() - began) / 1e6,
+                                                run.size() == 1 ? firstLine(run.get(0))
+                                                : "transaction of " + run.size() + " statements"));
+            }//end for
+            if (transaction != null)
+               throw new SQLException(migration.getName() + ": BEGIN without COMMIT");
+         }finally{
+            stmt.close();
+         }//end try
+      }finally{
+         _esql.getPool().release(conn);
+      }//end try
+      long millis = (System.nanoTime() - start) / 1000000L;
+      Matcher name = FILE_NAME.matcher(migration.getName());
+      name.matches();
+      _esql.executeUpdate("INSERT INTO SchemaVersion (version, description, appliedAt, millis) VALUES (?, ?, ?, ?)",
+                          version(migration), name.group(2).replace('_', ' '),
+                          new Timestamp(System.currentTimeMillis()), millis);
+      return millis;
+   }//end apply
+
+   /**
+    * Runs the statements as one transaction, starting over while a lock
+    * they need is held elsewhere.
+    *
+    * @param c a connection with autocommit off
+    * @param lockTimeoutMillis how long a statement waits for a lock per attempt
+    * @param retries attempts before giving up
+    */
+   static void runInTransaction(Connection c, Statement stmt, List<String> sqls,
+                                long lockTimeoutMillis, int retries) throws SQLException, InterruptedException {
+      for (int attempt = 1; ; ++attempt){
+         String sql = null;
+         try{
+            stmt.execute("SET LOCAL lock_timeout = " + lockTimeoutMillis);
+            for (String next : sqls){
+               sql = next;
+               stmt.execute(sql);
+            }//end for
+            c.commit();
+            return;
+         }catch (SQLException e){
+            c.rollback();
+            if (!isLockTimeout(e) || attempt >= retries)
+               throw new SQLException((sql == null ? "" : firstLine(sql) + ": ") + e.getMessage());
+            System.out.println("  lock busy, retrying (" + attempt + "/" + retries + "): " + firstLine(sql));
+            Thread.sleep(Math.min(10000L, 250L << Math.min(attempt, 6)));
+         }//end try
+      }//end for
+   }//end runInTransaction
+
+   private static boolean isLockTimeout(SQLException e){
+      // the old protocol carries no SQLSTATE, only the message.
+      return "55P03".equals(e.getSQLState())
+         || (e.getMessage() != null && e.getMessage().contains("lock timeout"));
+   }//end isLockTimeout
+
+   /**
+    * Splits a script into statements at the semicolons ending a line,
+    * leaving $$ quoted function bodies whole and dropping -- comments.
+    */
+   static List<String> readStatements(File script) throws IOException {
+      List<String> statements = new ArrayList<String>();
+      StringBuilder sql = new StringBuilder();
+      boolean quoted = false;
+      BufferedReader in = new BufferedReader(new FileReader(script));
+      try{
+         for (String line = in.readLine(); line != null; line = in.readLine()){
+            if (!quoted && line.trim().startsWith("--"))
+               continue;
+            for (int i = line.indexOf("$$"); i >= 0; i = line.indexOf("$$", i + 2))
+               quoted = !quoted;
+            sql.append(line).append('\n');
+            if (!quoted && line.trim().endsWith(";")){
+               String statement = sql.toString().trim();
+               statements.add(statement.substring(0, statement.length() - 1));
+               sql.setLength(0);
+            }//end if
+         }//end for
+      }finally{
+         in.close();
+      }//end try
+      if (sql.toString().trim().length() > 0)
+         statements.add(sql.toString().trim());
+      return statements;
+   }//end readStatements
+
+   /**
+    * @return the bytes of every table (with its TOAST data) and index, keyed "table" or "table.index"
+    */
+   public Map<String, Long> sizes() throws SQLException {
+      final Map<String, Long> sizes = new LinkedHashMap<String, Long>();
+      _esql.forEachRow(SIZES, new Cafe.RowHandler(){
+         public boolean handle(ResultSet rs) throws SQLException {
+            String table = rs.getString(2);
+            sizes.put(table.isEmpty() ? rs.getString(1) : table + "." + rs.getString(1), rs.getLong(3));
+            return true;
+         }
+      });
+      return sizes;
+   }//end sizes
+
+   /**
+    * Picks parameters from the data for the application's common queries,
+    * so the same queries can be timed before and after a migration.
+    *
+    * @return the query name mapped to the SQL followed by its parameters
+    */
+   public Map<String, Object[]> sampleQueries() throws SQLException {
+      Map<String, Object[]> queries = new LinkedHashMap<String, Object[]>();
+      List<List<String>> user = _esql.executeQueryAndReturnResult(
+         "SELECT login, password FROM Users WHERE login IN (SELECT login FROM Orders ORDER BY orderid DESC LIMIT 1)");
+      List<List<String>> item = _esql.executeQueryAndReturnResult("SELECT itemName, type FROM Menu LIMIT 1");
+      List<List<String>> order = _esql.executeQueryAndReturnResult("SELECT max(orderid) FROM ItemStatus");
+      Timestamp dayAgo = new Timestamp(System.currentTimeMillis() - 24 * 3600 * 1000L);
+      if (!user.isEmpty()){
+         String login = MenuItem.trim(user.get(0).get(0));
+         queries.put("log in", new Object[]{"SELECT login, phoneNum, type FROM Users WHERE login = ? AND password = ?",
+                                            login, MenuItem.trim(user.get(0).get(1))});
+         queries.put("order history", new Object[]{"SELECT " + Order.COLUMNS + " FROM Orders WHERE login = ? "
+                                                   + "ORDER BY timeStampRecieved DESC, orderid DESC LIMIT 6", login});
+      }//end if
+      if (!item.isEmpty()){
+         queries.put("menu by name", new Object[]{"SELECT itemName, type, price, description, imageURL FROM Menu WHERE itemName = ?",
+                                                  MenuItem.trim(item.get(0).get(0))});
+         queries.put("menu by type", new Object[]{"SELECT itemName, type, price, description, imageURL FROM Menu WHERE type = ?",
+                                                  MenuItem.trim(item.get(0).get(1))});
+      }//end if
+      queries.put("recent orders", new Object[]{"SELECT " + Order.COLUMNS + " FROM Orders WHERE timeStampRecieved > ? "
+                                                + "ORDER BY timeStampRecieved DESC, orderid DESC LIMIT 21", dayAgo});
+      if (order.get(0).get(0) != null)
+         queries.put("order items", new Object[]{"SELECT itemName, status, comments FROM ItemStatus WHERE orderid = ?",
+                                                 Integer.parseInt(order.get(0).get(0).trim())});
+      queries.put("revenue", new Object[]{"SELECT sum(total), count(*) FROM Orders"});
+      return queries;
+   }//end sampleQueries
+
+   /**
+    * Runs every query runs times after one untimed run.
+    *
+    * @return the query name mapped to its latencies
+    */
+   public Map<String, LatencyHistogram> time(Map<String, Object[]> queries, int runs) throws SQLException {
+      Map<String, LatencyHistogram> timings = new LinkedHashMap<String, LatencyHistogram>();
+      Cafe.RowHandler drain = new Cafe.RowHandler(){
+         public boolean handle(ResultSet rs) throws SQLException {
+            for (int i = 1; i <= rs.getMetaData().getColumnCount(); ++i)
+               rs.getString(i);
+            return true;
+         }
+      };
+      for (Map.Entry<String, Object[]> query : queries.entrySet()){
+         String sql = (String) query.getValue()[0];
+         Object[] params = Arrays.copyOfRange(query.getValue(), 1, query.getValue().length);
+         LatencyHistogram histogram = new LatencyHistogram();
+         _esql.streamRows(sql, drain, params);
+         for (int i = 0; i < runs; ++i){
+            long start = System.nanoTime();
+            _esql.streamRows(sql, drain, params);
+            histogram.record(System.nanoTime() - start);
+         }//end for
+         timings.put(query.getKey(), histogram);
+      }//end for
+      return timings;
+   }//end time
+
+   /**
+    * Prints the sizes and timings before and after side by side.
+    */
+   public static void report(Map<String, Long> sizesBefore, Map<String, Long> sizesAfter,
+                             Map<String, LatencyHistogram> timesBefore, Map<String, LatencyHistogram> timesAfter){
+      ResultPrinter printer = new ResultPrinter(new OutputStreamWriter(System.out), 50);
+      printer.printHeader(new String[]{"relation", "before kB", "after kB", "change"}, new int[]{50, 10, 10, 8});
+      long before = 0, after = 0;
+      for (Map.Entry<String, Long> entry : sizesBefore.entrySet()){
+         Long now = sizesAfter.get(entry.getKey());
+         before += entry.getValue();
+         after += now == null ? 0 : now;
+         printer.printValues(entry.getKey(), String.valueOf(entry.getValue() / 1024),
+                             now == null ? "-" : String.valueOf(now / 1024), change(entry.getValue(), now));
+      }//end for
+      printer.printValues("total", String.valueOf(before / 1024), String.valueOf(after / 1024), change(before, after));
+      printer.flush();
+      System.out.println();
+
+      printer = new ResultPrinter(new OutputStreamWriter(System.out), 20);
+      printer.printHeader(new String[]{"query", "before ms", "p95", "after ms", "p95", "change"},
+                          new int[]{20, 10, 10, 10, 10, 8});
+      for (Map.Entry<String, LatencyHistogram> entry : timesBefore.entrySet()){
+         LatencyHistogram was = entry.getValue();
+         LatencyHistogram now = timesAfter.get(entry.getKey());
+         printer.printValues(entry.getKey(), String.format("%.3f", was.getMeanMillis()),
+                             String.format("%.3f", was.getPercentileMillis(95)),
+                             now == null ? "-" : String.format("%.3f", now.getMeanMillis()),
+                             now == null ? "-" : String.format("%.3f", now.getPercentileMillis(95)),
+                             now == null ? "" : change(was.getMeanMillis(), now.getMeanMillis()));
+      }//end for
+      printer.flush();
+   }//end report
+
+   private static String change(double before, Double after){
+      if (after == null || before == 0)
+         return "";
+      return String.format("%+.0f%%", (after / before - 1) * 100);
+   }//end change
+
+   private static String change(long before, Long after){
+      return change((double) before, after == null ? null : (double) after);
+   }//end change
+
+   private static int version(File file){
+      Matcher name = FILE_NAME.matcher(file.getName());
+      return name.matches() ? Integer.parseInt(name.group(1)) : -1;
+   }//end version
+
+   private static String firstLine(String sql){
+      int end = sql.indexOf('\n');
+      return end < 0 ? sql : sql.substring(0, end) + " ...";
+   }//end firstLine
+
+   /**
+    * The schema migrator entry point
+    *
+    * @param args the command line arguments &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;migrations directory&gt;
+    */
+   public static void main(String[] args){
+      if (args.length != 4){
+         System.err.println("Usage: java [-classpath <classpath>] " + SchemaMigrator.class.getName()
+                            + " <dbname> <port> <user> <migrations directory>");
+         return;
+      }//end if
+      Cafe esql = null;
+      try{
+         Class.forName("org.postgresql.Driver");
+         esql = new Cafe(args[0], args[1], args[2], "");
+         SchemaMigrator migrator = new SchemaMigrator(esql, Long.getLong("cafe.migrate.lockTimeout", 2000L),
+                                                      Integer.getInteger("cafe.migrate.retries", 10));
+         int version = migrator.currentVersion();
+         List<File> pending = pending(new File(args[3]), version);
+         if (pending.isEmpty()){
+            System.out.println("The schema is at version " + version + ", nothing to migrate.");
+            return;
+         }//end if
+
+         int runs = Integer.getInteger("cafe.migrate.runs", 50);
+         Map<String, Object[]> queries = migrator.sampleQueries();
+         Map<String, Long> sizesBefore = migrator.sizes();
+         Map<String, LatencyHistogram> timesBefore = migrator.time(queries, runs);
+
+         for (File migration : pending){
+            System.out.println("Applying " + migration.getName() + " to version " + version);
+            long millis = migrator.apply(migration);
+            version = version(migration);
+            System.out.println("Now at version " + version + " (" + millis + " ms)");
+         }//end for
+
+         // statements prepared against the old column types are replanned by a fresh connection.
+         esql.cleanup();
+         esql = new Cafe(args[0], args[1], args[2], "");
+         migrator = new SchemaMigrator(esql, 0, 1);
+         Map<String, Long> sizesAfter = migrator.sizes();
+         Map<String, LatencyHistogram> timesAfter = migrator.time(queries, runs);
+         System.out.println();
+         report(sizesBefore, sizesAfter, timesBefore, timesAfter);
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+}//end SchemaMigrator
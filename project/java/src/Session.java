@@ -0,0 +1,97 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * The authenticated user of a terminal. The user's row is loaded once at
+ * log in so menu actions can check the role without asking the database;
+ * operations that change the row update or reload it.
+ *
+ */
+public class Session {
+
+   private static final String PROFILE_QUERY =
+      "SELECT login, phoneNum, type FROM Users WHERE login = ?";
+   private static final String LOGIN_QUERY =
+      "SELECT login, phoneNum, type FROM Users WHERE login = ? AND password = ?";
+
+   private final String _login;
+   private String _phoneNum;
+   private String _type;
+
+   private Session(String login, List<String> row){
+      this._login = login;
+      load(row);
+   }//end Session
+
+   /**
+    * Checks the credentials and loads the user's profile in one query.
+    *
+    * @return the new session, or null when the login or password is wrong
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public static Session logIn(Cafe esql, String login, String password) throws SQLException {
+      List<List<String>> result = esql.executeQueryAndReturnResult(LOGIN_QUERY, login, password);
+      if (result.isEmpty())
+         return null;
+      return new Session(login, result.get(0));
+   }//end logIn
+
+   /**
+    * Runs the login query once for no user, see CafeService.prewarm.
+    */
+   static void prewarm(Cafe esql) throws SQLException {
+      esql.prewarm(LOGIN_QUERY, "", "");
+   }//end prewarm
+
+   /**
+    * Reloads the profile, e.g. after another user changed this user's type.
+    *
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public void refresh(Cafe esql) throws SQLException {
+      List<List<String>> result = esql.executeQueryAndReturnResult(PROFILE_QUERY, _login);
+      if (!result.isEmpty())
+         load(result.get(0));
+   }//end refresh
+
+   public String getLogin(){ return _login; }
+   public synchronized String getPhoneNum(){ return _phoneNum; }
+   public synchronized String getType(){ return _type; }
+
+   public boolean isCustomer(){ return "Customer".equals(getType()); }
+   public boolean isEmployee(){ return "Employee".equals(getType()); }
+   public boolean isManager(){ return "Manager".equals(getType()); }
+
+   // kept in step by CafeService.changePhoneNumber after its update.
+   synchronized void setPhoneNum(String phoneNum){ this._phoneNum = phoneNum; }
+   // kept in step by CafeService.changeType after its update.
+   synchronized void setType(String type){ this._type = type; }
+
+   public String toString(){
+      return _login + " (" + getType() + ")";
+   }
+
+   private synchronized void load(List<String> row){
+      this._phoneNum = trim(row.get(1));
+      this._type = trim(row.get(2));
+   }//end load
+
+   // char(n) columns come back blank padded.
+   private static String trim(String value){
+      return value == null ? null : value.trim();
+   }//end trim
+
+}//end Session
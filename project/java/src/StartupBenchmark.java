@@ -0,0 +1,161 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures how long a restarted register terminal takes to be usable. It
+ * launches the user interface (java Cafe) in a new JVM again and again,
+ * as a user would, and times from the launch
+ *
+ *  - to the first prompt, "Please make your choice: " of the main menu
+ *  - to the first query answered: it logs in as soon as the prompt shows,
+ *    after thinkMillis, and waits for the user menu
+ *
+ * then logs out and exits. The launched JVMs run on the classpath of this
+ * one, with the options in cafe.startup.jvmOpts, so the same command
+ * compares a plain start with e.g. -Dcafe.fastStart=true and a class data
+ * sharing archive (see scripts/fast_start.sh).
+ *
+ * Usage: java StartupBenchmark &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;login&gt; &lt;password&gt;
+ *
+ * Settings (system properties):
+ *    cafe.startup.runs         launches measured (5)
+ *    cafe.startup.warmup       launches before those, e.g. to fill the file cache (1)
+ *    cafe.startup.jvmOpts      options of the launched JVMs, space separated ("")
+ *    cafe.startup.thinkMillis  time the user takes to type in the login (0)
+ *
+ */
+public class StartupBenchmark {
+
+   private static final String FIRST_PROMPT = "Please make your choice: ";
+   private static final String USER_MENU = "1. Goto Menu";
+
+   private final List<String> _command = new ArrayList<String>();
+   private final String _login;
+   private final String _password;
+   private final long _thinkMillis;
+
+   public StartupBenchmark(String dbname, String port, String user, String login, String password,
+                           String jvmOpts, long thinkMillis){
+      _command.add(System.getProperty("java.home") + "/bin/java");
+      for (String opt : jvmOpts.trim().split("\\s+"))
+         if (!opt.isEmpty())
+            _command.add(opt);
+      _command.add("-cp");
+      _command.add(System.getProperty("java.class.path"));
+      _command.addAll(Arrays.asList("Cafe", dbname, port, user));
+      this._login = login;
+      this._password = password;
+      this._thinkMillis = thinkMillis;
+   }//end StartupBenchmark
+
+   /**
+    * Launches the user interface once.
+    *
+    * @return the nanoseconds to the first prompt and to the first query answered
+    * @throws java.io.IOException when the launched JVM fails or its output ends early
+    */
+   public long[] launch() throws IOException, InterruptedException {
+      ProcessBuilder builder = new ProcessBuilder(_command);
+      builder.redirectErrorStream(true);
+      long start = System.nanoTime();
+      Process process = builder.start();
+      try{
+         Reader out = new InputStreamReader(process.getInputStream(), "UTF-8");
+         Writer in = new OutputStreamWriter(process.getOutputStream(), "UTF-8");
+         StringBuilder seen = new StringBuilder();
+         awaitOutput(out, seen, FIRST_PROMPT);
+         long prompt = System.nanoTime() - start;
+         Thread.sleep(_thinkMillis);
+         in.write("2\n" + _login + "\n" + _password + "\n");
+         in.flush();
+         awaitOutput(out, seen, USER_MENU);
+         long query = System.nanoTime() - start;
+         // logs out, then exits.
+         in.write("9\n9\n");
+         in.close();
+         while (out.read() >= 0)
+            ;
+         process.waitFor();
+         return new long[]{prompt, query};
+      }finally{
+         process.destroy();
+      }//end try
+   }//end launch
+
+   // reads the output until text shows up in it.
+   private static void awaitOutput(Reader out, StringBuilder seen, String text) throws IOException {
+      int from = seen.length();
+      while (seen.indexOf(text, Math.max(0, from - text.length())) < 0){
+         int c = out.read();
+         if (c < 0)
+            throw new IOException("The user interface ended before \"" + text.trim() + "\":\n" + seen);
+         seen.append((char) c);
+      }//end while
+   }//end awaitOutput
+
+   private static String summary(List<Long> nanos){
+      Collections.sort(nanos);
+      return String.format("min %.1f ms, median %.1f ms, max %.1f ms", nanos.get(0) / 1e6,
+                           nanos.get(nanos.size() / 2) / 1e6, nanos.get(nanos.size() - 1) / 1e6);
+   }//end summary
+
+   /**
+    * The startup benchmark entry point
+    *
+    * @param args the command line arguments &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;login&gt; &lt;password&gt;
+    */
+   public static void main(String[] args){
+      if (args.length != 5){
+         System.err.println("Usage: java [-classpath <classpath>] " + StartupBenchmark.class.getName()
+                            + " <dbname> <port> <user> <login> <password>");
+         return;
+      }//end if
+      int runs = Integer.getInteger("cafe.startup.runs", 5);
+      int warmup = Integer.getInteger("cafe.startup.warmup", 1);
+      String jvmOpts = System.getProperty("cafe.startup.jvmOpts", "");
+      long think = Long.getLong("cafe.startup.thinkMillis", 0L);
+      StartupBenchmark benchmark = new StartupBenchmark(args[0], args[1], args[2], args[3], args[4], jvmOpts, think);
+      List<Long> prompts = new ArrayList<Long>();
+      List<Long> queries = new ArrayList<Long>();
+      try{
+         System.out.println("Launching Cafe " + (warmup + runs) + " times, JVM options \"" + jvmOpts
+                            + "\", login after " + think + " ms");
+         for (int i = 0; i < warmup + runs; ++i){
+            long[] times = benchmark.launch();
+            System.out.printf("%s %d: first prompt %.1f ms, first query %.1f ms%n", i < warmup ? "warmup" : "run",
+                              i < warmup ? i + 1 : i - warmup + 1, times[0] / 1e6, times[1] / 1e6);
+            if (i < warmup)
+               continue;
+            prompts.add(times[0]);
+            queries.add(times[1]);
+         }//end for
+         if (runs > 0){
+            System.out.println("Time to first prompt: " + summary(prompts));
+            System.out.println("Time to first query:  " + summary(queries));
+         }//end if
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+      }//end try
+   }//end main
+
+}//end StartupBenchmark
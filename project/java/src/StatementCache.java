@@ -0,0 +1,112 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of PreparedStatements for one physical
+ * connection, keyed by the SQL template. The owning connection is only
+ * used by one borrower at a time, so the cache is not synchronized.
+ *
+ */
+public class StatementCache {
+
+   private final Connection _connection;
+   private final int _capacity;
+   private final LinkedHashMap<String, PreparedStatement> _statements;
+   private long _hits = 0;
+   private long _misses = 0;
+
+   /**
+    * @param connection the connection statements are prepared on
+    * @param capacity the maximum number of statements kept open, 0 disables caching
+    */
+   public StatementCache(Connection connection, int capacity){
+      this._connection = connection;
+      this._capacity = capacity;
+      this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true){
+         protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest){
+            if (size() <= _capacity)
+               return false;
+            closeQuietly(eldest.getValue());
+            return true;
+         }
+      };
+   }//end StatementCache
+
+   /**
+    * Returns the cached statement for sql, preparing it on a miss. The
+    * caller must not close the statement; it stays owned by the cache.
+    *
+    * @param sql the SQL template with ? placeholders
+    * @return a prepared statement with its parameters cleared
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare(String sql) throws SQLException {
+      PreparedStatement stmt = _statements.get(sql);
+      if (stmt != null){
+         _hits++;
+         stmt.clearParameters();
+         return stmt;
+      }//end if
+      _misses++;
+      stmt = _connection.prepareStatement(sql);
+      if (_capacity > 0)
+         _statements.put(sql, stmt);
+      return stmt;
+   }//end prepare
+
+   /**
+    * Hands a statement obtained from prepare() back. Statements that did not
+    * fit in the cache are closed here.
+    */
+   public void release(String sql, PreparedStatement stmt){
+      if (_statements.get(sql) != stmt)
+         closeQuietly(stmt);
+   }//end release
+
+   /**
+    * Drops a statement from the cache, e.g. after it failed on the server.
+    */
+   public void evict(String sql){
+      PreparedStatement stmt = _statements.remove(sql);
+      if (stmt != null)
+         closeQuietly(stmt);
+   }//end evict
+
+   /**
+    * Closes every cached statement.
+    */
+   public void clear(){
+      for (PreparedStatement stmt : _statements.values())
+         closeQuietly(stmt);
+      _statements.clear();
+   }//end clear
+
+   public int size(){ return _statements.size(); }
+   public long getHits(){ return _hits; }
+   public long getMisses(){ return _misses; }
+
+   private static void closeQuietly(PreparedStatement stmt){
+      try{
+         stmt.close();
+      }catch (SQLException e){
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+}//end StatementCache
@@ -0,0 +1,248 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Execution statistics per SQL template: how often it ran, how often it
+ * failed, the rows it returned or changed, and histograms of its latency
+ * and of the time spent waiting for a pooled connection. Statements slower
+ * than the threshold, and statements that fail, are written to the slow
+ * query log (a file, or System.err when none is given).
+ *
+ * reset() starts the statistics over but not the execution counts of
+ * getCounts(), the workload the IndexAdvisor reads covers the whole run.
+ *
+ */
+public class StatementStats implements StatementStatsMBean {
+
+   private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+   private final ConcurrentHashMap<String, Template> _templates = new ConcurrentHashMap<String, Template>();
+   // the executions per template since the start, kept by reset().
+   private final ConcurrentHashMap<String, AtomicLong> _executions = new ConcurrentHashMap<String, AtomicLong>();
+   private final AtomicLong _slow = new AtomicLong();
+   private volatile long _slowNanos;
+   private final PrintWriter _slowLog;
+   private final boolean _ownsLog;
+   private ObjectName _name = null;
+
+   /**
+    * @param slowMillis statements taking longer are logged, 0 logs every statement
+    * @param slowLog the file the slow queries are appended to, or null for
+    *                System.err, which is also used when the file cannot be opened
+    */
+   public StatementStats(long slowMillis, File slowLog){
+      this._slowNanos = slowMillis * 1000000L;
+      PrintWriter log = null;
+      if (slowLog != null){
+         try{
+            log = new PrintWriter(new BufferedWriter(new FileWriter(slowLog, true)), true);
+         }catch (IOException e){
+            System.err.println("Unable to open " + slowLog + ", slow queries go to stderr: " + e.getMessage());
+         }//end try
+      }//end if
+      this._ownsLog = log != null;
+      this._slowLog = log != null ? log : new PrintWriter(System.err, true);
+   }//end StatementStats
+
+   /**
+    * Records one execution of a statement.
+    *
+    * @param sql the statement template
+    * @param nanos the time from asking for a connection to the last row
+    * @param acquireNanos the part of nanos spent waiting for the connection
+    * @param rows the rows returned or changed, -1 when unknown
+    * @param failure the exception the statement failed with, or null
+    */
+   public void record(String sql, long nanos, long acquireNanos, long rows, SQLException failure){
+      Template template = _templates.get(sql);
+      if (template == null){
+         Template created = new Template();
+         template = _templates.putIfAbsent(sql, created);
+         if (template == null)
+            template = created;
+      }//end if
+      template.count.incrementAndGet();
+      AtomicLong executions = _executions.get(sql);
+      if (executions == null){
+         AtomicLong created = new AtomicLong();
+         executions = _executions.putIfAbsent(sql, created);
+         if (executions == null)
+            executions = created;
+      }//end if
+      executions.incrementAndGet();
+      template.latency.record(nanos);
+      template.acquire.record(acquireNanos);
+      if (rows > 0)
+         template.rows.addAndGet(rows);
+      if (failure != null)
+         template.errors.incrementAndGet();
+      if (failure != null || nanos > _slowNanos){
+         _slow.incrementAndGet();
+         synchronized (_slowLog){
+            _slowLog.println(String.format("%s %10.3f ms (wait %.3f ms) rows=%d %s%s",
+                                           new Timestamp(System.currentTimeMillis()), nanos / 1e6,
+                                           acquireNanos / 1e6, rows, sql.replace('\n', ' '),
+                                           failure == null ? "" : " FAILED: " + failure.getMessage()));
+         }//end synchronized
+      }//end if
+   }//end record
+
+   /**
+    * @return how often each template was executed since the start, whatever was reset
+    */
+   public Map<String, Long> getCounts(){
+      Map<String, Long> counts = new TreeMap<String, Long>();
+      for (Map.Entry<String, AtomicLong> entry : _executions.entrySet())
+         counts.put(entry.getKey(), entry.getValue().get());
+      return counts;
+   }//end getCounts
+
+   /**
+    * @return the statistics of a template, or null when it never ran
+    */
+   public Template getTemplate(String sql){
+      return _templates.get(sql);
+   }//end getTemplate
+
+   public int getTemplateCount(){ return _templates.size(); }
+
+   public long getStatementCount(){
+      long count = 0;
+      for (Template template : _templates.values())
+         count += template.count.get();
+      return count;
+   }//end getStatementCount
+
+   public long getErrorCount(){
+      long count = 0;
+      for (Template template : _templates.values())
+         count += template.errors.get();
+      return count;
+   }//end getErrorCount
+
+   public long getSlowCount(){ return _slow.get(); }
+
+   public long getSlowThresholdMillis(){ return _slowNanos / 1000000L; }
+
+   public void setSlowThresholdMillis(long millis){ _slowNanos = millis * 1000000L; }
+
+   public String dump(){
+      List<Map.Entry<String, Template>> entries = new ArrayList<Map.Entry<String, Template>>(_templates.entrySet());
+      Collections.sort(entries, new Comparator<Map.Entry<String, Template>>(){
+         public int compare(Map.Entry<String, Template> a, Map.Entry<String, Template> b){
+            return Double.compare(b.getValue().getTotalMillis(), a.getValue().getTotalMillis());
+         }
+      });
+      StringWriter out = new StringWriter();
+      ResultPrinter printer = new ResultPrinter(out, 60);
+      printer.printHeader(new String[]{"statement", "count", "errors", "rows/exec", "total s", "mean ms",
+                                       "p50 ms", "p95 ms", "p99 ms", "max ms", "wait p99"},
+                          new int[]{60, 8, 6, 9, 8, 8, 8, 8, 8, 8, 8});
+      for (Map.Entry<String, Template> entry : entries){
+         Template t = entry.getValue();
+         long count = t.count.get();
+         printer.printValues(entry.getKey().replace('\n', ' '), String.valueOf(count), String.valueOf(t.errors.get()),
+                             String.format("%.1f", count == 0 ? 0.0 : (double) t.rows.get() / count),
+                             String.format("%.2f", t.getTotalMillis() / 1000.0),
+                             String.format("%.3f", t.latency.getMeanMillis()),
+                             String.format("%.3f", t.latency.getPercentileMillis(50)),
+                             String.format("%.3f", t.latency.getPercentileMillis(95)),
+                             String.format("%.3f", t.latency.getPercentileMillis(99)),
+                             String.format("%.3f", t.latency.getMaxMillis()),
+                             String.format("%.3f", t.acquire.getPercentileMillis(99)));
+      }//end for
+      printer.flush();
+      return out.toString();
+   }//end dump
+
+   public void reset(){
+      _templates.clear();
+      _slow.set(0);
+   }//end reset
+
+   /**
+    * Makes the statistics visible over JMX. Failures are reported and
+    * otherwise ignored, the application runs the same without JMX.
+    */
+   public synchronized void register(){
+      try{
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         _name = new ObjectName("cafe:type=StatementStats,id=" + INSTANCES.incrementAndGet());
+         server.registerMBean(this, _name);
+      }catch (Exception e){
+         System.err.println("Unable to register the statement statistics with JMX: " + e.getMessage());
+         _name = null;
+      }//end try
+   }//end register
+
+   /**
+    * Removes the JMX registration and closes the slow query log.
+    */
+   public synchronized void close(){
+      if (_name != null){
+         try{
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(_name);
+         }catch (Exception e){
+            // ignored, the JVM is going away.
+         }//end try
+         _name = null;
+      }//end if
+      if (_ownsLog)
+         _slowLog.close();
+      else
+         _slowLog.flush();
+   }//end close
+
+   /**
+    * The numbers of one SQL template.
+    */
+   public static final class Template {
+      final AtomicLong count = new AtomicLong();
+      final AtomicLong errors = new AtomicLong();
+      final AtomicLong rows = new AtomicLong();
+      final LatencyHistogram latency = new LatencyHistogram();
+      final LatencyHistogram acquire = new LatencyHistogram();
+
+      public long getCount(){ return count.get(); }
+      public long getErrors(){ return errors.get(); }
+      public long getRows(){ return rows.get(); }
+      public LatencyHistogram getLatency(){ return latency; }
+      public LatencyHistogram getAcquire(){ return acquire; }
+
+      public double getTotalMillis(){
+         return latency.getMeanMillis() * latency.getCount();
+      }
+   }//end Template
+
+}//end StatementStats
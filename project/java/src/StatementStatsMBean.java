@@ -0,0 +1,56 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+/**
+ * The JMX view of a StatementStats, registered as
+ * cafe:type=StatementStats,id=&lt;n&gt; for jconsole and similar tools.
+ *
+ */
+public interface StatementStatsMBean {
+
+   /**
+    * @return the number of different SQL templates executed
+    */
+   int getTemplateCount();
+
+   /**
+    * @return the statements executed, of all templates
+    */
+   long getStatementCount();
+
+   /**
+    * @return the statements that failed
+    */
+   long getErrorCount();
+
+   /**
+    * @return the statements slower than the slow query threshold
+    */
+   long getSlowCount();
+
+   long getSlowThresholdMillis();
+
+   void setSlowThresholdMillis(long millis);
+
+   /**
+    * @return a table of every template, the slowest in total first
+    */
+   String dump();
+
+   /**
+    * Forgets the statistics recorded so far. The execution counts written
+    * to the IndexAdvisor workload stay.
+    */
+   void reset();
+
+}//end StatementStatsMBean
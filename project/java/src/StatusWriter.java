@@ -0,0 +1,388 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes ItemStatus updates behind the caller's back. Updates are queued
+ * per (orderid, itemName) and a newer status replaces a queued one, so
+ * only the latest status of a row is written. A background thread sends
+ * the queue as one batched transaction once batchSize rows are waiting or
+ * the oldest has waited flushMillis. When maxPending rows are queued,
+ * submit blocks until the writer has taken them.
+ *
+ */
+public class StatusWriter {
+
+   private static final String UPDATE_STATUS =
+      "UPDATE ItemStatus SET status = ?, lastUpdated = ? WHERE orderid = ? AND itemName = ?";
+
+   private final Cafe _esql;
+   private final long _flushNanos;
+   private final int _batchSize;
+   private final int _maxPending;
+
+   // a ReentrantLock, not the monitor, so no thread is pinned while it waits.
+   private final ReentrantLock _lock = new ReentrantLock();
+   // signalled to the writer when there is work: a first or a full batch, a flush or close.
+   private final Condition _queued = _lock.newCondition();
+   // signalled to submitters blocked on a full queue when the writer takes a batch.
+   private final Condition _space = _lock.newCondition();
+   // signalled to flush() when a batch is written.
+   private final Condition _flushed = _lock.newCondition();
+
+   // guarded by _lock.
+   private Map<Key, Pending> _pending = new LinkedHashMap<Key, Pending>();
+   private long _oldest = 0;
+   private long _done = 0;
+   private boolean _flushRequested = false;
+   private boolean _closed = false;
+   private Thread _writer = null;
+
+   // written under _lock; volatile so the getters read them without it.
+   private volatile long _submitted = 0;
+   private volatile long _coalesced = 0;
+   private volatile long _written = 0;
+   private volatile long _batches = 0;
+   private volatile long _failed = 0;
+
+   /**
+    * @param esql the database written to
+    * @param flushMillis the longest an update waits for its batch
+    * @param batchSize rows that trigger a batch without waiting
+    * @param maxPending rows queued before submit blocks
+    */
+   public StatusWriter(Cafe esql, long flushMillis, int batchSize, int maxPending){
+      this._esql = esql;
+      this._flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+      this._batchSize = Math.max(1, batchSize);
+      this._maxPending = Math.max(this._batchSize, maxPending);
+   }//end StatusWriter
+
+   /**
+    * Queues a status update.
+    *
+    * @return completes with true once written, false when there is no
+    *         such ItemStatus row, or fails with the SQLException
+    * @throws java.lang.InterruptedException when interrupted while the queue is full
+    * @throws java.lang.IllegalStateException after close()
+    */
+   public Future<Boolean> submit(int orderid, String itemName, String status) throws InterruptedException {
+      Key key = new Key(orderid, itemName);
+      _lock.lock();
+      try{
+         while (!_closed && _pending.size() >= _maxPending && !_pending.containsKey(key))
+            _space.await();
+         if (_closed)
+            throw new IllegalStateException("The status writer is closed");
+         if (_writer == null){
+            _writer = new Thread(new Runnable(){
+               public void run(){
+                  writeLoop();
+               }
+            }, "status-writer");
+            _writer.setDaemon(true);
+            _writer.start();
+         }//end if
+
+         Result result = new Result();
+         Pending pending = _pending.get(key);
+         if (pending == null){
+            if (_pending.isEmpty())
+               _oldest = System.nanoTime();
+            pending = new Pending();
+            _pending.put(key, pending);
+         }else{
+            ++_coalesced;
+         }//end if
+         pending.status = status;
+         pending.lastUpdated = new Timestamp(System.currentTimeMillis());
+         pending.results.add(result);
+         ++_submitted;
+         if (_pending.size() == 1 || _pending.size() >= _batchSize)
+            _queued.signal();
+         return result;
+      }finally{
+         _lock.unlock();
+      }//end try
+   }//end submit
+
+   /**
+    * Waits until every update submitted before the call is written.
+    *
+    * @throws java.lang.InterruptedException when interrupted while waiting
+    */
+   public void flush() throws InterruptedException {
+      _lock.lock();
+      try{
+         long target = _submitted;
+         if (!_pending.isEmpty()){
+            _flushRequested = true;
+            _queued.signal();
+         }//end if
+         while (_done < target && _writer != null && _writer.isAlive())
+            _flushed.await();
+      }finally{
+         _lock.unlock();
+      }//end try
+   }//end flush
+
+   /**
+    * Writes what is queued and stops the writer. Later submits fail.
+    *
+    * @throws java.lang.InterruptedException when interrupted while waiting
+    */
+   public void close() throws InterruptedException {
+      Thread writer;
+      _lock.lock();
+      try{
+         _closed = true;
+         _queued.signal();
+         _space.signalAll();
+         writer = _writer;
+      }finally{
+         _lock.unlock();
+      }//end try
+      if (writer != null)
+         writer.join();
+   }//end close
+
+   public long getSubmitted(){ return _submitted; }
+   public long getCoalesced(){ return _coalesced; }
+   public long getWritten(){ return _written; }
+   public long getBatches(){ return _batches; }
+   public long getFailed(){ return _failed; }
+
+   public int getPending(){
+      _lock.lock();
+      try{
+         return _pending.size();
+      }finally{
+         _lock.unlock();
+      }//end try
+   }//end getPending
+
+   public String toString(){
+      return "status[submitted=" + _submitted + " coalesced=" + _coalesced + " written=" + _written
+         + " batches=" + _batches + " failed=" + _failed + " pending=" + getPending() + "]";
+   }//end toString
+
+   private void writeLoop(){
+      while (true){
+         Map<Key, Pending> batch;
+         long batchEnd;
+         _lock.lock();
+         try{
+            try{
+               while (_pending.isEmpty() && !_closed)
+                  _queued.await();
+               if (_pending.isEmpty())
+                  return;
+               long remaining = _oldest + _flushNanos - System.nanoTime();
+               while (!_closed && !_flushRequested && _pending.size() < _batchSize && remaining > 0)
+                  remaining = _queued.awaitNanos(remaining);
+            }catch (InterruptedException e){
+               // write what is queued and stop.
+               _closed = true;
+            }//end try
+            batch = _pending;
+            batchEnd = _submitted;
+            _pending = new LinkedHashMap<Key, Pending>();
+            _flushRequested = false;
+            _space.signalAll();
+         }finally{
+            _lock.unlock();
+         }//end try
+         write(batch);
+         _lock.lock();
+         try{
+            _done = batchEnd;
+            _flushed.signalAll();
+         }finally{
+            _lock.unlock();
+         }//end try
+      }//end while
+   }//end writeLoop
+
+   // sends one batch in a transaction; when that fails the rows are retried one by one.
+   private void write(Map<Key, Pending> batch){
+      if (batch.isEmpty())
+         return;
+      List<Map.Entry<Key, Pending>> rows = new ArrayList<Map.Entry<Key, Pending>>(batch.entrySet());
+      try{
+         int[] counts = executeBatch(rows);
+         for (int i = 0; i < rows.size(); ++i)
+            rows.get(i).getValue().complete(counts[i] != 0, null);
+         _lock.lock();
+         try{
+            _written += rows.size();
+            ++_batches;
+         }finally{
+            _lock.unlock();
+         }//end try
+         return;
+      }catch (SQLException e){
+         // fall through to isolate the rows that fail.
+      }//end try
+      for (Map.Entry<Key, Pending> row : rows){
+         try{
+            int count = executeBatch(Collections.singletonList(row))[0];
+            row.getValue().complete(count != 0, null);
+            _lock.lock();
+            try{
+               ++_written;
+            }finally{
+               _lock.unlock();
+            }//end try
+         }catch (SQLException e){
+            row.getValue().complete(false, e);
+            _lock.lock();
+            try{
+               ++_failed;
+            }finally{
+               _lock.unlock();
+            }//end try
+         }//end try
+      }//end for
+   }//end write
+
+   private int[] executeBatch(List<Map.Entry<Key, Pending>> rows) throws SQLException {
+      long start = System.nanoTime();
+      ConnectionPool.PooledConnection conn;
+      try{
+         conn = _esql.getPool().borrow();
+      }catch (SQLException e){
+         _esql.getStatementStats().record(UPDATE_STATUS, System.nanoTime() - start, System.nanoTime() - start, -1, e);
+         throw e;
+      }//end try
+      long acquired = System.nanoTime();
+      try{
+         Connection c = conn.connection();
+         c.setAutoCommit(false);
+         PreparedStatement stmt = conn.statements().prepare(UPDATE_STATUS);
+         int[] counts;
+         try{
+            for (Map.Entry<Key, Pending> row : rows){
+               stmt.setString(1, row.getValue().status);
+               stmt.setTimestamp(2, row.getValue().lastUpdated);
+               stmt.setInt(3, row.getKey().orderid);
+               stmt.setString(4, row.getKey().itemName);
+               stmt.addBatch();
+            }//end for
+            counts = stmt.executeBatch();
+         }finally{
+            stmt.clearBatch();
+            conn.statements().release(UPDATE_STATUS, stmt);
+         }//end try
+         c.commit();
+         int updated = 0;
+         for (int i = 0; i < counts.length; ++i){
+            if (counts[i] == Statement.SUCCESS_NO_INFO)
+               counts[i] = 1;
+            updated += Math.max(0, counts[i]);
+         }//end for
+         _esql.getStatementStats().record(UPDATE_STATUS, System.nanoTime() - start, acquired - start, updated, null);
+         return counts;
+      }catch (SQLException e){
+         _esql.getStatementStats().record(UPDATE_STATUS, System.nanoTime() - start, acquired - start, -1, e);
+         throw e;
+      }finally{
+         // rolls back unless committed above.
+         _esql.getPool().release(conn);
+      }//end try
+   }//end executeBatch
+
+   private static final class Key {
+      final int orderid;
+      final String itemName;
+
+      Key(int orderid, String itemName){
+         this.orderid = orderid;
+         this.itemName = itemName;
+      }
+
+      public boolean equals(Object other){
+         return other instanceof Key && ((Key) other).orderid == orderid
+            && ((Key) other).itemName.equals(itemName);
+      }
+
+      public int hashCode(){
+         return orderid * 31 + itemName.hashCode();
+      }
+   }//end Key
+
+   // the latest update of a row and everybody waiting for it.
+   private static final class Pending {
+      String status;
+      Timestamp lastUpdated;
+      final List<Result> results = new ArrayList<Result>(1);
+
+      void complete(boolean updated, SQLException failure){
+         for (Result result : results)
+            result.complete(updated, failure);
+      }
+   }//end Pending
+
+   /**
+    * The outcome of one submitted update.
+    */
+   private static final class Result implements Future<Boolean> {
+      private final CountDownLatch _latch = new CountDownLatch(1);
+      private volatile boolean _updated;
+      private volatile SQLException _failure;
+
+      void complete(boolean updated, SQLException failure){
+         this._updated = updated;
+         this._failure = failure;
+         _latch.countDown();
+      }
+
+      public boolean cancel(boolean mayInterrupt){ return false; }
+      public boolean isCancelled(){ return false; }
+      public boolean isDone(){ return _latch.getCount() == 0; }
+
+      public Boolean get() throws InterruptedException, ExecutionException {
+         _latch.await();
+         return value();
+      }
+
+      public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+         if (!_latch.await(timeout, unit))
+            throw new TimeoutException();
+         return value();
+      }
+
+      private Boolean value() throws ExecutionException {
+         if (_failure != null)
+            throw new ExecutionException(_failure);
+         return _updated;
+      }
+   }//end Result
+
+}//end StatusWriter
@@ -0,0 +1,126 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * The keyboard and screen of one user interface session. The console
+ * session reads System.in and writes System.out; a CafeServer session
+ * reads and writes its connection. The static user interface methods of
+ * Cafe find the session they run for through the current thread, see
+ * attach().
+ *
+ * Pending output is flushed before every read, so a prompt shows up
+ * before its answer is awaited. Once the input ends, or fails, readLine
+ * returns null from then on.
+ *
+ */
+public class Terminal {
+
+   // writes to System.out and System.err as they are at the time, e.g. after System.setOut.
+   private static final Terminal CONSOLE = new Terminal(new InputStreamReader(System.in), null, null);
+   private static final ThreadLocal<Terminal> CURRENT = new ThreadLocal<Terminal>();
+
+   private final Input _in;
+   private final PrintStream _out;
+   private final PrintStream _err;
+
+   private Terminal(Reader in, PrintStream out, PrintStream err){
+      this._in = new Input(in);
+      this._out = out;
+      this._err = err;
+   }//end Terminal
+
+   /**
+    * A session over a network connection, errors are written with the
+    * rest of the output.
+    *
+    * @throws java.io.UnsupportedEncodingException never, UTF-8 is always supported
+    */
+   public static Terminal of(InputStream in, OutputStream out) throws UnsupportedEncodingException {
+      PrintStream stream = new PrintStream(new BufferedOutputStream(out, 8192), false, "UTF-8");
+      return new Terminal(new InputStreamReader(in, "UTF-8"), stream, stream);
+   }//end of
+
+   /**
+    * @return the session of the current thread, the console when none is attached
+    */
+   public static Terminal current(){
+      Terminal terminal = CURRENT.get();
+      return terminal == null ? CONSOLE : terminal;
+   }//end current
+
+   /**
+    * Makes terminal the session of the current thread, until detach().
+    */
+   public static void attach(Terminal terminal){
+      CURRENT.set(terminal);
+   }//end attach
+
+   public static void detach(){
+      CURRENT.remove();
+   }//end detach
+
+   public BufferedReader in(){ return _in; }
+   public PrintStream out(){ return _out != null ? _out : System.out; }
+   public PrintStream err(){ return _err != null ? _err : System.err; }
+
+   /**
+    * @return true once the input has ended
+    */
+   public boolean isClosed(){
+      return _in.closed;
+   }//end isClosed
+
+   // reads lines, flushing the output first. The lines come from a plain
+   // BufferedReader: from Java 21 on only that class locks without the
+   // monitor, a subclass would pin the virtual thread of a waiting session.
+   private final class Input extends BufferedReader {
+      private final BufferedReader _lines;
+      volatile boolean closed = false;
+
+      Input(Reader in){
+         this(new BufferedReader(in));
+      }
+
+      private Input(BufferedReader lines){
+         super(lines, 1);
+         this._lines = lines;
+      }
+
+      public String readLine() throws IOException {
+         out().flush();
+         err().flush();
+         if (closed)
+            return null;
+         try{
+            String line = _lines.readLine();
+            if (line == null)
+               closed = true;
+            return line;
+         }catch (IOException e){
+            closed = true;
+            throw e;
+         }//end try
+      }//end readLine
+   }//end Input
+
+}//end Terminal
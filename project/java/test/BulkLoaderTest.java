@@ -0,0 +1,106 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * BulkLoader.Table.parse, the COPY text line parser and checks.
+ */
+public class BulkLoaderTest {
+
+   private static final BulkLoader.Table MENU = table("Menu");
+   private static final BulkLoader.Table ORDERS = table("Orders");
+   private static final BulkLoader.Table ITEM_STATUS = table("ItemStatus");
+
+   private static BulkLoader.Table table(String name){
+      for (BulkLoader.Table table : BulkLoader.TABLES)
+         if (table.name.equals(name))
+            return table;
+      throw new IllegalArgumentException(name);
+   }
+
+   @Test
+   public void splitsFields(){
+      assertArrayEquals(new String[]{"12", "bob", "t", "2026-10-17 08:30:00", "12.50"},
+                        ORDERS.parse("12;bob;t;2026-10-17 08:30:00;12.50"));
+   }
+
+   @Test
+   public void readsBackslashNAsNull(){
+      assertArrayEquals(new String[]{"12", null, "f", "2026-10-17 08:30:00", "3"},
+                        ORDERS.parse("12;\\N;f;2026-10-17 08:30:00;3"));
+   }
+
+   @Test
+   public void keepsEmptyFieldsEmpty(){
+      assertArrayEquals(new String[]{"7", "Coffee", "2026-10-17 08:30:00", "", ""},
+                        ITEM_STATUS.parse("7;Coffee;2026-10-17 08:30:00;;"));
+   }
+
+   @Test
+   public void unescapesBackslashes(){
+      String[] row = MENU.parse("Fish\\; Chips;Food;7.00;two lines\\nand a tab\\t, a \\\\;\\N");
+      assertEquals("Fish; Chips", row[0]);
+      assertEquals("two lines\nand a tab\t, a \\", row[3]);
+      assertEquals(null, row[4]);
+   }
+
+   @Test
+   public void anEscapedBackslashNIsText(){
+      assertEquals("\\N", MENU.parse("Tea;Drinks;1.00;\\\\N;\\N")[3]);
+   }
+
+   @Test
+   public void rejectsTooFewFields(){
+      assertRejected(ORDERS, "12;bob;t;2026-10-17 08:30:00", "expected 5 fields, found 4");
+   }
+
+   @Test
+   public void rejectsTooManyFields(){
+      assertRejected(ORDERS, "12;bob;t;2026-10-17 08:30:00;1;extra", "more than 5 fields");
+   }
+
+   @Test
+   public void rejectsAnEmptyRequiredField(){
+      assertRejected(ORDERS, "12;bob;t;;1.00", "timeStampRecieved must not be empty");
+      assertRejected(ORDERS, "\\N;bob;t;2026-10-17 08:30:00;1.00", "orderid must not be empty");
+   }
+
+   @Test
+   public void checksNumbersAndBooleans(){
+      assertRejected(ORDERS, "x12;bob;t;2026-10-17 08:30:00;1.00", "orderid is not a number: x12");
+      assertRejected(ORDERS, "12;bob;t;2026-10-17 08:30:00;1,00", "total is not a number: 1,00");
+      assertRejected(ORDERS, "12;bob;maybe;2026-10-17 08:30:00;1.00", "paid is not a boolean: maybe");
+      assertEquals("yes", ORDERS.parse("12;bob;yes;2026-10-17 08:30:00;1.00")[2]);
+   }
+
+   @Test
+   public void stagesTablesThatNeedAJoin(){
+      assertEquals("Orders", ORDERS.target());
+      assertEquals("ItemStatus_load", ITEM_STATUS.target());
+   }
+
+   private static void assertRejected(BulkLoader.Table table, String line, String message){
+      try{
+         table.parse(line);
+         fail("accepted " + line);
+      }catch (IllegalArgumentException e){
+         assertTrue(e.getMessage(), e.getMessage().contains(message));
+      }
+   }
+}
@@ -0,0 +1,58 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * IndexAdvisor.indexColumns, the key columns read from pg_get_indexdef.
+ */
+public class IndexAdvisorTest {
+
+   @Test
+   public void readsTheKeyColumns(){
+      assertEquals(Arrays.asList("orderid"),
+                   IndexAdvisor.indexColumns("CREATE UNIQUE INDEX orders_pkey ON public.orders USING btree (orderid)"));
+      assertEquals(Arrays.asList("login", "timestamprecieved"),
+                   IndexAdvisor.indexColumns("CREATE INDEX orders_login ON ONLY public.orders USING btree (login, timestamprecieved)"));
+   }
+
+   @Test
+   public void dropsOrderingAndQuotes(){
+      assertEquals(Arrays.asList("orderid", "itemname"),
+                   IndexAdvisor.indexColumns("CREATE INDEX s ON public.itemstatus USING btree (orderid, \"itemName\" DESC NULLS LAST)"));
+   }
+
+   @Test
+   public void stopsAtTheClosingParenthesis(){
+      assertEquals(Arrays.asList("login"),
+                   IndexAdvisor.indexColumns("CREATE INDEX unpaid ON public.orders USING btree (login) WHERE (paid = false)"));
+      assertEquals(Arrays.asList("login"),
+                   IndexAdvisor.indexColumns("CREATE INDEX covering ON public.orders USING btree (login) INCLUDE (total)"));
+   }
+
+   @Test
+   public void keepsAnExpressionWhole(){
+      assertEquals(Arrays.asList("lower((login)::text)", "paid"),
+                   IndexAdvisor.indexColumns("CREATE INDEX lower_login ON public.orders USING btree (lower((login)::text), paid)"));
+   }
+
+   @Test
+   public void readsNothingWithoutColumns(){
+      assertEquals(Collections.<String>emptyList(), IndexAdvisor.indexColumns("not an index"));
+   }
+}
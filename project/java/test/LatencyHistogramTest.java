@@ -0,0 +1,82 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * LatencyHistogram bucket bounds and percentiles.
+ */
+public class LatencyHistogramTest {
+
+   private static final int LAST = LatencyHistogram.bucket(Long.MAX_VALUE);
+
+   @Test
+   public void keepsSmallValuesExact(){
+      for (int micros = 0; micros < 16; ++micros){
+         assertEquals(micros, LatencyHistogram.bucket(micros));
+         assertEquals(micros, LatencyHistogram.upperBound(micros));
+      }//end for
+   }
+
+   @Test
+   public void boundsAreTheLastValueOfEachBucket(){
+      assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LAST));
+      for (int i = 0; i < LAST; ++i){
+         long bound = LatencyHistogram.upperBound(i);
+         assertEquals("bucket of upperBound(" + i + ")", i, LatencyHistogram.bucket(bound));
+         assertEquals("bucket of upperBound(" + i + ") + 1", i + 1, LatencyHistogram.bucket(bound + 1));
+      }//end for
+   }
+
+   @Test
+   public void boundsAreWithinASixteenthOfTheValue(){
+      for (long micros = 1; micros > 0 && micros < Long.MAX_VALUE / 2; micros = micros * 3 + 1){
+         long bound = LatencyHistogram.upperBound(LatencyHistogram.bucket(micros));
+         assertTrue(micros + " <= " + bound, micros <= bound);
+         assertTrue(bound + " - " + micros, bound - micros <= micros / 16);
+      }//end for
+   }
+
+   @Test
+   public void readsPercentiles(){
+      LatencyHistogram histogram = new LatencyHistogram();
+      assertEquals(0.0, histogram.getPercentileMillis(99), 0.0);
+      for (int millis = 1; millis <= 1000; ++millis)
+         histogram.record(millis * 1000000L);
+      assertEquals(1000, histogram.getCount());
+      assertEquals(500.5, histogram.getMeanMillis(), 1e-9);
+      assertEquals(1000.0, histogram.getPercentileMillis(100), 0.0);
+      assertEquals(1000.0, histogram.getMaxMillis(), 0.0);
+      for (double percentile : new double[]{1, 50, 90, 99, 99.9}){
+         double exact = Math.ceil(1000 * percentile / 100.0);
+         double read = histogram.getPercentileMillis(percentile);
+         assertTrue(percentile + ": " + read, read >= exact && read <= exact * (1 + 1.0 / 16));
+      }//end for
+   }
+
+   @Test
+   public void addsAnotherHistogram(){
+      LatencyHistogram a = new LatencyHistogram();
+      LatencyHistogram b = new LatencyHistogram();
+      a.record(2000000L);
+      b.record(9000L);
+      b.record(7000000L);
+      a.add(b);
+      assertEquals(3, a.getCount());
+      assertEquals(7.0, a.getMaxMillis(), 0.0);
+      assertEquals(0.009, a.getPercentileMillis(1), 0.0);
+   }
+}
@@ -0,0 +1,96 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * MenuSearchIndex edit distance and ranking.
+ */
+public class MenuSearchIndexTest {
+
+   private static final MenuSearchIndex INDEX = new MenuSearchIndex(Arrays.asList(
+      item("Latte", "Drinks", "espresso with steamed milk"),
+      item("Iced Latte", "Drinks", "espresso and milk over ice"),
+      item("Cappuccino", "Drinks", "espresso with milk foam"),
+      item("Mocha", "Drinks", "espresso with chocolate"),
+      item("Tea", "Drinks", null),
+      item("Blueberry Muffin", "Food", "baked daily")));
+
+   private static MenuItem item(String name, String type, String description){
+      return new MenuItem(name, type, new BigDecimal("3.50"), description, null);
+   }
+
+   private static List<String> search(String query, int limit){
+      List<String> names = new ArrayList<String>();
+      for (MenuItem item : INDEX.search(query, limit))
+         names.add(item.getItemName());
+      return names;
+   }
+
+   @Test
+   public void countsEdits(){
+      assertEquals(0, MenuSearchIndex.distance("latte", "latte", 2));
+      assertEquals(1, MenuSearchIndex.distance("mocha", "macha", 2));
+      assertEquals(1, MenuSearchIndex.distance("latte", "latet", 2));
+      assertEquals(1, MenuSearchIndex.distance("tea", "teas", 2));
+      assertEquals(2, MenuSearchIndex.distance("expreso", "espresso", 2));
+   }
+
+   @Test
+   public void givesUpPastMax(){
+      assertEquals(2, MenuSearchIndex.distance("tea", "coffee", 1));
+      assertEquals(2, MenuSearchIndex.distance("latte", "lemonade", 1));
+      assertEquals(3, MenuSearchIndex.distance("mocha", "mmmmm", 2));
+   }
+
+   @Test
+   public void splitsWords(){
+      assertEquals(Arrays.asList("iced", "latte", "2"), MenuSearchIndex.words("Iced Latte, iced! (2)"));
+      assertTrue(MenuSearchIndex.words(null).isEmpty());
+   }
+
+   @Test
+   public void ranksTheNameStartingWithTheQueryFirst(){
+      assertEquals(Arrays.asList("Latte", "Iced Latte"), search("latte", 10));
+      assertEquals(Arrays.asList("Latte"), search("latte", 1));
+   }
+
+   @Test
+   public void findsPrefixesAndTypos(){
+      assertEquals("Blueberry Muffin", search("muf", 10).get(0));
+      assertEquals("Cappuccino", search("capuccino", 10).get(0));
+      assertEquals("Cappuccino", search("capu", 10).get(0));
+      assertEquals("Mocha", search("mocah", 10).get(0));
+   }
+
+   @Test
+   public void ranksMoreMatchedWordsFirst(){
+      assertEquals("Iced Latte", search("iced milk", 10).get(0));
+      assertEquals(Arrays.asList("Blueberry Muffin"), search("food", 10));
+   }
+
+   @Test
+   public void findsNothingForNoWords(){
+      assertEquals(6, INDEX.size());
+      assertTrue(search(" ,; ", 10).isEmpty());
+      assertTrue(search("latte", 0).isEmpty());
+   }
+}
@@ -0,0 +1,123 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * OrderDashboard.Buckets, the minute and hour ring buffers.
+ */
+public class OrderDashboardTest {
+
+   private static final long MINUTE = 60 * 1000L;
+   private static final long HOUR = 60 * MINUTE;
+   // on the hour.
+   private static final long NOW = 500000 * HOUR;
+
+   private static OrderDashboard.Event placed(int orderid, long placed, String total, Object... items){
+      Map<String, Integer> quantities = new LinkedHashMap<String, Integer>();
+      for (int i = 0; i < items.length; i += 2)
+         quantities.put((String) items[i], (Integer) items[i + 1]);
+      return new OrderDashboard.Event(orderid, new Timestamp(placed), new BigDecimal(total), quantities);
+   }
+
+   private static OrderDashboard.Event paid(int orderid, long placed){
+      return new OrderDashboard.Event(orderid, new Timestamp(placed), null, null);
+   }
+
+   @Test
+   public void sumsEachHourNewestFirst(){
+      OrderDashboard.Buckets buckets = new OrderDashboard.Buckets();
+      buckets.apply(placed(1, NOW - 30 * MINUTE, "12.50", "Coffee", 2), NOW);
+      buckets.apply(placed(2, NOW - 20 * MINUTE, "7.255", "Coffee", 1, "Tea", 3), NOW);
+      buckets.apply(placed(3, NOW - 90 * MINUTE, "3.00", "Muffin", 1), NOW);
+      buckets.apply(paid(1, NOW - 30 * MINUTE), NOW);
+
+      OrderDashboard.Summary summary = buckets.summary(NOW);
+      assertEquals(3, summary.getOrders());
+      assertEquals(22.76, summary.getRevenue(), 1e-9);
+      assertEquals(2, summary.getUnpaid());
+      assertEquals(2, summary.getHours().size());
+
+      OrderDashboard.Hour last = summary.getHours().get(0);
+      assertEquals(new Timestamp(NOW - HOUR), last.getStart());
+      assertEquals(2, last.getOrders());
+      assertEquals(19.76, last.getRevenue(), 1e-9);
+      assertEquals(1, last.getUnpaid());
+      assertEquals(Arrays.asList("Coffee x3", "Tea x3"), last.getTopItems());
+
+      OrderDashboard.Hour before = summary.getHours().get(1);
+      assertEquals(new Timestamp(NOW - 2 * HOUR), before.getStart());
+      assertEquals(Arrays.asList("Muffin x1"), before.getTopItems());
+   }
+
+   @Test
+   public void ignoresOrdersOutsideTheWindow(){
+      OrderDashboard.Buckets buckets = new OrderDashboard.Buckets();
+      buckets.apply(placed(1, NOW - 24 * HOUR, "5.00", "Tea", 1), NOW);
+      assertEquals(0, buckets.summary(NOW).getOrders());
+
+      buckets.apply(placed(2, NOW - 24 * HOUR + MINUTE, "5.00", "Tea", 1), NOW);
+      assertEquals(1, buckets.summary(NOW).getOrders());
+      assertEquals(0, buckets.summary(NOW + MINUTE).getOrders());
+   }
+
+   @Test
+   public void payingNeverCountsBelowZero(){
+      OrderDashboard.Buckets buckets = new OrderDashboard.Buckets();
+      buckets.apply(paid(1, NOW - MINUTE), NOW);
+      buckets.apply(placed(2, NOW - MINUTE, "1.00", "Tea", 1), NOW);
+      buckets.apply(paid(2, NOW - MINUTE), NOW);
+      buckets.apply(paid(2, NOW - MINUTE), NOW);
+      assertEquals(0, buckets.summary(NOW).getUnpaid());
+      assertEquals(1, buckets.summary(NOW).getOrders());
+   }
+
+   @Test
+   public void reusesASlotForTheMinuteADayLater(){
+      OrderDashboard.Buckets buckets = new OrderDashboard.Buckets();
+      buckets.apply(placed(1, NOW - 10 * MINUTE, "4.00", "Tea", 2), NOW);
+      int slot = buckets.minuteSlot(NOW - 10 * MINUTE, NOW);
+
+      long later = NOW + 24 * HOUR;
+      buckets.apply(placed(2, later - 10 * MINUTE, "6.00", "Mocha", 1), later);
+      assertEquals(slot, buckets.minuteSlot(later - 10 * MINUTE, later));
+      assertEquals(1, buckets.orders[slot]);
+      assertEquals(600, buckets.revenueCents[slot]);
+
+      OrderDashboard.Summary summary = buckets.summary(later);
+      assertEquals(1, summary.getOrders());
+      assertEquals(6.0, summary.getRevenue(), 1e-9);
+      assertEquals(Arrays.asList("Mocha x1"), summary.getHours().get(0).getTopItems());
+   }
+
+   @Test
+   public void clearsTheItemsOfAStaleHour(){
+      OrderDashboard.Buckets buckets = new OrderDashboard.Buckets();
+      buckets.apply(placed(1, NOW - 30 * MINUTE, "4.00", "Tea", 2), NOW);
+
+      // 25 hours later the same hour slot comes round again, still holding the Tea.
+      long later = NOW + 25 * HOUR;
+      buckets.apply(placed(2, later - 30 * MINUTE, "6.00", "Mocha", 1), later);
+      assertEquals(Arrays.asList("Mocha x1"), buckets.summary(later).getHours().get(0).getTopItems());
+      assertEquals(Collections.singletonMap("Mocha", 1), buckets.items.get(buckets.hourSlot(later - 30 * MINUTE)));
+   }
+}
@@ -0,0 +1,126 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SchemaMigrator.readStatements, the splitter the migrations go through.
+ */
+public class SchemaMigratorTest {
+
+   @Rule
+   public TemporaryFolder _folder = new TemporaryFolder();
+
+   private List<String> split(String... lines) throws IOException {
+      File script = _folder.newFile();
+      Writer out = new FileWriter(script);
+      try{
+         for (String line : lines)
+            out.write(line + "\n");
+      }finally{
+         out.close();
+      }
+      return SchemaMigrator.readStatements(script);
+   }
+
+   @Test
+   public void splitsAtTheSemicolonEndingALine() throws IOException {
+      assertEquals(Arrays.asList("CREATE TABLE A(\n\tx integer)", "DROP TABLE B"),
+                   split("CREATE TABLE A(", "\tx integer);", "DROP TABLE B;"));
+   }
+
+   @Test
+   public void keepsASemicolonInsideALine() throws IOException {
+      assertEquals(Arrays.asList("SELECT ';' AS s, 1"), split("SELECT ';' AS s, 1;"));
+   }
+
+   @Test
+   public void dropsCommentLines() throws IOException {
+      assertEquals(Arrays.asList("SELECT 1", "SELECT 2"),
+                   split("-- a comment;", "SELECT 1;", "   -- indented;", "SELECT 2;"));
+   }
+
+   @Test
+   public void keepsDollarQuotedBodiesWhole() throws IOException {
+      List<String> statements = split(
+         "CREATE FUNCTION f() RETURNS trigger AS $$",
+         "BEGIN",
+         "\t-- a comment in the body stays;",
+         "\tINSERT INTO A VALUES (1);",
+         "\tRETURN NULL;",
+         "END",
+         "$$ LANGUAGE plpgsql;",
+         "SELECT 1;");
+      assertEquals(2, statements.size());
+      assertTrue(statements.get(0).startsWith("CREATE FUNCTION f()"));
+      assertTrue(statements.get(0).contains("-- a comment in the body stays;"));
+      assertTrue(statements.get(0).endsWith("$$ LANGUAGE plpgsql"));
+      assertEquals("SELECT 1", statements.get(1));
+   }
+
+   @Test
+   public void keepsAOneLineDollarQuotedBody() throws IOException {
+      assertEquals(Arrays.asList("CREATE FUNCTION one() RETURNS integer AS $$ SELECT 1; $$ LANGUAGE sql"),
+                   split("CREATE FUNCTION one() RETURNS integer AS $$ SELECT 1; $$ LANGUAGE sql;"));
+   }
+
+   @Test
+   public void splitsTransactionControlIntoStatements() throws IOException {
+      assertEquals(Arrays.asList("BEGIN", "ALTER TABLE A ADD COLUMN y integer", "COMMIT", "ANALYZE A"),
+                   split("BEGIN;", "", "ALTER TABLE A ADD COLUMN y integer;", "", "COMMIT;", "", "ANALYZE A;"));
+   }
+
+   @Test
+   public void keepsATrailingStatementWithoutSemicolon() throws IOException {
+      assertEquals(Arrays.asList("SELECT 1", "SELECT 2"), split("SELECT 1;", "SELECT 2"));
+   }
+
+   @Test
+   public void splitsTheShippedMigrations() throws IOException {
+      List<String> statements = SchemaMigrator.readStatements(migration("010_sales_item_quantity.sql"));
+      assertEquals(5, statements.size());
+      assertEquals("BEGIN", statements.get(0));
+      assertTrue(statements.get(1).startsWith("CREATE OR REPLACE FUNCTION sales_items_inserted()"));
+      assertTrue(statements.get(1).endsWith("$$ LANGUAGE plpgsql"));
+      assertTrue(statements.get(2).startsWith("CREATE OR REPLACE FUNCTION sales_backfill()"));
+      assertEquals("DROP FUNCTION sales_quantity(varchar)", statements.get(3));
+      assertEquals("COMMIT", statements.get(4));
+
+      for (String statement : SchemaMigrator.readStatements(migration("007_sales_aggregates.sql")))
+         if (statement.contains("$$"))
+            assertTrue(statement, statement.trim().endsWith("$$ LANGUAGE plpgsql")
+                       || statement.trim().endsWith("$$ LANGUAGE sql IMMUTABLE"));
+   }
+
+   // the migrations directory, found from the working directory of the build.
+   private static File migration(String name){
+      for (String dir : new String[]{"../../sql/src/migrations", "project/sql/src/migrations", "sql/src/migrations"}){
+         File file = new File(dir, name);
+         if (file.isFile())
+            return file;
+      }
+      throw new IllegalStateException("Cannot find migrations/" + name);
+   }
+}
@@ -1,91 +1,84 @@
 -- ========================================================
--- Users Indexes
+-- Indexes tuned from the recorded workload (see IndexAdvisor)
+-- Primary keys and UNIQUE columns already have an index:
+-- Users(login), Users(phoneNum), Menu(itemName),
+-- Orders(orderid, timeStampRecieved) and
+-- ItemStatus(orderid, itemName, timeStampRecieved), the last two on
+-- every monthly partition, and UserFavorites(login, itemName).
+-- Long text columns (password, description, imageURL,
+-- comments) are never searched.
 -- ========================================================
-CREATE INDEX Users_login_index
-ON Users
-(login);
-
-CREATE INDEX Users_phoneNum_index
-ON Users
-( phoneNum );
-
-CREATE INDEX Users_password_index
-ON Users
-( password );
-
-CREATE INDEX Users_type_index
-ON Users
-( type );
-
-CREATE INDEX Users_favItems_index
-ON Users
-( favItems );
 
 -- ========================================================
 -- Menu Indexes
 -- ========================================================
-CREATE INDEX Menu_itemName_index
-ON Menu
-( itemName );
-
-CREATE INDEX Menu_description_index
-ON Menu
-( description );
-
-CREATE INDEX Menu_price_index
-ON Menu
-( price );
-
 CREATE INDEX Menu_type_index
 ON Menu
 ( type );
 
-CREATE INDEX Menu_imageURL_index
-ON Menu
-( imageURL );
-
 -- ========================================================
 -- Orders Indexes
 -- ========================================================
-CREATE INDEX Orders_orderid_index
-ON Orders
-(orderid);
-
-CREATE INDEX Orders_login_index
+-- a user's orders, newest first; orderid is the keyset tie breaker
+-- so each "load more" page is one index range scan
+CREATE INDEX Orders_login_timeStampRecieved_index
 ON Orders
-( login );
-
-CREATE INDEX Orders_paid_index
-ON Orders
-( paid );
+( login, timeStampRecieved, orderid );
 
+-- orders of the last 24 hours, paged the same way
 CREATE INDEX Orders_timeStampRecieved_index
 ON Orders
-( timeStampRecieved );
+( timeStampRecieved, orderid );
 
-CREATE INDEX Orders_total_index
+-- the orders still to be paid, oldest first, for paying them
+-- in bulk; paid orders are left out so it stays small
+CREATE INDEX Orders_unpaid_index
 ON Orders
-( total );
+( timeStampRecieved, login )
+WHERE paid IS NOT TRUE;
 
 -- ========================================================
 -- ItemStatus Indexes
 -- ========================================================
-CREATE INDEX ItemStatus_orderid_index
-ON ItemStatus
-( orderid );
-
+-- ON DELETE CASCADE from Menu looks up ItemStatus by item
 CREATE INDEX ItemStatus_itemName_index
 ON ItemStatus
 ( itemName );
 
-CREATE INDEX ItemStatus_lastUpdated_index
+-- the items of a time range, for OrderExporter; rows arrive in
+-- time order, so a BRIN index of a few kB per month finds them
+CREATE INDEX ItemStatus_timeStampRecieved_brin
 ON ItemStatus
-( lastUpdated );
+USING brin ( timeStampRecieved );
 
-CREATE INDEX ItemStatus_status_index
-ON ItemStatus
-( status );
+-- ========================================================
+-- UserFavorites Indexes
+-- ========================================================
+-- the customers favoriting an item, and ON DELETE CASCADE from Menu
+CREATE INDEX UserFavorites_itemName_index
+ON UserFavorites
+( itemName, login );
 
-CREATE INDEX ItemStatus_comments_index
-ON ItemStatus
-( comments );
\ No newline at end of file
+-- ========================================================
+-- CustomerSpend Indexes
+-- ========================================================
+-- the biggest spenders first, for the Top Customers report
+CREATE INDEX CustomerSpend_spent_index
+ON CustomerSpend
+( spent );
+
+-- ========================================================
+-- Sales Pending Indexes
+-- ========================================================
+-- the reports read the totals not yet folded by day and by login
+CREATE INDEX DailySalesPending_day_index
+ON DailySalesPending
+( day );
+
+CREATE INDEX DailyItemSalesPending_day_index
+ON DailyItemSalesPending
+( day );
+
+CREATE INDEX CustomerSpendPending_login_index
+ON CustomerSpendPending
+( login );
@@ -1,39 +1,139 @@
+/* months archived by PartitionManager */
+DROP SCHEMA IF EXISTS archive CASCADE;
 DROP TABLE Users CASCADE;
 DROP TABLE Orders CASCADE;
 DROP TABLE Menu CASCADE;
 DROP TABLE ItemStatus;
+DROP TABLE IF EXISTS SchemaVersion;
+DROP TABLE IF EXISTS UserFavorites;
+DROP TABLE IF EXISTS DailySales, DailyItemSales, CustomerSpend;
+DROP TABLE IF EXISTS DailySalesPending, DailyItemSalesPending, CustomerSpendPending;
+DROP FUNCTION IF EXISTS sales_quantity(varchar), sales_orders_inserted(), sales_orders_updated(),
+	sales_items_inserted(), sales_fold(), sales_backfill();
+/* order ids used to come from a trigger on a second sequence */
+DROP FUNCTION IF EXISTS incr_func() CASCADE;
+DROP SEQUENCE IF EXISTS orderid_seq;
 
 CREATE TABLE Users(
-	login char(50) UNIQUE NOT NULL, 
-	phoneNum char(16) UNIQUE, 
-	password char(50) NOT NULL,
-	favItems char(400),
-	type char(8) NOT NULL,
+	login varchar(50) UNIQUE NOT NULL, 
+	phoneNum varchar(16) UNIQUE, 
+	password varchar(50) NOT NULL,
+	type varchar(8) NOT NULL,
 	PRIMARY KEY(login));
 
 CREATE TABLE Menu(
-	itemName char(50) UNIQUE NOT NULL,
-	type char(20) NOT NULL,
-	price real NOT NULL,
-	description char(400),
-	imageURL char(256),
+	itemName varchar(50) UNIQUE NOT NULL,
+	type varchar(20) NOT NULL,
+	price numeric(8,2) NOT NULL,
+	description varchar(400),
+	imageURL varchar(256),
 	PRIMARY KEY(itemName));
 
+/* Orders and ItemStatus are partitioned by month of timeStampRecieved,
+   which every key must then contain (see migrations/003_partition_orders.sql) */
 CREATE TABLE Orders(
-	orderid serial UNIQUE NOT NULL,
-	login char(50), 
+	orderid serial NOT NULL,
+	login varchar(50), 
 	paid boolean,
 	timeStampRecieved timestamp NOT NULL,
-	total real NOT NULL,
-	PRIMARY KEY(orderid));
+	total numeric(10,2) NOT NULL,
+	PRIMARY KEY(orderid, timeStampRecieved))
+	PARTITION BY RANGE (timeStampRecieved);
 
+/* the application reserves order ids in blocks of 50 with one nextval (see IdAllocator) */
+ALTER SEQUENCE orders_orderid_seq INCREMENT BY 50;
+
+/* timeStampRecieved is the order's, so an item lives in its order's month.
+   An item ordered n times is one row of quantity n */
 CREATE TABLE ItemStatus(
-	orderid integer,
-	itemName char(50), 
+	orderid integer NOT NULL,
+	itemName varchar(50) NOT NULL, 
+	timeStampRecieved timestamp NOT NULL,
 	lastUpdated timestamp NOT NULL,
-	status char(20), 
-	comments char(130), 
-	PRIMARY KEY(orderid,itemName),
-	FOREIGN KEY(orderid) REFERENCES Orders(orderid),
-	FOREIGN KEY(itemName) REFERENCES Menu(itemName) ON DELETE CASCADE);  
-	/* we added a ON DELETE CASCADE above because when deleting primary key we needed to delete foreign key too */
\ No newline at end of file
+	status varchar(20), 
+	comments varchar(130), 
+	quantity integer NOT NULL DEFAULT 1,
+	PRIMARY KEY(orderid,itemName,timeStampRecieved),
+	CONSTRAINT itemstatus_order_fkey FOREIGN KEY(orderid, timeStampRecieved)
+		REFERENCES Orders(orderid, timeStampRecieved),
+	CONSTRAINT itemstatus_itemname_fkey FOREIGN KEY(itemName)
+		REFERENCES Menu(itemName) ON DELETE CASCADE)
+	PARTITION BY RANGE (timeStampRecieved);
+	/* we added a ON DELETE CASCADE above because when deleting primary key we needed to delete foreign key too */
+
+/* the monthly partitions are created by PartitionManager, when a Cafe
+   starts and when loaded rows are split out of these */
+CREATE TABLE orders_default PARTITION OF Orders DEFAULT;
+CREATE TABLE itemstatus_default PARTITION OF ItemStatus DEFAULT;
+
+/* a user's favorite items, replaces the comma separated Users.favItems */
+CREATE TABLE UserFavorites(
+	login varchar(50) NOT NULL,
+	itemName varchar(50) NOT NULL,
+	PRIMARY KEY(login, itemName),
+	FOREIGN KEY(login) REFERENCES Users(login) ON DELETE CASCADE ON UPDATE CASCADE,
+	FOREIGN KEY(itemName) REFERENCES Menu(itemName) ON DELETE CASCADE ON UPDATE CASCADE);
+
+/* sales totals for the Reports menu, kept by the triggers of create_triggers.sql.
+   The triggers append to the *Pending tables, sales_fold() adds those in
+   (see migrations/007_sales_aggregates.sql) */
+CREATE TABLE DailySales(
+	day date NOT NULL,
+	orders integer NOT NULL,
+	revenue numeric(12,2) NOT NULL,
+	paidOrders integer NOT NULL,
+	paidRevenue numeric(12,2) NOT NULL,
+	PRIMARY KEY(day));
+
+CREATE TABLE DailyItemSales(
+	day date NOT NULL,
+	itemName varchar(50) NOT NULL,
+	quantity integer NOT NULL,
+	PRIMARY KEY(day, itemName));
+
+CREATE TABLE CustomerSpend(
+	login varchar(50) NOT NULL,
+	orders integer NOT NULL,
+	spent numeric(12,2) NOT NULL,
+	paid numeric(12,2) NOT NULL,
+	lastOrder timestamp,
+	PRIMARY KEY(login));
+
+CREATE TABLE DailySalesPending(
+	day date NOT NULL,
+	orders integer NOT NULL,
+	revenue numeric(12,2) NOT NULL,
+	paidOrders integer NOT NULL,
+	paidRevenue numeric(12,2) NOT NULL);
+
+CREATE TABLE DailyItemSalesPending(
+	day date NOT NULL,
+	itemName varchar(50) NOT NULL,
+	quantity integer NOT NULL);
+
+CREATE TABLE CustomerSpendPending(
+	login varchar(50) NOT NULL,
+	orders integer NOT NULL,
+	spent numeric(12,2) NOT NULL,
+	paid numeric(12,2) NOT NULL,
+	lastOrder timestamp);
+
+/* the migrations applied to this schema, see SchemaMigrator and migrations/.
+   A new database is created at the latest version. */
+CREATE TABLE SchemaVersion(
+	version integer NOT NULL,
+	description varchar(200) NOT NULL,
+	appliedAt timestamp NOT NULL,
+	millis bigint NOT NULL,
+	PRIMARY KEY(version));
+
+INSERT INTO SchemaVersion VALUES (1, 'baseline', now(), 0);
+INSERT INTO SchemaVersion VALUES (2, 'compact types', now(), 0);
+INSERT INTO SchemaVersion VALUES (3, 'partition orders', now(), 0);
+INSERT INTO SchemaVersion VALUES (4, 'user favorites', now(), 0);
+INSERT INTO SchemaVersion VALUES (5, 'unpaid orders index', now(), 0);
+INSERT INTO SchemaVersion VALUES (6, 'itemstatus time brin', now(), 0);
+INSERT INTO SchemaVersion VALUES (7, 'sales aggregates', now(), 0);
+INSERT INTO SchemaVersion VALUES (8, 'sales pending indexes', now(), 0);
+INSERT INTO SchemaVersion VALUES (9, 'itemstatus quantity', now(), 0);
+INSERT INTO SchemaVersion VALUES (10, 'sales item quantity', now(), 0);
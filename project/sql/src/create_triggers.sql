@@ -0,0 +1,110 @@
+-- ========================================================
+-- Sales aggregate triggers
+-- ========================================================
+-- Orders and ItemStatus keep DailySales, DailyItemSales and
+-- CustomerSpend up to date. Each statement appends its totals
+-- to the *Pending tables and never updates a shared row, so
+-- orders placed at once do not wait on each other; a report
+-- calls sales_fold() to add the pending rows in first.
+-- sales_backfill() rebuilds the totals from the orders.
+-- Run after create_tables.sql, before load_data.sql.
+
+CREATE FUNCTION sales_orders_inserted() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO DailySalesPending
+		SELECT CAST(timeStampRecieved AS date), count(*), sum(total),
+		       count(*) FILTER (WHERE paid), COALESCE(sum(total) FILTER (WHERE paid), 0)
+		FROM new_rows GROUP BY 1;
+	INSERT INTO CustomerSpendPending
+		SELECT login, count(*), sum(total), COALESCE(sum(total) FILTER (WHERE paid), 0), max(timeStampRecieved)
+		FROM new_rows WHERE login IS NOT NULL GROUP BY 1;
+	RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+-- adds the new rows and takes off the old ones, rather than joining them:
+-- transition tables have no statistics or indexes to join by
+CREATE FUNCTION sales_orders_updated() RETURNS trigger AS $$
+BEGIN
+	WITH changes AS (
+		SELECT CAST(timeStampRecieved AS date) AS day, login, total,
+		       CASE WHEN paid THEN 1 ELSE 0 END AS paidOrders, CASE WHEN paid THEN total ELSE 0 END AS paidRevenue
+		FROM new_rows
+		UNION ALL
+		SELECT CAST(timeStampRecieved AS date), login, -total,
+		       CASE WHEN paid THEN -1 ELSE 0 END, CASE WHEN paid THEN -total ELSE 0 END
+		FROM old_rows),
+	days AS (
+		INSERT INTO DailySalesPending
+			SELECT day, 0, sum(total), sum(paidOrders), sum(paidRevenue) FROM changes GROUP BY 1
+			HAVING sum(total) <> 0 OR sum(paidOrders) <> 0 OR sum(paidRevenue) <> 0)
+	INSERT INTO CustomerSpendPending
+		SELECT login, 0, sum(total), sum(paidRevenue), NULL FROM changes WHERE login IS NOT NULL GROUP BY 1
+		HAVING sum(total) <> 0 OR sum(paidRevenue) <> 0;
+	RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION sales_items_inserted() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO DailyItemSalesPending
+		SELECT CAST(timeStampRecieved AS date), itemName, sum(quantity)
+		FROM new_rows GROUP BY 1, 2;
+	RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+-- returns the days folded, 0 when another session is folding already
+CREATE FUNCTION sales_fold() RETURNS bigint AS $$
+DECLARE
+	folded bigint;
+BEGIN
+	IF NOT pg_try_advisory_xact_lock(166024) THEN
+		RETURN 0;
+	END IF;
+	WITH p AS (DELETE FROM DailySalesPending RETURNING *)
+	INSERT INTO DailySales AS d
+		SELECT day, sum(orders), sum(revenue), sum(paidOrders), sum(paidRevenue) FROM p GROUP BY 1
+	ON CONFLICT (day) DO UPDATE SET
+		orders = d.orders + EXCLUDED.orders, revenue = d.revenue + EXCLUDED.revenue,
+		paidOrders = d.paidOrders + EXCLUDED.paidOrders, paidRevenue = d.paidRevenue + EXCLUDED.paidRevenue;
+	GET DIAGNOSTICS folded = ROW_COUNT;
+	WITH p AS (DELETE FROM DailyItemSalesPending RETURNING *)
+	INSERT INTO DailyItemSales AS d
+		SELECT day, itemName, sum(quantity) FROM p GROUP BY 1, 2
+	ON CONFLICT (day, itemName) DO UPDATE SET quantity = d.quantity + EXCLUDED.quantity;
+	WITH p AS (DELETE FROM CustomerSpendPending RETURNING *)
+	INSERT INTO CustomerSpend AS c
+		SELECT login, sum(orders), sum(spent), sum(paid), max(lastOrder) FROM p GROUP BY 1
+	ON CONFLICT (login) DO UPDATE SET
+		orders = c.orders + EXCLUDED.orders, spent = c.spent + EXCLUDED.spent, paid = c.paid + EXCLUDED.paid,
+		lastOrder = greatest(c.lastOrder, EXCLUDED.lastOrder);
+	RETURN folded;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION sales_backfill() RETURNS bigint AS $$
+BEGIN
+	PERFORM pg_advisory_xact_lock(166024);
+	LOCK TABLE Orders, ItemStatus IN SHARE MODE;
+	TRUNCATE DailySales, DailyItemSales, CustomerSpend, DailySalesPending, DailyItemSalesPending, CustomerSpendPending;
+	INSERT INTO DailySales
+		SELECT CAST(timeStampRecieved AS date), count(*), sum(total),
+		       count(*) FILTER (WHERE paid), COALESCE(sum(total) FILTER (WHERE paid), 0)
+		FROM Orders GROUP BY 1;
+	INSERT INTO DailyItemSales
+		SELECT CAST(timeStampRecieved AS date), itemName, sum(quantity)
+		FROM ItemStatus GROUP BY 1, 2;
+	INSERT INTO CustomerSpend
+		SELECT login, count(*), sum(total), COALESCE(sum(total) FILTER (WHERE paid), 0), max(timeStampRecieved)
+		FROM Orders WHERE login IS NOT NULL GROUP BY 1;
+	RETURN (SELECT COALESCE(sum(orders), 0) FROM DailySales);
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER Orders_sales_insert AFTER INSERT ON Orders
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE FUNCTION sales_orders_inserted();
+CREATE TRIGGER Orders_sales_update AFTER UPDATE ON Orders
+	REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE FUNCTION sales_orders_updated();
+CREATE TRIGGER ItemStatus_sales_insert AFTER INSERT ON ItemStatus
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE FUNCTION sales_items_inserted();
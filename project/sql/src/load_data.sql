@@ -3,17 +3,32 @@ COPY MENU
 FROM '/extra/gcost003/CS166-Project-main/project/data/menu.csv'
 WITH DELIMITER ';';
 
-COPY USERS
+/* the favorite items column becomes UserFavorites rows */
+CREATE TEMP TABLE USERS_LOAD (login text, phoneNum text, password text, favItems text, type text);
+COPY USERS_LOAD
 FROM '/extra/gcost003/CS166-Project-main/project/data/users.csv'
 WITH DELIMITER ';';
+INSERT INTO USERS (login, phoneNum, password, type)
+SELECT login, phoneNum, password, type FROM USERS_LOAD;
+INSERT INTO USERFAVORITES (login, itemName)
+SELECT DISTINCT u.login, m.itemName
+FROM USERS_LOAD u CROSS JOIN unnest(string_to_array(u.favItems, ',')) f(name)
+JOIN MENU m ON lower(m.itemName) = lower(trim(f.name));
+DROP TABLE USERS_LOAD;
 
 COPY ORDERS
 FROM '/extra/gcost003/CS166-Project-main/project/data/orders.csv'
 WITH DELIMITER ';';
 ALTER SEQUENCE orders_orderid_seq RESTART 87257;
 
-COPY ITEMSTATUS
+/* ItemStatus rows take their order's timeStampRecieved */
+CREATE TEMP TABLE ITEMSTATUS_LOAD (orderid integer, itemName text, lastUpdated timestamp, status text, comments text);
+COPY ITEMSTATUS_LOAD
 FROM '/extra/gcost003/CS166-Project-main/project/data/itemStatus.csv'
 WITH DELIMITER ';';
+INSERT INTO ITEMSTATUS (orderid, itemName, timeStampRecieved, lastUpdated, status, comments)
+SELECT s.orderid, s.itemName, o.timeStampRecieved, s.lastUpdated, s.status, s.comments
+FROM ITEMSTATUS_LOAD s JOIN ORDERS o ON o.orderid = s.orderid;
+DROP TABLE ITEMSTATUS_LOAD;
 
 
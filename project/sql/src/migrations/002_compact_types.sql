@@ -0,0 +1,52 @@
+-- ========================================================
+-- 002: blank padded char(n) to varchar(n), real to numeric
+-- Applied by SchemaMigrator, one statement per transaction
+-- under a lock timeout, so each table is locked only while
+-- it is rewritten. Every statement can be run again.
+-- ALTER COLUMN TYPE rebuilds the indexes on the changed
+-- columns as part of the rewrite.
+-- ========================================================
+
+-- ItemStatus refers to Menu(itemName), which cannot change
+-- type while the two columns must compare equal
+ALTER TABLE ItemStatus DROP CONSTRAINT IF EXISTS itemstatus_itemname_fkey;
+ALTER TABLE ItemStatus DROP CONSTRAINT IF EXISTS itemstatus_orderid_fkey;
+
+-- rtrim drops the padding the char(n) columns stored
+ALTER TABLE Users
+	ALTER COLUMN login TYPE varchar(50) USING rtrim(login),
+	ALTER COLUMN phoneNum TYPE varchar(16) USING rtrim(phoneNum),
+	ALTER COLUMN password TYPE varchar(50) USING rtrim(password),
+	ALTER COLUMN favItems TYPE varchar(400) USING rtrim(favItems),
+	ALTER COLUMN type TYPE varchar(8) USING rtrim(type);
+
+ALTER TABLE Menu
+	ALTER COLUMN itemName TYPE varchar(50) USING rtrim(itemName),
+	ALTER COLUMN type TYPE varchar(20) USING rtrim(type),
+	ALTER COLUMN price TYPE numeric(8,2) USING round(CAST(price AS numeric), 2),
+	ALTER COLUMN description TYPE varchar(400) USING rtrim(description),
+	ALTER COLUMN imageURL TYPE varchar(256) USING rtrim(imageURL);
+
+ALTER TABLE Orders
+	ALTER COLUMN login TYPE varchar(50) USING rtrim(login),
+	ALTER COLUMN total TYPE numeric(10,2) USING round(CAST(total AS numeric), 2);
+
+ALTER TABLE ItemStatus
+	ALTER COLUMN itemName TYPE varchar(50) USING rtrim(itemName),
+	ALTER COLUMN status TYPE varchar(20) USING rtrim(status),
+	ALTER COLUMN comments TYPE varchar(130) USING rtrim(comments);
+
+-- NOT VALID takes effect at once without scanning; VALIDATE
+-- then checks the old rows without blocking writes
+ALTER TABLE ItemStatus ADD CONSTRAINT itemstatus_orderid_fkey
+	FOREIGN KEY(orderid) REFERENCES Orders(orderid) NOT VALID;
+ALTER TABLE ItemStatus VALIDATE CONSTRAINT itemstatus_orderid_fkey;
+ALTER TABLE ItemStatus ADD CONSTRAINT itemstatus_itemname_fkey
+	FOREIGN KEY(itemName) REFERENCES Menu(itemName) ON DELETE CASCADE NOT VALID;
+ALTER TABLE ItemStatus VALIDATE CONSTRAINT itemstatus_itemname_fkey;
+
+-- the rewritten tables need fresh statistics
+ANALYZE Users;
+ANALYZE Menu;
+ANALYZE Orders;
+ANALYZE ItemStatus;
@@ -0,0 +1,94 @@
+-- ========================================================
+-- 003: Orders and ItemStatus range partitioned by month
+-- The tables are copied into partitioned ones in a single
+-- transaction, so the cafe is locked out while it runs.
+-- A partitioned table's keys must contain the partition
+-- key, so Orders is keyed (orderid, timeStampRecieved) and
+-- ItemStatus carries its order's timeStampRecieved, which
+-- its foreign key to Orders now uses. ItemStatus rows live
+-- in the same month as their order, so a month of both is
+-- archived together (see PartitionManager).
+-- Indexes of the old tables are recreated from
+-- create_indexes.sql; rerun a tuned_indexes.sql after.
+-- ========================================================
+BEGIN;
+
+ALTER TABLE ItemStatus RENAME TO ItemStatus_unpartitioned;
+ALTER TABLE Orders RENAME TO Orders_unpartitioned;
+-- frees the key names for the new tables
+ALTER TABLE ItemStatus_unpartitioned RENAME CONSTRAINT itemstatus_pkey TO itemstatus_unpartitioned_pkey;
+ALTER TABLE Orders_unpartitioned RENAME CONSTRAINT orders_pkey TO orders_unpartitioned_pkey;
+DROP INDEX IF EXISTS Orders_login_timeStampRecieved_index;
+DROP INDEX IF EXISTS Orders_timeStampRecieved_index;
+DROP INDEX IF EXISTS ItemStatus_itemName_index;
+
+CREATE TABLE Orders(
+	orderid integer NOT NULL DEFAULT nextval('orders_orderid_seq'),
+	login varchar(50),
+	paid boolean,
+	timeStampRecieved timestamp NOT NULL,
+	total numeric(10,2) NOT NULL,
+	PRIMARY KEY(orderid, timeStampRecieved))
+	PARTITION BY RANGE (timeStampRecieved);
+
+-- the sequence would be dropped with the old table
+ALTER SEQUENCE orders_orderid_seq OWNED BY Orders.orderid;
+
+CREATE TABLE ItemStatus(
+	orderid integer NOT NULL,
+	itemName varchar(50) NOT NULL,
+	timeStampRecieved timestamp NOT NULL,
+	lastUpdated timestamp NOT NULL,
+	status varchar(20),
+	comments varchar(130),
+	PRIMARY KEY(orderid, itemName, timeStampRecieved),
+	CONSTRAINT itemstatus_order_fkey FOREIGN KEY(orderid, timeStampRecieved)
+		REFERENCES Orders(orderid, timeStampRecieved),
+	CONSTRAINT itemstatus_itemname_fkey FOREIGN KEY(itemName)
+		REFERENCES Menu(itemName) ON DELETE CASCADE)
+	PARTITION BY RANGE (timeStampRecieved);
+
+-- a month per partition from the oldest order to two months ahead
+DO $$
+DECLARE
+	m timestamp := date_trunc('month', COALESCE((SELECT min(timeStampRecieved) FROM Orders_unpartitioned), now()));
+BEGIN
+	WHILE m < date_trunc('month', now()) + interval '3 months' LOOP
+		EXECUTE format('CREATE TABLE orders_p%s PARTITION OF Orders FOR VALUES FROM (%L) TO (%L)',
+		               to_char(m, 'YYYY_MM'), m, m + interval '1 month');
+		EXECUTE format('CREATE TABLE itemstatus_p%s PARTITION OF ItemStatus FOR VALUES FROM (%L) TO (%L)',
+		               to_char(m, 'YYYY_MM'), m, m + interval '1 month');
+		m := m + interval '1 month';
+	END LOOP;
+END
+$$;
+
+-- rows no monthly partition takes, PartitionManager moves them out
+CREATE TABLE orders_default PARTITION OF Orders DEFAULT;
+CREATE TABLE itemstatus_default PARTITION OF ItemStatus DEFAULT;
+
+INSERT INTO Orders (orderid, login, paid, timeStampRecieved, total)
+	SELECT orderid, login, paid, timeStampRecieved, total FROM Orders_unpartitioned;
+INSERT INTO ItemStatus (orderid, itemName, timeStampRecieved, lastUpdated, status, comments)
+	SELECT s.orderid, s.itemName, o.timeStampRecieved, s.lastUpdated, s.status, s.comments
+	FROM ItemStatus_unpartitioned s JOIN Orders_unpartitioned o ON o.orderid = s.orderid;
+
+DROP TABLE ItemStatus_unpartitioned;
+DROP TABLE Orders_unpartitioned;
+
+CREATE INDEX Orders_login_timeStampRecieved_index
+ON Orders
+( login, timeStampRecieved, orderid );
+
+CREATE INDEX Orders_timeStampRecieved_index
+ON Orders
+( timeStampRecieved, orderid );
+
+CREATE INDEX ItemStatus_itemName_index
+ON ItemStatus
+( itemName );
+
+COMMIT;
+
+ANALYZE Orders;
+ANALYZE ItemStatus;
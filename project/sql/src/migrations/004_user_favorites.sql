@@ -0,0 +1,32 @@
+-- ========================================================
+-- 004: favorite items as UserFavorites rows
+-- Users.favItems held a comma separated list that could
+-- only be searched with LIKE. Each favorite becomes a row
+-- keyed (login, itemName), with a second index by item for
+-- "who favorites this item". Names are matched to the menu
+-- ignoring case and blanks; names not on the menu are
+-- dropped. Renaming or deleting an item carries over.
+-- ========================================================
+BEGIN;
+
+CREATE TABLE UserFavorites(
+	login varchar(50) NOT NULL,
+	itemName varchar(50) NOT NULL,
+	PRIMARY KEY(login, itemName),
+	FOREIGN KEY(login) REFERENCES Users(login) ON DELETE CASCADE ON UPDATE CASCADE,
+	FOREIGN KEY(itemName) REFERENCES Menu(itemName) ON DELETE CASCADE ON UPDATE CASCADE);
+
+INSERT INTO UserFavorites (login, itemName)
+	SELECT DISTINCT u.login, m.itemName
+	FROM Users u CROSS JOIN unnest(string_to_array(u.favItems, ',')) f(name)
+	JOIN Menu m ON lower(m.itemName) = lower(trim(f.name));
+
+ALTER TABLE Users DROP COLUMN favItems;
+
+CREATE INDEX UserFavorites_itemName_index
+ON UserFavorites
+( itemName, login );
+
+COMMIT;
+
+ANALYZE UserFavorites;
@@ -0,0 +1,15 @@
+-- ========================================================
+-- 005: partial index on the unpaid orders
+-- Only the orders still to be paid are indexed, so the
+-- index stays small however many paid orders pile up, and
+-- "the unpaid orders placed before a time" reads only those
+-- (a login's orders already have an index of their own).
+-- Queries must say paid IS NOT TRUE, as the index predicate
+-- does, for the planner to use it.
+-- ========================================================
+CREATE INDEX IF NOT EXISTS Orders_unpaid_index
+ON Orders
+( timeStampRecieved, login )
+WHERE paid IS NOT TRUE;
+
+ANALYZE Orders;
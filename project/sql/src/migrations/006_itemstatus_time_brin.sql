@@ -0,0 +1,12 @@
+-- ========================================================
+-- 006: BRIN index on ItemStatus(timeStampRecieved)
+-- OrderExporter reads ItemStatus one time slice at a time.
+-- Without an index on the time each slice scanned its whole
+-- month. Items are written in the order they are placed, so
+-- a BRIN index (the time range of every 128 pages) finds a
+-- slice's pages while staying a few kB per month and costing
+-- next to nothing on insert.
+-- ========================================================
+CREATE INDEX IF NOT EXISTS ItemStatus_timeStampRecieved_brin
+ON ItemStatus
+USING brin ( timeStampRecieved );
@@ -0,0 +1,19 @@
+-- ========================================================
+-- 008: indexes on the sales pending tables
+-- The reports read the *Pending tables of migration 007
+-- beside the totals, filtered on the day or the login.
+-- They hold the totals of every order since the last
+-- sales_fold(), which can be many when nothing folds for a
+-- while, so each filter gets an index instead of a scan.
+-- ========================================================
+CREATE INDEX IF NOT EXISTS DailySalesPending_day_index
+ON DailySalesPending
+( day );
+
+CREATE INDEX IF NOT EXISTS DailyItemSalesPending_day_index
+ON DailyItemSalesPending
+( day );
+
+CREATE INDEX IF NOT EXISTS CustomerSpendPending_login_index
+ON CustomerSpendPending
+( login );
@@ -0,0 +1,18 @@
+-- ========================================================
+-- 009: ItemStatus.quantity
+-- placeOrder stored an item ordered n times as one row
+-- commented 'Quantity: n', which every count had to parse
+-- back out of the comments. The count gets its own column,
+-- 1 by default, and those comments are moved into it.
+-- Adding a column with a constant default rewrites nothing;
+-- the UPDATE touches only the rows of repeated items.
+-- ========================================================
+BEGIN;
+
+ALTER TABLE ItemStatus ADD COLUMN quantity integer NOT NULL DEFAULT 1;
+
+UPDATE ItemStatus
+SET quantity = CAST(substring(comments FROM '^Quantity: ([0-9]+)$') AS integer), comments = ''
+WHERE comments ~ '^Quantity: [0-9]+$';
+
+COMMIT;
@@ -0,0 +1,41 @@
+-- ========================================================
+-- 010: item sales counted from ItemStatus.quantity
+-- The item trigger and sales_backfill() of migration 007
+-- parsed 'Quantity: n' out of the comments through
+-- sales_quantity(). Since 009 the count is a column, so they
+-- sum it, as in create_triggers.sql, and sales_quantity()
+-- goes. The totals already stored are the same either way.
+-- ========================================================
+BEGIN;
+
+CREATE OR REPLACE FUNCTION sales_items_inserted() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO DailyItemSalesPending
+		SELECT CAST(timeStampRecieved AS date), itemName, sum(quantity)
+		FROM new_rows GROUP BY 1, 2;
+	RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION sales_backfill() RETURNS bigint AS $$
+BEGIN
+	PERFORM pg_advisory_xact_lock(166024);
+	LOCK TABLE Orders, ItemStatus IN SHARE MODE;
+	TRUNCATE DailySales, DailyItemSales, CustomerSpend, DailySalesPending, DailyItemSalesPending, CustomerSpendPending;
+	INSERT INTO DailySales
+		SELECT CAST(timeStampRecieved AS date), count(*), sum(total),
+		       count(*) FILTER (WHERE paid), COALESCE(sum(total) FILTER (WHERE paid), 0)
+		FROM Orders GROUP BY 1;
+	INSERT INTO DailyItemSales
+		SELECT CAST(timeStampRecieved AS date), itemName, sum(quantity)
+		FROM ItemStatus GROUP BY 1, 2;
+	INSERT INTO CustomerSpend
+		SELECT login, count(*), sum(total), COALESCE(sum(total) FILTER (WHERE paid), 0), max(timeStampRecieved)
+		FROM Orders WHERE login IS NOT NULL GROUP BY 1;
+	RETURN (SELECT COALESCE(sum(orders), 0) FROM DailySales);
+END
+$$ LANGUAGE plpgsql;
+
+DROP FUNCTION sales_quantity(varchar);
+
+COMMIT;